@@ -0,0 +1,95 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.support.GenericApplicationContext;
+import ru.z3r0ing.gitlabnotificator.handler.EventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.EventHandlerRegistry;
+import ru.z3r0ing.gitlabnotificator.handler.IssueEventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.MergeRequestEventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.NoteEventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.PipelineEventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.TagPushEventHandler;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding the handler for an incoming webhook header:
+ * the former per-request bean lookup and linear scans versus the prebuilt registry.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=HandlerDispatchBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandlerDispatchBenchmark {
+
+    @Param({"Merge Request Hook", "Tag Push Hook"})
+    public String requestHeader;
+
+    private GenericApplicationContext applicationContext;
+    private EventHandlerRegistry eventHandlerRegistry;
+
+    @Setup
+    public void setUp() {
+        MessageFormatter messageFormatter = new MessageFormatter();
+        applicationContext = new GenericApplicationContext();
+        applicationContext.registerBean(MergeRequestEventHandler.class, () -> new MergeRequestEventHandler(messageFormatter));
+        applicationContext.registerBean(NoteEventHandler.class, () -> new NoteEventHandler(messageFormatter));
+        applicationContext.registerBean(PipelineEventHandler.class, () -> new PipelineEventHandler(messageFormatter));
+        applicationContext.registerBean(IssueEventHandler.class, () -> new IssueEventHandler(messageFormatter));
+        applicationContext.registerBean(TagPushEventHandler.class, () -> new TagPushEventHandler(messageFormatter));
+        applicationContext.refresh();
+
+        List<EventHandler<?>> eventHandlers = new ArrayList<>();
+        for (EventHandler<?> eventHandler : applicationContext.getBeansOfType(EventHandler.class).values()) {
+            eventHandlers.add(eventHandler);
+        }
+        eventHandlerRegistry = new EventHandlerRegistry(eventHandlers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    /**
+     * Dispatch as it was done before the registry: linear header scan, bean lookup and handler scan per request.
+     */
+    @Benchmark
+    @SuppressWarnings("rawtypes")
+    public EventHandler beanLookupDispatch() {
+        EventType eventType = null;
+        for (EventType candidate : EventType.values()) {
+            if (candidate.getRequestHeader().equals(requestHeader)) {
+                eventType = candidate;
+                break;
+            }
+        }
+        Map<String, EventHandler> beans = applicationContext.getBeansOfType(EventHandler.class);
+        List<EventHandler> eventHandlers = new ArrayList<>(beans.values());
+        for (EventHandler eventHandler : eventHandlers) {
+            if (eventHandler.doesSupportSuchEvent(eventType)) {
+                return eventHandler;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public EventHandler<?> registryDispatch() {
+        return eventHandlerRegistry.getHandlers(EventType.fromRequestHeader(requestHeader)).get(0);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import ru.z3r0ing.gitlabnotificator.util.MessageTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a notification text: the former {@link String#format} of the template on every call
+ * versus a {@link MessageTemplate} compiled once, which also escapes the values.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=MessageTemplateBenchmark -PjmhProfilers=gc}
+ * and compare the time and {@code gc.alloc.rate.norm}, bytes allocated per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageTemplateBenchmark {
+
+    private static final String TEMPLATE = """
+            🆕 *New Merge Request created!*
+
+            Project: _%s_
+            MR: *%s*
+            Author: %s
+            """;
+    private static final MessageTemplate COMPILED = MessageTemplate.compile(TEMPLATE);
+
+    private final String projectName = "gitlab-test";
+    private final String title = "Add CI configuration for the release pipeline";
+    private final String author = "Administrator";
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format(TEMPLATE, projectName, title, author);
+    }
+
+    @Benchmark
+    public String compiledTemplate() {
+        return COMPILED.render(projectName, title, author);
+    }
+}
@@ -0,0 +1,96 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.filter.DropReason;
+import ru.z3r0ing.gitlabnotificator.filter.WebhookPreFilter;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * CPU spent on a webhook which produces no notifications (closed merge request):
+ * full databind of the payload versus the streaming pre-filter peek.
+ * The difference is the cost saved per rejected hook.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PreFilterBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreFilterBenchmark {
+
+    private static final String CLOSED_MERGE_REQUEST = """
+            {
+              "object_kind": "merge_request",
+              "event_type": "merge_request",
+              "user": {"id": 1, "name": "Administrator", "username": "root", "avatar_url": "http://gitlab/avatar.png", "email": "admin@example.com"},
+              "project": {
+                "id": 1, "name": "Gitlab Test", "description": "Aut reprehenderit ut est.",
+                "web_url": "http://gitlab/gitlabhq/gitlab-test", "avatar_url": null,
+                "git_ssh_url": "git@gitlab:gitlabhq/gitlab-test.git", "git_http_url": "http://gitlab/gitlabhq/gitlab-test.git",
+                "namespace": "GitlabHQ", "visibility_level": 20, "path_with_namespace": "gitlabhq/gitlab-test",
+                "default_branch": "master", "homepage": "http://gitlab/gitlabhq/gitlab-test",
+                "url": "http://gitlab/gitlabhq/gitlab-test.git", "ssh_url": "git@gitlab:gitlabhq/gitlab-test.git",
+                "http_url": "http://gitlab/gitlabhq/gitlab-test.git"
+              },
+              "object_attributes": {
+                "id": 99, "iid": 1, "target_branch": "master", "source_branch": "ms-viewport", "source_project_id": 14,
+                "author_id": 51, "assignee_ids": [6], "assignee_id": 6, "reviewer_ids": [6, 7],
+                "title": "MS-Viewport", "created_at": "2013-12-03T17:23:34Z", "updated_at": "2013-12-03T17:23:34Z",
+                "milestone_id": null, "state": "closed", "state_id": 2, "blocking_discussions_resolved": true,
+                "work_in_progress": false, "draft": false, "first_contribution": true, "merge_status": "unchecked",
+                "target_project_id": 14, "description": "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat.",
+                "total_time_spent": 1800, "time_change": 30, "human_total_time_spent": "30m",
+                "url": "http://gitlab/diaspora/merge_requests/1",
+                "source": {"name": "Awesome Project", "description": "Aut reprehenderit ut est.", "web_url": "http://gitlab/awesome_space/awesome_project", "namespace": "Awesome Space"},
+                "target": {"name": "Awesome Project", "description": "Aut reprehenderit ut est.", "web_url": "http://gitlab/awesome_space/awesome_project", "namespace": "Awesome Space"},
+                "last_commit": {"id": "da1560886d4f094c3e6c9ef40349f7d38b5d27d7", "message": "fixed readme", "title": "Update file README.md", "timestamp": "2012-01-03T23:36:29+02:00", "url": "http://gitlab/awesome_space/awesome_project/commits/da1560886d4f094c3e6c9ef40349f7d38b5d27d7", "author": {"name": "GitLab dev user", "email": "gitlabdev@dv6700.(none)"}},
+                "labels": [{"id": 206, "title": "API", "color": "#ffffff", "project_id": 14, "type": "ProjectLabel", "group_id": 41}],
+                "action": "close", "detailed_merge_status": "mergeable"
+              },
+              "labels": [{"id": 206, "title": "API", "color": "#ffffff", "project_id": 14, "type": "ProjectLabel", "group_id": 41}],
+              "changes": {
+                "updated_by_id": {"previous": null, "current": 1},
+                "updated_at": {"previous": "2017-09-15 16:50:55 UTC", "current": "2017-09-15 16:52:00 UTC"},
+                "state_id": {"previous": 1, "current": 2}
+              },
+              "repository": {"name": "Gitlab Test", "url": "http://gitlab/gitlabhq/gitlab-test.git", "description": "Aut reprehenderit ut est.", "homepage": "http://gitlab/gitlabhq/gitlab-test"},
+              "assignees": [{"id": 6, "name": "User1", "username": "user1", "avatar_url": "http://gitlab/avatar.png"}],
+              "reviewers": [{"id": 6, "name": "User1", "username": "user1", "state": "unreviewed", "avatar_url": "http://gitlab/avatar.png"}]
+            }
+            """;
+
+    private byte[] payload;
+    private GitlabEventParser gitlabEventParser;
+    private WebhookPreFilter webhookPreFilter;
+
+    @Setup
+    public void setUp() {
+        payload = CLOSED_MERGE_REQUEST.getBytes(UTF_8);
+        gitlabEventParser = new GitlabEventParser();
+        webhookPreFilter = new WebhookPreFilter(new AppProperties(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public AbstractEvent fullParse() throws IOException {
+        return gitlabEventParser.parse(EventType.MERGE_REQUEST, payload);
+    }
+
+    @Benchmark
+    public DropReason preFilter() {
+        return webhookPreFilter.check(EventType.MERGE_REQUEST, payload);
+    }
+}
@@ -0,0 +1,73 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Telegram payloads built for a role broadcast of one notification:
+ * the former conversion of the keyboard and chat ID for every recipient versus one {@link PreparedNotification}
+ * shared by all recipients, with chat IDs converted once per chat as the delivery scheduler keeps them.
+ * <p>
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PreparedNotificationBenchmark -PjmhProfilers=gc}
+ * and compare {@code gc.alloc.rate.norm}, bytes allocated per broadcast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreparedNotificationBenchmark {
+
+    @Param({"1", "40", "200"})
+    public int recipients;
+
+    private MessageWithKeyboard message;
+    private long[] chatIds;
+    private String[] chatIdStrings;
+
+    @Setup
+    public void setUp() {
+        message = new MessageWithKeyboard("""
+                ✅ *Deploy to production succeeded*
+                Project: *gitlab-test*
+                Branch: `master`
+                Commit: `da1560886d4f094c3e6c9ef40349f7d38b5d27d7`""",
+                List.of(new InlineKeyboardButtonRow(List.of(
+                        new InlineKeyboardButtonRow.InlineKeyboardButton("Open pipeline",
+                                "http://gitlab/gitlabhq/gitlab-test/-/pipelines/31"),
+                        new InlineKeyboardButtonRow.InlineKeyboardButton("Open commit",
+                                "http://gitlab/gitlabhq/gitlab-test/-/commit/da1560886d4f094c3e6c9ef40349f7d38b5d27d7")))));
+        chatIds = new long[recipients];
+        chatIdStrings = new String[recipients];
+        for (int i = 0; i < recipients; i++) {
+            chatIds[i] = 100_000_000L + i;
+            chatIdStrings[i] = String.valueOf(chatIds[i]);
+        }
+    }
+
+    @Benchmark
+    public void perRecipient(Blackhole blackhole) {
+        for (long chatId : chatIds) {
+            blackhole.consume(PreparedNotification.of(message).toSendMessage(String.valueOf(chatId)));
+        }
+    }
+
+    @Benchmark
+    public void prepared(Blackhole blackhole) {
+        PreparedNotification notification = PreparedNotification.of(message);
+        for (String chatId : chatIdStrings) {
+            blackhole.consume(notification.toSendMessage(chatId));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load of a running instance with bursts of concurrent webhooks, to compare the servlet endpoint with the reactive
+ * one ({@code reactive} profile). Unlike other benchmarks it does not start the application itself.
+ * <p>
+ * One operation is a burst of {@code webhooks} concurrent requests with successful pipelines, each with a new
+ * {@code Idempotency-Key}, so none is deduplicated. The pipelines produce no notification, so the bursts measure
+ * ingestion and not the Bot API. Start the instance once per stack and run
+ * {@code GITLAB_WEBHOOK_SECRET=your_secret ./gradlew jmh -PjmhIncludes=WebhookLoadBenchmark}, {@code WEBHOOK_URL}
+ * overrides {@code http://localhost:8080/webhook/gitlab}. Compare the bursts per second; requests shed by the lanes
+ * with 429 are counted and printed after the trial, so raise the lane capacities first to measure the endpoint only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WebhookLoadBenchmark {
+
+    private static final String PAYLOAD = """
+            {"object_kind": "pipeline",
+             "object_attributes": {"id": 1, "ref": "main", "status": "success", "source": "push"},
+             "project": {"id": 1, "name": "benchmark", "web_url": "http://gitlab.example.com/benchmark"},
+             "user": {"id": 1, "name": "Benchmark", "username": "benchmark"},
+             "builds": []}""";
+
+    @Param("1000")
+    private int webhooks;
+
+    private URI uri;
+    private String token;
+    private ExecutorService executor;
+    private HttpClient client;
+    private final AtomicLong rejected = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getenv("WEBHOOK_URL");
+        uri = URI.create(url != null ? url : "http://localhost:8080/webhook/gitlab");
+        token = System.getenv("GITLAB_WEBHOOK_SECRET");
+        if (token == null) {
+            throw new IllegalStateException("GITLAB_WEBHOOK_SECRET of the running instance must be set");
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        client = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        System.out.println("Requests not accepted: " + rejected.get());
+    }
+
+    @Benchmark
+    public void burst() {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(webhooks);
+        for (int i = 0; i < webhooks; i++) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .header("X-Gitlab-Token", token)
+                    .header("X-Gitlab-Event", "Pipeline Hook")
+                    .header("Idempotency-Key", UUID.randomUUID().toString())
+                    .POST(HttpRequest.BodyPublishers.ofString(PAYLOAD))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            if (response.join().statusCode() != 202) {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+}
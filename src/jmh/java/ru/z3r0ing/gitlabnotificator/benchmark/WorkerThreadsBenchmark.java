@@ -0,0 +1,91 @@
+package ru.z3r0ing.gitlabnotificator.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.z3r0ing.gitlabnotificator.config.WorkerThreads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processing of a burst of concurrent webhooks whose time is mostly blocking I/O, like the recipient lookup
+ * in the database and the Bot API call: a pool of platform threads as large as the default Tomcat pool versus
+ * a virtual thread per webhook, see {@link WorkerThreads}.
+ * <p>
+ * One operation is a burst of {@code webhooks} webhooks, each blocking for {@code blockingMillis}.
+ * Run on Java 21+ with {@code ./gradlew jmh -PjavaVersion=21 -PjmhIncludes=WorkerThreadsBenchmark
+ * -PjmhProfilers=gc} and compare the bursts per second and {@code gc.alloc.rate.norm}; the platform pool also
+ * reserves a native stack per thread, {@code platformThreads} times {@code -Xss}, which the heap profiler
+ * does not show. The virtual mode fails on older Java versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WorkerThreadsBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtual;
+
+    @Param("1000")
+    private int webhooks;
+
+    @Param("200")
+    private int platformThreads;
+
+    @Param("10")
+    private int blockingMillis;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WorkerThreads workerThreads;
+        try {
+            workerThreads = new WorkerThreads(virtual);
+        } catch (UnsupportedOperationException e) {
+            throw new IllegalStateException("Virtual threads require Java 21+", e);
+        }
+        if (virtual) {
+            executor = workerThreads.newVirtualThreadPerTaskExecutor("webhook-");
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(platformThreads,
+                    task -> workerThreads.newThread("webhook-" + threadNumber.getAndIncrement(), task));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (!virtual) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        CountDownLatch processed = new CountDownLatch(webhooks);
+        for (int i = 0; i < webhooks; i++) {
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(blockingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    processed.countDown();
+                }
+            });
+        }
+        processed.await();
+    }
+}
@@ -0,0 +1,21 @@
+package ru.z3r0ing.gitlabnotificator.coalescing;
+
+import lombok.Value;
+import ru.z3r0ing.gitlabnotificator.model.DigestKind;
+
+/**
+ * Notifications of one group sent to a chat within the coalescing window are folded into one digest.
+ */
+@Value
+public class DigestGroup {
+    /**
+     * Identifies the group within the chat, e.g. the project and the merge request
+     */
+    String key;
+    DigestKind kind;
+    String projectName;
+    /**
+     * Merge request title or pipeline ref, null for tags
+     */
+    String subject;
+}
@@ -0,0 +1,372 @@
+package ru.z3r0ing.gitlabnotificator.coalescing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.DigestKind;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.NoteEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.TagPushEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.MergeRequest;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.outbox.NotificationOutbox;
+import ru.z3r0ing.gitlabnotificator.service.WebhookLaneClassifier;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+import ru.z3r0ing.gitlabnotificator.util.TimerWheel;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Folds bursts of notifications into digests: comments on one merge request, tags of one project and deploys of
+ * one ref sent to a chat within the coalescing window become one message, e.g. "7 new comments on MR X by A, B, C".
+ * <p>
+ * A window of a chat and a group opens with its first notification and closes once no new notification came for
+ * {@code quiet-window}, but at most {@code max-delay} after it opened. A window with one notification sends it
+ * unchanged. High priority webhooks, such as failed pipelines, are never held.
+ * <p>
+ * Windows are kept in memory by a single coalescer thread, producers pass notifications to it through a lock-free
+ * inbox. All windows share one {@link TimerWheel}, so thousands of open windows cost a timer each and no
+ * scheduled task; a window extended by a new notification keeps its timer, which is moved on when it fires.
+ * Closed digests are sent the same way as other notifications: through {@link NotificationOutbox} if it is enabled,
+ * otherwise through {@link DeliveryScheduler}. Open windows are sent on graceful shutdown and lost if the instance
+ * dies, i.e. at most {@code max-delay} of digests.
+ */
+@Service
+@Slf4j
+public class NotificationCoalescer {
+
+    private static final int MAX_LISTED_NAMES = 10;
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    private final AppProperties.Coalescing coalescing;
+    private final MessageFormatter messageFormatter;
+    private final WebhookLaneClassifier webhookLaneClassifier;
+    private final NotificationOutbox notificationOutbox;
+    private final DeliveryScheduler deliveryScheduler;
+    private final long quietWindowNanos;
+    private final long maxDelayNanos;
+    private final Queue<Offer> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openWindows = new AtomicInteger();
+    private final Counter coalescedCounter;
+
+    // coalescer thread state
+    private final Map<WindowKey, Window> windows = new HashMap<>();
+    private final List<Window> closed = new ArrayList<>();
+    private TimerWheel<Window> timers;
+
+    private volatile boolean running;
+    private volatile Thread coalescer;
+
+    public NotificationCoalescer(AppProperties appProperties,
+                                 MessageFormatter messageFormatter,
+                                 WebhookLaneClassifier webhookLaneClassifier,
+                                 NotificationOutbox notificationOutbox,
+                                 DeliveryScheduler deliveryScheduler,
+                                 MeterRegistry meterRegistry) {
+        this.coalescing = appProperties.getNotifications().getCoalescing();
+        this.messageFormatter = messageFormatter;
+        this.webhookLaneClassifier = webhookLaneClassifier;
+        this.notificationOutbox = notificationOutbox;
+        this.deliveryScheduler = deliveryScheduler;
+        this.quietWindowNanos = coalescing.getQuietWindow().toNanos();
+        this.maxDelayNanos = coalescing.getMaxDelay().toNanos();
+
+        this.coalescedCounter = Counter.builder("gitlab.notification.sends.saved")
+                .description("Telegram sends saved by grouping notifications by chat")
+                .tag("reason", "coalesced")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.notification.coalescing.windows", openWindows, AtomicInteger::get)
+                .description("Digests waiting for their coalescing window to close")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!coalescing.isEnabled()) {
+            return;
+        }
+        running = true;
+        timers = new TimerWheel<>(coalescing.getTick(), System.nanoTime());
+        Thread thread = new Thread(this::run, "notification-coalescer");
+        thread.setDaemon(true);
+        coalescer = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread thread = coalescer;
+        if (thread == null) {
+            return;
+        }
+        coalescer = null;
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Holds the notifications of the webhook to fold them with the following notifications of the same group.
+     *
+     * @param eventType     type of the webhook
+     * @param event         parsed webhook
+     * @param handledEvents notifications of the webhook
+     * @param recipients    Telegram IDs of the receivers of each notification, in the same order
+     * @return false if the notifications are not coalesced and have to be sent right away
+     */
+    public boolean offer(EventType eventType, AbstractEvent event, List<HandledEvent> handledEvents,
+                         long[][] recipients) {
+        Thread thread = coalescer;
+        if (thread == null || !running) {
+            return false;
+        }
+        WebhookLane lane = webhookLaneClassifier.classify(eventType, event);
+        DigestGroup group = lane == WebhookLane.HIGH ? null : groupOf(eventType, event);
+        if (group == null) {
+            return false;
+        }
+        // a chat receives one notification of a webhook, e.g. LEAD who is also PM
+        Map<Long, MessageWithKeyboard> messagesByChat = new LinkedHashMap<>();
+        for (int i = 0; i < recipients.length; i++) {
+            for (long chatId : recipients[i]) {
+                messagesByChat.putIfAbsent(chatId, handledEvents.get(i).getMessageWithKeyboard());
+            }
+        }
+        if (!messagesByChat.isEmpty()) {
+            Offer offer = new Offer(group, nameOf(eventType, event), lane, messagesByChat);
+            inbox.add(offer);
+            // the coalescer may have drained the inbox for the last time meanwhile, the caller sends it then
+            if (!running && inbox.remove(offer)) {
+                return false;
+            }
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * @return group of the webhook notifications, null if they are not coalesced
+     */
+    static DigestGroup groupOf(EventType eventType, AbstractEvent event) {
+        return switch (eventType) {
+            case NOTE -> {
+                NoteEvent noteEvent = (NoteEvent) event;
+                MergeRequest mergeRequest = noteEvent.getMergeRequest();
+                yield mergeRequest == null || noteEvent.getProject() == null ? null
+                        : new DigestGroup("mr:" + noteEvent.getProject().getId() + ":" + mergeRequest.getIid(),
+                        DigestKind.COMMENTS, noteEvent.getProject().getName(), mergeRequest.getTitle());
+            }
+            case TAG_PUSH -> {
+                TagPushEvent tagPushEvent = (TagPushEvent) event;
+                yield tagPushEvent.getProject() == null ? null
+                        : new DigestGroup("tags:" + tagPushEvent.getProject().getId(), DigestKind.TAGS,
+                        tagPushEvent.getProject().getName(), null);
+            }
+            case PIPELINE -> {
+                PipelineEvent pipelineEvent = (PipelineEvent) event;
+                yield pipelineEvent.getProject() == null || pipelineEvent.getPipeline() == null
+                        || !"success".equalsIgnoreCase(pipelineEvent.getPipeline().getStatus()) ? null
+                        : new DigestGroup("deploys:" + pipelineEvent.getProject().getId() + ":"
+                        + pipelineEvent.getPipeline().getRef(), DigestKind.DEPLOYS,
+                        pipelineEvent.getProject().getName(), pipelineEvent.getPipeline().getRef());
+            }
+            case MERGE_REQUEST, ISSUE -> null;
+        };
+    }
+
+    /**
+     * @return name listed in the digest: comment author or tag, null if the digest lists none
+     */
+    private static String nameOf(EventType eventType, AbstractEvent event) {
+        if (eventType == EventType.NOTE) {
+            NoteEvent noteEvent = (NoteEvent) event;
+            return noteEvent.getUser() != null ? noteEvent.getUser().getName() : null;
+        }
+        return eventType == EventType.TAG_PUSH ? ((TagPushEvent) event).getTagName() : null;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                long now = System.nanoTime();
+                drainInbox(now);
+                timers.advance(now, window -> onTimer(window, now));
+                sendClosed();
+            } catch (RuntimeException e) {
+                log.error("Error coalescing notifications", e);
+            }
+            long parkNanos = timers.size() > 0
+                    ? Math.min(MAX_PARK_NANOS, timers.nanosUntilNextTick(System.nanoTime())) : MAX_PARK_NANOS;
+            LockSupport.parkNanos(this, Math.max(parkNanos, 1));
+        }
+        // send what is held, so digests are not lost on graceful shutdown
+        drainInbox(System.nanoTime());
+        closed.addAll(windows.values());
+        windows.clear();
+        openWindows.set(0);
+        sendClosed();
+    }
+
+    private void drainInbox(long now) {
+        Offer offer;
+        while ((offer = inbox.poll()) != null) {
+            for (Map.Entry<Long, MessageWithKeyboard> entry : offer.getMessagesByChat().entrySet()) {
+                WindowKey key = new WindowKey(entry.getKey(), offer.getGroup().getKey());
+                Window window = windows.get(key);
+                if (window == null) {
+                    window = new Window(key.getChatId(), offer.getGroup(), now);
+                    windows.put(key, window);
+                    openWindows.set(windows.size());
+                    window.add(entry.getValue(), offer.getName(), offer.getLane(), now);
+                    timers.schedule(window, window.deadline);
+                } else {
+                    window.add(entry.getValue(), offer.getName(), offer.getLane(), now);
+                }
+            }
+        }
+    }
+
+    private void onTimer(Window window, long now) {
+        if (window.deadline - now > 0) {
+            // extended by notifications which came after the timer was scheduled
+            timers.schedule(window, window.deadline);
+            return;
+        }
+        windows.remove(new WindowKey(window.chatId, window.group.getKey()));
+        openWindows.set(windows.size());
+        closed.add(window);
+    }
+
+    private void sendClosed() {
+        if (closed.isEmpty()) {
+            return;
+        }
+        Map<WebhookLane, List<Delivery>> deliveriesByLane = new EnumMap<>(WebhookLane.class);
+        for (Window window : closed) {
+            deliveriesByLane.computeIfAbsent(window.lane, lane -> new ArrayList<>()).add(toDelivery(window));
+            coalescedCounter.increment(window.count - 1);
+        }
+        closed.clear();
+        for (Map.Entry<WebhookLane, List<Delivery>> entry : deliveriesByLane.entrySet()) {
+            if (notificationOutbox.isEnabled()) {
+                notificationOutbox.enqueue(entry.getValue(), entry.getKey().ordinal());
+                continue;
+            }
+            for (Delivery delivery : entry.getValue()) {
+                deliveryScheduler.submit(delivery);
+            }
+        }
+    }
+
+    private Delivery toDelivery(Window window) {
+        if (window.count == 1) {
+            return new Delivery(window.chatId, window.firstMessage, 1);
+        }
+        DigestGroup group = window.group;
+        String text = switch (group.getKind()) {
+            case COMMENTS -> messageFormatter.formatNewCommentsDigest(group.getProjectName(), group.getSubject(),
+                    window.count, listNames(window.names));
+            case TAGS -> messageFormatter.formatNewTagsDigest(group.getProjectName(), window.count,
+                    listNames(window.names));
+            case DEPLOYS -> messageFormatter.formatPipelinesDeployedDigest(group.getProjectName(), group.getSubject(),
+                    window.count);
+        };
+        return new Delivery(window.chatId, new MessageWithKeyboard(text, window.keyboard), window.count);
+    }
+
+    private static String listNames(Set<String> names) {
+        StringBuilder list = new StringBuilder();
+        Iterator<String> iterator = names.iterator();
+        for (int i = 0; i < MAX_LISTED_NAMES && iterator.hasNext(); i++) {
+            if (i > 0) {
+                list.append(", ");
+            }
+            list.append(iterator.next());
+        }
+        if (names.size() > MAX_LISTED_NAMES) {
+            list.append(" and ").append(names.size() - MAX_LISTED_NAMES).append(" more");
+        }
+        return list.toString();
+    }
+
+    /**
+     * Notifications of one webhook passed to the coalescer thread
+     */
+    @Value
+    private static class Offer {
+        DigestGroup group;
+        String name;
+        WebhookLane lane;
+        Map<Long, MessageWithKeyboard> messagesByChat;
+    }
+
+    @Value
+    private static class WindowKey {
+        long chatId;
+        String group;
+    }
+
+    private final class Window {
+        final long chatId;
+        final DigestGroup group;
+        final long openedAt;
+        final Set<String> names = new LinkedHashSet<>();
+        MessageWithKeyboard firstMessage;
+        /**
+         * Keyboard of the latest notification, e.g. the link to the latest tag
+         */
+        List<InlineKeyboardButtonRow> keyboard;
+        WebhookLane lane;
+        int count;
+        long deadline;
+
+        Window(long chatId, DigestGroup group, long openedAt) {
+            this.chatId = chatId;
+            this.group = group;
+            this.openedAt = openedAt;
+        }
+
+        void add(MessageWithKeyboard message, String name, WebhookLane webhookLane, long now) {
+            if (count++ == 0) {
+                firstMessage = message;
+            }
+            keyboard = message.getKeyboard();
+            if (name != null) {
+                names.add(name);
+            }
+            if (lane == null || webhookLane.ordinal() < lane.ordinal()) {
+                lane = webhookLane;
+            }
+            long quietDeadline = now + quietWindowNanos;
+            long maxDeadline = openedAt + maxDelayNanos;
+            deadline = quietDeadline - maxDeadline < 0 ? quietDeadline : maxDeadline;
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package ru.z3r0ing.gitlabnotificator.config;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.validator.constraints.time.DurationMin;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
+import ru.z3r0ing.gitlabnotificator.journal.FsyncPolicy;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @Component
@@ -15,8 +25,24 @@ import org.springframework.validation.annotation.Validated;
 @Slf4j
 public class AppProperties {
 
+    @Valid
     private final Telegram telegram = new Telegram();
+    @Valid
     private final Gitlab gitlab = new Gitlab();
+    @Valid
+    private final Webhook webhook = new Webhook();
+    @Valid
+    private final Admin admin = new Admin();
+    @Valid
+    private final Replay replay = new Replay();
+    @Valid
+    private final Recipients recipients = new Recipients();
+    @Valid
+    private final Notifications notifications = new Notifications();
+    @Valid
+    private final Outbox outbox = new Outbox();
+    @Valid
+    private final Metrics metrics = new Metrics();
 
     @Data
     public static class Telegram {
@@ -25,6 +51,85 @@ public class AppProperties {
 
         @NotBlank(message = "Telegram bot token must be provided")
         private String botToken;
+
+        @Valid
+        private final RateLimit rateLimit = new RateLimit();
+        @Valid
+        private final Retry retry = new Retry();
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * Max attempts to send a message, including the first one; failed messages are moved to dead letters
+         */
+        @Min(value = 1, message = "Max send attempts must be positive")
+        private int maxAttempts = 5;
+
+        /**
+         * Backoff before the first retry of a transient failure, doubled for every next retry
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Max backoff between retries of a transient failure
+         */
+        private Duration maxBackoff = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class RateLimit {
+        /**
+         * Queue messages and send them within Bot API limits, otherwise messages are sent right away
+         */
+        private boolean enabled = true;
+
+        /**
+         * Max messages per second to all chats
+         */
+        @Min(value = 1, message = "Global rate limit must be positive")
+        private int globalPerSecond = 30;
+
+        /**
+         * Max messages per second to one private chat
+         */
+        @Min(value = 1, message = "Chat rate limit must be positive")
+        private int chatPerSecond = 1;
+
+        /**
+         * Max messages per minute to one group chat
+         */
+        @Min(value = 1, message = "Group chat rate limit must be positive")
+        private int groupChatPerMinute = 20;
+
+        /**
+         * Messages which may be sent at once after idle time, for each limit
+         */
+        @Min(value = 1, message = "Rate limit burst must be positive")
+        private int burst = 1;
+
+        /**
+         * Max Bot API requests waiting for response at once, one per chat at most
+         */
+        @Min(value = 1, message = "Max concurrent sends must be positive")
+        private int maxConcurrentSends = 16;
+
+        /**
+         * Dispatcher threads sharing the chats, messages of a chat are always dispatched by one of them in order
+         */
+        @Min(value = 1, message = "Delivery shards must be positive")
+        private int shards = 1;
+
+        /**
+         * Max messages waiting for sending, webhook workers wait for free space when it is reached
+         */
+        @Min(value = 1, message = "Max pending messages must be positive")
+        private int maxPending = 10000;
+
+        /**
+         * Rate limit state of a chat is dropped after this idle time
+         */
+        private Duration idleChatEviction = Duration.ofMinutes(1);
     }
 
     @Data
@@ -33,6 +138,312 @@ public class AppProperties {
         private String webhookSecret;
     }
 
+    @Data
+    public static class Admin {
+        /**
+         * Token for 'X-Admin-Token' header of admin endpoints, the endpoints are disabled if it is blank
+         */
+        private String token;
+    }
+
+    @Data
+    public static class Replay {
+        /**
+         * NDJSON file to replay on startup, the application exits after the replay
+         */
+        private String file;
+
+        /**
+         * Render notifications without sending them to Telegram
+         */
+        private boolean dryRun = false;
+
+        /**
+         * Amount of threads processing replayed webhooks
+         */
+        @Min(value = 1, message = "Replay parallelism must be positive")
+        private int parallelism = 4;
+
+        /**
+         * Largest parallelism a replay request may ask for
+         */
+        @Min(value = 1, message = "Replay max parallelism must be positive")
+        private int maxParallelism = 16;
+    }
+
+    @Data
+    public static class Metrics {
+        /**
+         * Names of projects whose webhooks are counted with their own 'project' tag, others are tagged 'other'
+         */
+        private List<String> projects = new ArrayList<>();
+    }
+
+    @Data
+    public static class Recipients {
+        /**
+         * How often the in-memory recipient index is reloaded from the database
+         */
+        @DurationMin(seconds = 1, message = "Recipient index refresh interval must be at least 1 second")
+        private Duration refreshInterval = Duration.ofMinutes(5);
+
+        /**
+         * Query the database for users and roles missing in the index, e.g. mapped by another instance
+         */
+        private boolean loadMissing = true;
+    }
+
+    @Data
+    public static class Notifications {
+        /**
+         * Merge different notifications of one webhook for the same chat into one Telegram message
+         */
+        private boolean mergeMessages = true;
+
+        /**
+         * Max length of a merged message, Telegram rejects messages longer than 4096 characters
+         */
+        @Min(value = 1, message = "Max message length must be positive")
+        private int maxMessageLength = 4096;
+
+        @Valid
+        private final Coalescing coalescing = new Coalescing();
+        @Valid
+        private final PipelineStatus pipelineStatus = new PipelineStatus();
+    }
+
+    @Data
+    public static class PipelineStatus {
+        /**
+         * Keep one live status message per pipeline in a chat, edited on every status change
+         */
+        private boolean enabled = false;
+
+        /**
+         * Status changes within this time after the previous one are sent as one edit with the latest status
+         */
+        private Duration debounce = Duration.ofSeconds(3);
+
+        /**
+         * Max amount of status messages kept in memory, older ones are looked up in the database
+         */
+        @Min(value = 1, message = "Pipeline status cache size must be positive")
+        private int cacheSize = 10_000;
+
+        /**
+         * Status messages are not edited after this time since their last change
+         */
+        private Duration retention = Duration.ofDays(7);
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * Fold comments on one MR, tags of one project and deploys of one ref sent to a chat in a short time
+         * into one digest message
+         */
+        private boolean enabled = false;
+
+        /**
+         * Digest is sent once no new notification of its group came for this time
+         */
+        private Duration quietWindow = Duration.ofSeconds(30);
+
+        /**
+         * Max time the first notification of a digest waits, however long the burst goes on
+         */
+        private Duration maxDelay = Duration.ofMinutes(2);
+
+        /**
+         * Resolution of the digest timers
+         */
+        private Duration tick = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Outbox {
+        /**
+         * Write notifications to the database outbox, so any instance can send them and none are lost on restart
+         */
+        private boolean enabled = false;
+
+        /**
+         * Max amount of messages claimed from the outbox at once
+         */
+        @Min(value = 1, message = "Outbox batch size must be positive")
+        private int batchSize = 100;
+
+        /**
+         * How long an idle worker waits before polling the outbox again
+         */
+        private Duration pollInterval = Duration.ofMillis(500);
+
+        /**
+         * How long claimed messages belong to the worker, renewed while it runs; unsent messages of a stopped worker
+         * are claimed again after the lease expires
+         */
+        private Duration leaseDuration = Duration.ofMinutes(10);
+
+        /**
+         * How often expired leases are returned to the outbox, old messages are deleted and backlog metrics are updated
+         */
+        private Duration reapInterval = Duration.ofSeconds(30);
+
+        /**
+         * How long sent and failed messages are kept in the outbox
+         */
+        private Duration retention = Duration.ofDays(1);
+
+        /**
+         * Max amount of claimed messages waiting to be sent by this instance
+         */
+        @Min(value = 1, message = "Outbox max in-flight must be positive")
+        private int maxInFlight = 1000;
+    }
+
+    @Data
+    public static class Webhook {
+        /**
+         * Amount of worker threads processing accepted webhooks
+         */
+        @Min(value = 1, message = "Webhook workers count must be positive")
+        private int workers = 4;
+
+        /**
+         * Amount of worker threads processing accepted webhooks when they are virtual threads
+         */
+        @Min(value = 1, message = "Webhook virtual workers count must be positive")
+        private int virtualWorkers = 256;
+
+        /**
+         * Max amount of payload bytes written to the debug log
+         */
+        private DataSize debugPayloadLimit = DataSize.ofKilobytes(4);
+
+        /**
+         * Max webhook body size buffered by the reactive endpoint, larger webhooks are rejected
+         */
+        private DataSize maxBodySize = DataSize.ofMegabytes(4);
+
+        @Valid
+        private final Lanes lanes = new Lanes();
+
+        @Valid
+        private final Journal journal = new Journal();
+
+        @Valid
+        private final PreFilter preFilter = new PreFilter();
+
+        @Valid
+        private final Dedup dedup = new Dedup();
+    }
+
+    @Data
+    public static class PreFilter {
+        /**
+         * Drop webhooks which produce no notifications before parsing them
+         */
+        private boolean enabled = true;
+
+        /**
+         * Max amount of request body bytes read to make the decision
+         */
+        private DataSize peekLimit = DataSize.ofKilobytes(64);
+    }
+
+    @Data
+    public static class Dedup {
+        /**
+         * Acknowledge webhooks retried by GitLab without processing them again
+         */
+        private boolean enabled = true;
+
+        /**
+         * Max amount of remembered webhook keys
+         */
+        @Min(value = 1, message = "Webhook dedup cache size must be positive")
+        private long maxSize = 10_000;
+
+        /**
+         * How long a webhook key is remembered
+         */
+        private Duration ttl = Duration.ofHours(1);
+    }
+
+    @Data
+    public static class Lanes {
+        /**
+         * Max amount of high priority webhooks waiting for processing
+         */
+        @Min(value = 1, message = "Webhook lane capacity must be positive")
+        private int highCapacity = 500;
+
+        /**
+         * Max amount of normal priority webhooks waiting for processing
+         */
+        @Min(value = 1, message = "Webhook lane capacity must be positive")
+        private int normalCapacity = 1000;
+
+        /**
+         * Max amount of low priority webhooks waiting for processing
+         */
+        @Min(value = 1, message = "Webhook lane capacity must be positive")
+        private int lowCapacity = 500;
+
+        /**
+         * Value of 'Retry-After' header when a webhook is shed
+         */
+        private Duration retryAfter = Duration.ofSeconds(30);
+
+        public int getCapacity(WebhookLane lane) {
+            return switch (lane) {
+                case HIGH -> highCapacity;
+                case NORMAL -> normalCapacity;
+                case LOW -> lowCapacity;
+            };
+        }
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * Write accepted webhooks to the disk journal and replay unprocessed ones on startup
+         */
+        private boolean enabled = true;
+
+        /**
+         * Directory for journal segments and checkpoint
+         */
+        @NotBlank(message = "Webhook journal directory must be provided")
+        private String directory = "./data/journal";
+
+        /**
+         * Max size of a single journal segment file
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        /**
+         * When writes are forced to the disk
+         */
+        private FsyncPolicy fsync = FsyncPolicy.BATCH;
+
+        /**
+         * Amount of writes forcing the disk sync in BATCH mode
+         */
+        @Min(value = 1, message = "Journal fsync batch size must be positive")
+        private int fsyncBatchSize = 32;
+
+        /**
+         * Max time between disk syncs in BATCH mode
+         */
+        private Duration fsyncInterval = Duration.ofMillis(200);
+
+        /**
+         * How long fully processed segments are kept
+         */
+        private Duration retention = Duration.ofHours(24);
+    }
+
     @PostConstruct
     public void validate() {
         if ("CHANGE_ME".equals(telegram.getBotToken())) {
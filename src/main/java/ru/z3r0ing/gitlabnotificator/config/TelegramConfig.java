@@ -2,21 +2,36 @@ package ru.z3r0ing.gitlabnotificator.config;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.util.concurrent.ExecutorService;
+
 @Configuration
 @RequiredArgsConstructor
 @Slf4j
 public class TelegramConfig {
 
     private final AppProperties appProperties;
+    private final WorkerThreads workerThreads;
 
     @Bean
     public TelegramClient telegramClient() {
-        return new OkHttpTelegramClient(appProperties.getTelegram().getBotToken());
+        // asynchronous sends run on the dispatcher threads, each waiting for its Bot API response
+        ExecutorService executor = workerThreads.newVirtualThreadPerTaskExecutor("telegram-http-");
+        Dispatcher dispatcher = executor != null ? new Dispatcher(executor) : new Dispatcher();
+        // all requests go to one host, so its limit must not be lower than the concurrency limit of the scheduler
+        int maxConcurrentSends = appProperties.getTelegram().getRateLimit().getMaxConcurrentSends();
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxConcurrentSends));
+        dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), maxConcurrentSends));
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .build();
+        return new OkHttpTelegramClient(httpClient, appProperties.getTelegram().getBotToken());
     }
 
 }
@@ -0,0 +1,74 @@
+package ru.z3r0ing.gitlabnotificator.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the threads doing blocking I/O: webhook workers and Telegram HTTP calls.
+ * <p>
+ * They are virtual threads if {@code spring.threads.virtual.enabled} is set and the application runs on Java 21+,
+ * the same switch which moves Tomcat request handling to virtual threads; platform threads otherwise.
+ * The application is compiled for Java 17 by default, virtual threads are created through Spring,
+ * so the same build runs on both.
+ */
+@Component
+@Slf4j
+public class WorkerThreads {
+
+    private final boolean virtual;
+    private final ThreadFactory virtualThreadFactory;
+
+    @Autowired
+    public WorkerThreads(Environment environment) {
+        this(Threading.VIRTUAL.isActive(environment));
+    }
+
+    /**
+     * @param virtual true to create virtual threads, requires Java 21+
+     */
+    public WorkerThreads(boolean virtual) {
+        this.virtual = virtual;
+        this.virtualThreadFactory = virtual ? new VirtualThreadTaskExecutor().getVirtualThreadFactory() : null;
+        log.info("Blocking I/O runs on {} threads", virtual ? "virtual" : "platform");
+    }
+
+    /**
+     * @return true if the threads are virtual
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @param name name of the thread
+     * @param task task of the thread
+     * @return unstarted thread which does not keep the JVM running
+     */
+    public Thread newThread(String name, Runnable task) {
+        if (virtual) {
+            Thread thread = virtualThreadFactory.newThread(task);
+            thread.setName(name);
+            return thread;
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @param namePrefix prefix of the thread names
+     * @return executor running every task on a new virtual thread, null for platform threads,
+     * so the caller keeps its default pool
+     */
+    public ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        return virtual ? new ExecutorServiceAdapter(new VirtualThreadTaskExecutor(namePrefix)) : null;
+    }
+}
@@ -0,0 +1,41 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.security.MessageDigest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Checks 'X-Admin-Token' header of admin endpoints. Admin endpoints are disabled while the token is not configured.
+ * The comparison takes the same time wherever the tokens differ, rejected requests are counted.
+ */
+@Component
+public class AdminTokenVerifier {
+
+    /**
+     * Configured token, null while admin endpoints are disabled
+     */
+    private final byte[] adminToken;
+    private final Counter rejectedCounter;
+
+    public AdminTokenVerifier(AppProperties appProperties, MeterRegistry meterRegistry) {
+        String token = appProperties.getAdmin().getToken();
+        this.adminToken = StringUtils.hasText(token) ? token.getBytes(UTF_8) : null;
+        this.rejectedCounter = Counter.builder("gitlab.admin.unauthorized")
+                .description("Admin requests rejected because of an incorrect or empty token")
+                .register(meterRegistry);
+    }
+
+    public boolean isValid(String token) {
+        if (adminToken != null && token != null && MessageDigest.isEqual(adminToken, token.getBytes(UTF_8))) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+}
@@ -0,0 +1,83 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.z3r0ing.gitlabnotificator.delivery.DeadLetterService;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.entity.DeadLetter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inspects Telegram messages which could not be sent and sends them again.
+ */
+@RestController
+@RequestMapping("/admin/dead-letters")
+@RequiredArgsConstructor
+@Slf4j
+public class DeadLetterController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final AdminTokenVerifier adminTokenVerifier;
+    private final DeadLetterService deadLetterService;
+    private final DeliveryScheduler deliveryScheduler;
+
+    @GetMapping
+    public ResponseEntity<List<DeadLetter>> list(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        if (!adminTokenVerifier.isValid(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(deadLetterService.findLatest(limit));
+    }
+
+    @PostMapping("/{id}/replay")
+    public ResponseEntity<Void> replay(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @PathVariable long id) {
+
+        if (!adminTokenVerifier.isValid(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return deadLetterService.take(id)
+                .map(delivery -> {
+                    deliveryScheduler.submit(delivery);
+                    return ResponseEntity.accepted().<Void>build();
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<Map<String, Integer>> replayOldest(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestParam(defaultValue = "100") int limit) {
+
+        if (!adminTokenVerifier.isValid(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<Delivery> deliveries = deadLetterService.takeOldest(limit);
+        deliveries.forEach(deliveryScheduler::submit);
+        log.info("Replayed {} dead letters", deliveries.size());
+        return ResponseEntity.accepted().body(Map.of("replayed", deliveries.size()));
+    }
+}
@@ -0,0 +1,36 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.security.MessageDigest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Checks 'X-Gitlab-Token' header of webhooks. The comparison takes the same time wherever the tokens differ,
+ * rejected webhooks are counted, e.g. to notice a secret changed in GitLab but not here.
+ */
+@Component
+public class GitlabTokenVerifier {
+
+    private final byte[] webhookSecret;
+    private final Counter rejectedCounter;
+
+    public GitlabTokenVerifier(AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.webhookSecret = appProperties.getGitlab().getWebhookSecret().getBytes(UTF_8);
+        this.rejectedCounter = Counter.builder("gitlab.webhook.unauthorized")
+                .description("Webhooks rejected because of an incorrect or empty token")
+                .register(meterRegistry);
+    }
+
+    public boolean isValid(String token) {
+        if (token != null && MessageDigest.isEqual(webhookSecret, token.getBytes(UTF_8))) {
+            return true;
+        }
+        rejectedCounter.increment();
+        return false;
+    }
+}
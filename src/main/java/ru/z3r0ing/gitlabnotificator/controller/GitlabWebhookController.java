@@ -2,43 +2,52 @@ package ru.z3r0ing.gitlabnotificator.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import ru.z3r0ing.gitlabnotificator.config.AppProperties;
-import ru.z3r0ing.gitlabnotificator.service.GitlabEventService;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+import ru.z3r0ing.gitlabnotificator.service.WebhookIngestionService;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/webhook/gitlab")
 @RequiredArgsConstructor
 @Slf4j
 public class GitlabWebhookController {
 
     private final AppProperties appProperties;
-    private final GitlabEventService gitlabEventService;
+    private final GitlabTokenVerifier gitlabTokenVerifier;
+    private final WebhookIngestionService webhookIngestionService;
 
     @PostMapping
     public ResponseEntity<String> handleGitlabWebhook(
             @RequestHeader(value = "X-Gitlab-Token", required = false) String token,
             @RequestHeader(value = "X-Gitlab-Event", required = false) String eventType,
-            @RequestBody(required = false) String payload) {
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = "X-Gitlab-Event-UUID", required = false) String eventUuid,
+            InputStream body) throws IOException {
 
-        if (token == null || !token.equals(appProperties.getGitlab().getWebhookSecret())) {
+        if (!gitlabTokenVerifier.isValid(token)) {
             log.warn("Got webhook request with incorrect or empty token");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
 
         log.info("Got GitLab webhook: {}", eventType);
-        if (log.isDebugEnabled()) {
-            log.debug("GitLab webhook payload: {}", payload);
-        }
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        // Idempotency-Key stays the same when GitLab retries the webhook
+        String deliveryKey = idempotencyKey != null ? idempotencyKey : eventUuid;
 
-        return ResponseEntity.ok().build();
+        // Body is parsed straight from the request stream, processing is asynchronous,
+        // so GitLab does not wait for notifications to be sent
+        IngestionResult result = webhookIngestionService.ingest(eventType, deliveryKey, body);
+        return WebhookResponses.of(result, appProperties);
     }
 }
@@ -0,0 +1,88 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+import ru.z3r0ing.gitlabnotificator.service.WebhookIngestionService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Webhook endpoint of the reactive stack ({@code reactive} profile), served by Netty event loop threads.
+ * <p>
+ * The body is collected from the request {@link DataBuffer}s without blocking, up to {@code maxBodySize},
+ * and parsed from the joined buffer. Ingestion only parses the webhook and puts it into a lane, so it runs on
+ * the event loop, except when the journal is enabled: writing the journal may wait for a disk sync, so it is moved
+ * to the bounded elastic scheduler. Processing and delivery stay the same as with the servlet endpoint.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/webhook/gitlab")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveGitlabWebhookController {
+
+    private final AppProperties appProperties;
+    private final GitlabTokenVerifier gitlabTokenVerifier;
+    private final WebhookIngestionService webhookIngestionService;
+
+    @PostMapping
+    public Mono<ResponseEntity<String>> handleGitlabWebhook(
+            @RequestHeader(value = "X-Gitlab-Token", required = false) String token,
+            @RequestHeader(value = "X-Gitlab-Event", required = false) String eventType,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            @RequestHeader(value = "X-Gitlab-Event-UUID", required = false) String eventUuid,
+            @RequestBody(required = false) Flux<DataBuffer> body) {
+
+        if (!gitlabTokenVerifier.isValid(token)) {
+            log.warn("Got webhook request with incorrect or empty token");
+            return Mono.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+        }
+
+        log.info("Got GitLab webhook: {}", eventType);
+
+        // Idempotency-Key stays the same when GitLab retries the webhook
+        String deliveryKey = idempotencyKey != null ? idempotencyKey : eventUuid;
+
+        int maxBodySize = (int) appProperties.getWebhook().getMaxBodySize().toBytes();
+        Mono<DataBuffer> joinedBody = DataBufferUtils.join(body != null ? body : Flux.empty(), maxBodySize);
+        if (appProperties.getWebhook().getJournal().isEnabled()) {
+            joinedBody = joinedBody.publishOn(Schedulers.boundedElastic());
+        }
+        return joinedBody
+                // the stream releases the buffer when closed
+                .map(buffer -> ingest(eventType, deliveryKey, buffer.asInputStream(true)))
+                // an empty body is ingested as well, so both stacks respond to it the same way
+                .switchIfEmpty(Mono.fromCallable(() -> ingest(eventType, deliveryKey, InputStream.nullInputStream())))
+                .map(result -> WebhookResponses.of(result, appProperties))
+                .onErrorResume(DataBufferLimitException.class, e -> {
+                    log.warn("Got GitLab webhook larger than {} bytes: {}", maxBodySize, eventType);
+                    return Mono.just(ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build());
+                });
+    }
+
+    private IngestionResult ingest(String eventType, String deliveryKey, InputStream body) {
+        try (InputStream stream = body) {
+            return webhookIngestionService.ingest(eventType, deliveryKey, stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.replay.ReplayReport;
+import ru.z3r0ing.gitlabnotificator.replay.ReplayService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replays a streamed NDJSON body of recorded webhooks, see {@link ReplayService} for the format.
+ * Servlet stack only, the replay blocks the request thread until it is done.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/admin/replay")
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayController {
+
+    private final AppProperties appProperties;
+    private final AdminTokenVerifier adminTokenVerifier;
+    private final ReplayService replayService;
+
+    @PostMapping
+    public ResponseEntity<ReplayReport> replay(
+            @RequestHeader(value = "X-Admin-Token", required = false) String token,
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            @RequestParam(required = false) Integer parallelism,
+            InputStream body) throws IOException {
+
+        if (!adminTokenVerifier.isValid(token)) {
+            log.warn("Got replay request with incorrect or empty admin token");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        int maxParallelism = appProperties.getReplay().getMaxParallelism();
+        if (parallelism != null && (parallelism < 1 || parallelism > maxParallelism)) {
+            log.warn("Got replay request with parallelism {} out of range 1..{}", parallelism, maxParallelism);
+            return ResponseEntity.badRequest().build();
+        }
+
+        int threads = parallelism != null ? parallelism : appProperties.getReplay().getParallelism();
+        log.info("Replaying webhooks from request, dry run: {}, parallelism: {}", dryRun, threads);
+        return ResponseEntity.ok(replayService.replay(body, dryRun, threads));
+    }
+}
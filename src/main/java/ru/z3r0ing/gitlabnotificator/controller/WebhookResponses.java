@@ -0,0 +1,32 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+
+/**
+ * Responses of the webhook endpoints, the same for the servlet and the reactive stack.
+ */
+final class WebhookResponses {
+
+    private WebhookResponses() {
+    }
+
+    static ResponseEntity<String> of(IngestionResult result, AppProperties appProperties) {
+        return switch (result) {
+            // GitLab should back off and retry the webhook later
+            case SHED -> retryLater(HttpStatus.TOO_MANY_REQUESTS, appProperties);
+            case REJECTED -> retryLater(HttpStatus.SERVICE_UNAVAILABLE, appProperties);
+            default -> ResponseEntity.accepted().build();
+        };
+    }
+
+    private static ResponseEntity<String> retryLater(HttpStatus status, AppProperties appProperties) {
+        long retryAfterSeconds = appProperties.getWebhook().getLanes().getRetryAfter().toSeconds();
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .build();
+    }
+}
@@ -0,0 +1,132 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.entity.DeadLetter;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.repository.DeadLetterRepository;
+import ru.z3r0ing.gitlabnotificator.util.KeyboardJson;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores Telegram messages which could not be sent, so they can be inspected and sent again later.
+ */
+@Service
+@Slf4j
+public class DeadLetterService {
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final DeadLetterRepository deadLetterRepository;
+    private final Map<FailureType, Counter> deadLetterCounters = new EnumMap<>(FailureType.class);
+
+    public DeadLetterService(DeadLetterRepository deadLetterRepository, MeterRegistry meterRegistry) {
+        this.deadLetterRepository = deadLetterRepository;
+        for (FailureType failureType : FailureType.values()) {
+            deadLetterCounters.put(failureType, Counter.builder("telegram.delivery.dead.letters")
+                    .description("Messages which could not be sent and were moved to the dead-letter store")
+                    .tag("type", failureType.getTag())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Stores the message which failed to be sent. Failed edits of sent messages are only logged.
+     *
+     * @param delivery    message
+     * @param attempts    amount of attempts made
+     * @param failureType kind of the last failure
+     * @param e           failure of the last attempt
+     */
+    public void store(Delivery delivery, int attempts, FailureType failureType, TelegramApiException e) {
+        if (delivery.getEditMessageId() != null) {
+            // replaying an edit would send the outdated text as a new message, the sender of the edit handles it
+            log.warn("Edit of a message in a chat {} failed after {} attempts: {}",
+                    delivery.getChatId(), attempts, e.getMessage());
+            return;
+        }
+        deadLetterCounters.get(failureType).increment();
+        try {
+            deadLetterRepository.save(DeadLetter.builder()
+                    .chatId(delivery.getChatId())
+                    .message(delivery.getMessageWithKeyboard().getMessage())
+                    .keyboard(KeyboardJson.write(delivery.getMessageWithKeyboard().getKeyboard()))
+                    .attempts(attempts)
+                    .errorCode(e instanceof TelegramApiRequestException requestException
+                            ? requestException.getErrorCode() : null)
+                    .error(truncate(e.getMessage()))
+                    .createdAt(Instant.now())
+                    .build());
+            log.warn("Message to a chat {} moved to dead letters after {} attempts: {}",
+                    delivery.getChatId(), attempts, e.getMessage());
+        } catch (RuntimeException storeException) {
+            // the message would be lost otherwise, so at least keep it in the log
+            log.error("Could not store dead letter to a chat {}: {}", delivery.getChatId(),
+                    delivery.getMessageWithKeyboard().getMessage(), storeException);
+        }
+    }
+
+    /**
+     * @param limit max amount of dead letters to return
+     * @return the newest dead letters first
+     */
+    public List<DeadLetter> findLatest(int limit) {
+        return deadLetterRepository.findAllByOrderByIdDesc(PageRequest.of(0, limit));
+    }
+
+    /**
+     * Removes the dead letter from the store.
+     *
+     * @param id dead letter ID
+     * @return message to send again, empty if there is no such dead letter
+     */
+    @Transactional
+    public Optional<Delivery> take(long id) {
+        return deadLetterRepository.findById(id).map(deadLetter -> {
+            deadLetterRepository.delete(deadLetter);
+            return toDelivery(deadLetter);
+        });
+    }
+
+    /**
+     * Removes the oldest dead letters from the store.
+     *
+     * @param limit max amount of dead letters to take
+     * @return messages to send again, the oldest first
+     */
+    @Transactional
+    public List<Delivery> takeOldest(int limit) {
+        List<DeadLetter> deadLetters = deadLetterRepository.findAllByOrderByIdAsc(PageRequest.of(0, limit));
+        deadLetterRepository.deleteAll(deadLetters);
+        List<Delivery> deliveries = new ArrayList<>(deadLetters.size());
+        for (DeadLetter deadLetter : deadLetters) {
+            deliveries.add(toDelivery(deadLetter));
+        }
+        return deliveries;
+    }
+
+    private Delivery toDelivery(DeadLetter deadLetter) {
+        return new Delivery(deadLetter.getChatId(),
+                new MessageWithKeyboard(deadLetter.getMessage(), KeyboardJson.read(deadLetter.getKeyboard())), 1);
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import org.springframework.lang.Nullable;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+/**
+ * Notified by {@link DeliveryScheduler} once a message is done with, after all retries.
+ * Called on a sender thread, so it must not block.
+ */
+@FunctionalInterface
+public interface DeliveryCallback {
+
+    DeliveryCallback NONE = sent -> {
+    };
+
+    /**
+     * @param sent true if the message was sent, false if it was moved to dead letters or dropped when interrupted
+     */
+    void onComplete(boolean sent);
+
+    /**
+     * Called before {@link #onComplete(boolean)} once the message is sent.
+     *
+     * @param message message created by Bot API, null for edits of existing messages
+     */
+    default void onSent(@Nullable Message message) {
+    }
+}
@@ -0,0 +1,720 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.service.TelegramService;
+import ru.z3r0ing.gitlabnotificator.util.TokenBucket;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends Telegram messages within Bot API rate limits.
+ * <p>
+ * Messages are queued per chat and dispatched as soon as both the global token bucket and the bucket of the chat
+ * allow it; group chats (negative IDs) have their own, lower limit. Chats are served round-robin, one message
+ * in flight per chat, so messages of a chat keep their order. Messages are sent with the asynchronous Bot API client,
+ * up to {@code max-concurrent-sends} requests at once, so a broadcast to many chats takes about one round-trip per
+ * {@code max-concurrent-sends} chats rather than one per chat, and no thread waits for Bot API responses.
+ * <p>
+ * Chats are partitioned between {@code shards} dispatcher threads. Only the dispatcher of a chat touches its queue
+ * and bucket: producers and responses pass work to it through lock-free inboxes, and a chat stays on its shard while
+ * it has messages, so its order is kept while chats are dispatched in parallel. A new chat goes to the shard its ID
+ * hashes to, unless another shard has a smaller backlog: chats are moved off a busy shard once they are idle.
+ * The global bucket and the concurrency limit are shared by the shards. Responses are handled on a single completion
+ * thread, which keeps dead letter writes off the client threads. Buckets of idle chats are evicted.
+ * <p>
+ * Failed messages are retried according to {@link RetryPolicy}: the message goes back to the head of its chat queue
+ * and the chat is paused until the retry time, so no thread waits for it and the chat keeps its order.
+ * Edits of messages sent before (see {@link Delivery#getEditMessageId()}) are queued and limited the same way.
+ * A message with Markdown Telegram could not parse is sent once more as plain text rather than lost.
+ * Messages which cannot be sent are moved to {@link DeadLetterService}.
+ */
+@Service
+@Slf4j
+public class DeliveryScheduler {
+
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    private final TelegramService telegramService;
+    private final RetryPolicy retryPolicy;
+    private final DeadLetterService deadLetterService;
+    private final AppProperties.RateLimit rateLimit;
+    private final Semaphore pendingPermits;
+    private final Shard[] shards;
+    /**
+     * Shards of the chats with a queue, only used with more than one shard
+     */
+    private final Map<Long, Route> routes = new ConcurrentHashMap<>();
+    private final Timer scheduleDelay;
+    private final Timer sentLatency;
+    private final Timer failedLatency;
+    private final AtomicInteger sendsInFlight = new AtomicInteger();
+    private final DistributionSummary chatQueueDepth;
+    private final AtomicInteger activeChats = new AtomicInteger();
+    private final Map<FailureType, Counter> retryCounters = new EnumMap<>(FailureType.class);
+    private final Map<ErrorCounterKey, Counter> errorCounters = new ConcurrentHashMap<>();
+    private final Counter rebalancedCounter;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Shared by the shards, guarded by itself
+     */
+    private TokenBucket globalBucket;
+
+    private volatile boolean running;
+    private volatile boolean started;
+    private ExecutorService completions;
+
+    public DeliveryScheduler(AppProperties appProperties,
+                             TelegramService telegramService,
+                             RetryPolicy retryPolicy,
+                             DeadLetterService deadLetterService,
+                             MeterRegistry meterRegistry) {
+        this.telegramService = telegramService;
+        this.retryPolicy = retryPolicy;
+        this.deadLetterService = deadLetterService;
+        this.rateLimit = appProperties.getTelegram().getRateLimit();
+        this.pendingPermits = new Semaphore(rateLimit.getMaxPending());
+        this.shards = new Shard[rateLimit.getShards()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i);
+        }
+
+        this.scheduleDelay = Timer.builder("telegram.delivery.schedule.delay")
+                .description("Time messages wait for rate limits before sending")
+                .register(meterRegistry);
+        this.chatQueueDepth = DistributionSummary.builder("telegram.delivery.chat.queue.depth")
+                .description("Messages queued for the chat, recorded when a message is queued")
+                .register(meterRegistry);
+        Gauge.builder("telegram.delivery.pending", this, DeliveryScheduler::getPendingCount)
+                .description("Messages waiting for sending")
+                .register(meterRegistry);
+        this.sentLatency = Timer.builder("telegram.delivery.send")
+                .description("Bot API response time of sent messages")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        this.failedLatency = Timer.builder("telegram.delivery.send")
+                .description("Bot API response time of sent messages")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        Gauge.builder("telegram.delivery.in.flight", sendsInFlight, AtomicInteger::get)
+                .description("Bot API requests waiting for response")
+                .register(meterRegistry);
+        Gauge.builder("telegram.delivery.chats", activeChats, AtomicInteger::get)
+                .description("Chats with a rate limit bucket")
+                .register(meterRegistry);
+        for (FailureType failureType : FailureType.values()) {
+            retryCounters.put(failureType, Counter.builder("telegram.delivery.retries")
+                    .description("Messages scheduled to be sent again after a failure")
+                    .tag("type", failureType.getTag())
+                    .register(meterRegistry));
+        }
+        for (Shard shard : shards) {
+            String tag = String.valueOf(shard.index);
+            Gauge.builder("telegram.delivery.shard.backlog", shard.backlog, AtomicInteger::get)
+                    .description("Messages of the chats of the shard waiting for sending")
+                    .tag("shard", tag)
+                    .register(meterRegistry);
+            Gauge.builder("telegram.delivery.shard.max.chat.depth", shard, s -> s.maxChatDepth)
+                    .description("Messages queued for the busiest chat of the shard")
+                    .tag("shard", tag)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("telegram.delivery.shard.skew", this, DeliveryScheduler::getShardSkew)
+                .description("Backlog of the busiest shard relative to the mean backlog, 1 if balanced")
+                .register(meterRegistry);
+        this.rebalancedCounter = Counter.builder("telegram.delivery.shard.rebalanced")
+                .description("Chats sent to a less busy shard than the one their ID hashes to")
+                .register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!rateLimit.isEnabled()) {
+            log.info("Telegram rate limiting is disabled, messages are sent right away");
+            return;
+        }
+        running = true;
+        globalBucket = new TokenBucket(rateLimit.getGlobalPerSecond(), Duration.ofSeconds(1), rateLimit.getBurst(),
+                System.nanoTime());
+        completions = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "telegram-completion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Shard shard : shards) {
+            Thread thread = new Thread(shard::dispatch, "telegram-dispatcher-" + shard.index);
+            thread.setDaemon(true);
+            shard.thread = thread;
+            thread.start();
+        }
+        started = true;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!started) {
+            return;
+        }
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            shard.thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        completions.shutdown();
+        completions.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (getPendingCount() > 0) {
+            log.warn("Telegram dispatcher stopped with {} unsent messages", getPendingCount());
+        }
+    }
+
+    /**
+     * Queues the message for sending. Waits for free space if {@code max-pending} messages are already queued,
+     * so a slow Bot API pushes back on the webhook workers.
+     *
+     * @param delivery message to send
+     */
+    public void submit(Delivery delivery) {
+        submit(delivery, DeliveryCallback.NONE);
+    }
+
+    /**
+     * Same as {@link #submit(Delivery)}, notifying the callback once the message is sent or moved to dead letters.
+     *
+     * @param delivery message to send
+     * @param callback notified of the outcome
+     */
+    public void submit(Delivery delivery, DeliveryCallback callback) {
+        if (!started) {
+            // no retries without the dispatcher, a failed message goes to dead letters right away
+            PendingMessage message = new PendingMessage(delivery, System.nanoTime(), callback);
+            TelegramApiException failure = send(message);
+            if (failure != null && retryPolicy.classify(failure) == FailureType.BAD_MARKUP
+                    && fallBackToPlainText(message, failure)) {
+                failure = send(message);
+            }
+            if (failure != null) {
+                deadLetterService.store(delivery, message.attempts, retryPolicy.classify(failure), failure);
+            } else {
+                callback.onSent(message.sentMessage);
+            }
+            callback.onComplete(failure == null);
+            return;
+        }
+        try {
+            pendingPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing message to a chat {}, message is dropped", delivery.getChatId());
+            callback.onComplete(false);
+            return;
+        }
+        PendingMessage message = new PendingMessage(delivery, System.nanoTime(), callback);
+        Shard shard = route(message);
+        shard.backlog.incrementAndGet();
+        shard.inbox.add(message);
+        LockSupport.unpark(shard.thread);
+    }
+
+    /**
+     * @return amount of messages queued or being sent
+     */
+    public int getPendingCount() {
+        return rateLimit.getMaxPending() - pendingPermits.availablePermits();
+    }
+
+    /**
+     * @return backlog of the busiest shard divided by the mean backlog, 0 if nothing is queued
+     */
+    public double getShardSkew() {
+        long total = 0;
+        int max = 0;
+        for (Shard shard : shards) {
+            int backlog = shard.backlog.get();
+            total += backlog;
+            max = Math.max(max, backlog);
+        }
+        return total == 0 ? 0 : (double) max * shards.length / total;
+    }
+
+    /**
+     * Finds the shard of the chat of the message, choosing one for a chat without queued messages.
+     */
+    private Shard route(PendingMessage message) {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+        Route route = routes.compute(message.delivery.getChatId(), (chatId, existing) -> {
+            Route chatRoute = existing != null ? existing : new Route(leastBusyShard(chatId));
+            // counted within compute, so the shard cannot release the chat meanwhile
+            chatRoute.pending.incrementAndGet();
+            return chatRoute;
+        });
+        message.route = route;
+        return route.shard;
+    }
+
+    private Shard leastBusyShard(long chatId) {
+        int hashed = Math.floorMod(Long.hashCode(chatId), shards.length);
+        Shard chosen = shards[hashed];
+        for (int i = 1; i < shards.length; i++) {
+            Shard shard = shards[(hashed + i) % shards.length];
+            if (shard.backlog.get() < chosen.backlog.get()) {
+                chosen = shard;
+            }
+        }
+        if (chosen.index != hashed) {
+            rebalancedCounter.increment();
+        }
+        return chosen;
+    }
+
+    /**
+     * Drops the route of an idle chat, so its next message may go to another shard.
+     *
+     * @return false if messages to the chat were queued meanwhile, so the chat must stay on its shard
+     */
+    private boolean releaseRoute(long chatId) {
+        if (shards.length == 1) {
+            return true;
+        }
+        return routes.computeIfPresent(chatId, (id, route) -> route.pending.get() == 0 ? null : route) == null;
+    }
+
+    /**
+     * Takes a request slot of {@code max-concurrent-sends}.
+     *
+     * @return false if all slots are taken
+     */
+    private boolean tryStartSend() {
+        int inFlight;
+        do {
+            inFlight = sendsInFlight.get();
+            if (inFlight >= rateLimit.getMaxConcurrentSends()) {
+                return false;
+            }
+        } while (!sendsInFlight.compareAndSet(inFlight, inFlight + 1));
+        return true;
+    }
+
+    private void finishSend() {
+        sendsInFlight.decrementAndGet();
+        for (Shard shard : shards) {
+            if (shard.waitingForSend) {
+                shard.waitingForSend = false;
+                LockSupport.unpark(shard.thread);
+            }
+        }
+    }
+
+    /**
+     * @return 0 if a global token was taken, otherwise nanoseconds until the next one
+     */
+    private long takeGlobalToken(long now) {
+        synchronized (globalBucket) {
+            return globalBucket.tryTake(now) ? 0 : Math.max(1, globalBucket.nanosUntilToken(now));
+        }
+    }
+
+    private void sendAsync(ChatQueue chat, PendingMessage message) {
+        message.attempts++;
+        long startedAt = System.nanoTime();
+        Integer editMessageId = message.delivery.getEditMessageId();
+        CompletableFuture<? extends Serializable> response;
+        try {
+            response = editMessageId == null
+                    ? telegramService.sendMarkdownMessageAsync(chat.chatId, message.payload)
+                    : telegramService.editMarkdownMessageAsync(chat.chatId, editMessageId, message.payload);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenCompleteAsync((result, error) -> {
+            if (editMessageId == null && result instanceof Message sentMessage) {
+                message.sentMessage = sentMessage;
+            }
+            complete(chat, message, startedAt, error);
+        }, completions);
+    }
+
+    private void complete(ChatQueue chat, PendingMessage message, long startedAt, Throwable error) {
+        finishSend();
+        (error == null ? sentLatency : failedLatency).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        PendingMessage retry = null;
+        boolean sent = error == null;
+        try {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            if (cause != null) {
+                if (!(cause instanceof TelegramApiException)) {
+                    log.error("Error sending message to a chat {}", message.delivery.getChatId(), cause);
+                }
+                retry = scheduleRetry(message, toApiException(cause));
+            }
+        } catch (RuntimeException e) {
+            log.error("Error handling response to a chat {}", message.delivery.getChatId(), e);
+        } finally {
+            if (retry == null) {
+                pendingPermits.release();
+                chat.shard.backlog.decrementAndGet();
+                if (message.route != null) {
+                    message.route.pending.decrementAndGet();
+                }
+                if (sent) {
+                    message.callback.onSent(message.sentMessage);
+                }
+                message.callback.onComplete(sent);
+            }
+            chat.shard.completed.add(new Completion(chat, retry));
+            LockSupport.unpark(chat.shard.thread);
+        }
+    }
+
+    /**
+     * @return the message to send again, or null if it was moved to dead letters
+     */
+    private PendingMessage scheduleRetry(PendingMessage message, TelegramApiException failure) {
+        FailureType failureType = retryPolicy.classify(failure);
+        countError(failureType, failure);
+        if (failureType == FailureType.BAD_MARKUP && fallBackToPlainText(message, failure)) {
+            message.notBefore = System.nanoTime();
+            return message;
+        }
+        long delay = retryPolicy.retryDelay(failure, message.attempts);
+        if (delay == RetryPolicy.NO_RETRY) {
+            deadLetterService.store(message.delivery, message.attempts, failureType, failure);
+            return null;
+        }
+        retryCounters.get(failureType).increment();
+        log.info("Could not send message to a chat {} ({}), attempt {}, retrying in {} ms: {}",
+                message.delivery.getChatId(), failureType.getTag(), message.attempts,
+                TimeUnit.NANOSECONDS.toMillis(delay), failure.getMessage());
+        message.notBefore = System.nanoTime() + delay;
+        return message;
+    }
+
+    private void countError(FailureType failureType, TelegramApiException failure) {
+        // Bot API error codes are a short list of HTTP statuses, 'none' if there was no response
+        Integer errorCode = failure instanceof TelegramApiRequestException requestException
+                ? requestException.getErrorCode() : null;
+        errorCounters.computeIfAbsent(new ErrorCounterKey(errorCode, failureType),
+                        key -> Counter.builder("telegram.delivery.errors")
+                                .description("Failed Bot API calls by error code")
+                                .tag("code", key.getCode() != null ? key.getCode().toString() : "none")
+                                .tag("type", key.getType().getTag())
+                                .register(meterRegistry))
+                .increment();
+    }
+
+    /**
+     * Switches a message Telegram could not parse to plain text, so the next attempt is accepted.
+     *
+     * @return false if the message is plain text already
+     */
+    private boolean fallBackToPlainText(PendingMessage message, TelegramApiException failure) {
+        if (!message.payload.isMarkdown()) {
+            return false;
+        }
+        retryCounters.get(FailureType.BAD_MARKUP).increment();
+        log.warn("Telegram could not parse a message to a chat {}, sending it as plain text: {}",
+                message.delivery.getChatId(), failure.getMessage());
+        message.payload = message.payload.toPlainText();
+        return true;
+    }
+
+    /**
+     * Sends the message waiting for the response, used without the dispatcher.
+     *
+     * @return failure of the attempt, null if the message was sent
+     */
+    private TelegramApiException send(PendingMessage message) {
+        Delivery delivery = message.delivery;
+        message.attempts++;
+        try {
+            if (delivery.getEditMessageId() == null) {
+                message.sentMessage = telegramService.sendMarkdownMessageOrThrow(delivery.getChatId(), message.payload);
+            } else {
+                telegramService.editMarkdownMessageOrThrow(delivery.getChatId(), delivery.getEditMessageId(),
+                        message.payload);
+            }
+            return null;
+        } catch (TelegramApiException e) {
+            return e;
+        } catch (RuntimeException e) {
+            log.error("Error sending message to a chat {}", delivery.getChatId(), e);
+            return toApiException(e);
+        }
+    }
+
+    /**
+     * Wraps an unexpected failure of a Bot API call, e.g. a task rejected by the client, so it is classified
+     * as {@link FailureType#TRANSIENT}: retried, and moved to dead letters once out of attempts.
+     */
+    private static TelegramApiException toApiException(Throwable failure) {
+        return failure instanceof TelegramApiException apiException ? apiException
+                : new TelegramApiException("Bot API call failed: " + failure, failure);
+    }
+
+    private static final class PendingMessage {
+        final Delivery delivery;
+        final long queuedAt;
+        final DeliveryCallback callback;
+        // handed between the dispatcher and the completion thread through the response future and a concurrent queue
+        int attempts;
+        long notBefore;
+        /**
+         * Payload of the next attempt, the plain text variant after Telegram could not parse the Markdown
+         */
+        PreparedNotification payload;
+        /**
+         * Message created by Bot API, null until sent and for edits
+         */
+        Message sentMessage;
+        /**
+         * Route of the chat while the message is pending, null with one shard
+         */
+        Route route;
+
+        PendingMessage(Delivery delivery, long queuedAt, DeliveryCallback callback) {
+            this.delivery = delivery;
+            this.payload = delivery.getPayload();
+            this.queuedAt = queuedAt;
+            this.callback = callback;
+        }
+    }
+
+    private static final class ChatQueue {
+        final Shard shard;
+        final long id;
+        /**
+         * Chat ID as Bot API expects it, kept so sends to the chat do not convert it every time
+         */
+        final String chatId;
+        final TokenBucket bucket;
+        final ArrayDeque<PendingMessage> messages = new ArrayDeque<>();
+        boolean inFlight;
+        long lastSentAt;
+        /**
+         * Messages of the chat are not sent before this time, e.g. while waiting for 'retry_after'
+         */
+        long pausedUntil;
+
+        ChatQueue(Shard shard, long chatId, TokenBucket bucket, long now) {
+            this.shard = shard;
+            this.id = chatId;
+            this.chatId = String.valueOf(chatId);
+            this.bucket = bucket;
+            this.pausedUntil = now;
+        }
+    }
+
+    /**
+     * Dispatcher of a part of the chats, all fields but the atomics and the inboxes are owned by its thread
+     */
+    private final class Shard {
+        final int index;
+        final Queue<PendingMessage> inbox = new ConcurrentLinkedQueue<>();
+        final Queue<Completion> completed = new ConcurrentLinkedQueue<>();
+        /**
+         * Messages routed to the shard and not completed yet, including retries
+         */
+        final AtomicInteger backlog = new AtomicInteger();
+        final Map<Long, ChatQueue> chats = new HashMap<>();
+        final ArrayDeque<ChatQueue> ready = new ArrayDeque<>();
+        long nextEvictionAt;
+        volatile Thread thread;
+        /**
+         * Set when all request slots were taken, so a response of any shard wakes the dispatcher up
+         */
+        volatile boolean waitingForSend;
+        /**
+         * Messages of the busiest chat as of the last eviction pass
+         */
+        volatile int maxChatDepth;
+
+        Shard(int index) {
+            this.index = index;
+        }
+
+        void dispatch() {
+            // keep sending after stop() was called, so queued messages are not lost on graceful shutdown
+            while (running || backlog.get() > 0) {
+                long now = System.nanoTime();
+                drainCompleted();
+                drainInbox(now);
+                long parkNanos = dispatchReady(now);
+                if (now - nextEvictionAt >= 0) {
+                    evictIdleChats(now);
+                }
+                LockSupport.parkNanos(this, parkNanos);
+            }
+        }
+
+        private void drainCompleted() {
+            Completion completion;
+            while ((completion = completed.poll()) != null) {
+                ChatQueue chat = completion.getChat();
+                chat.inFlight = false;
+                if (completion.getRetry() != null) {
+                    chat.messages.addFirst(completion.getRetry());
+                    chat.pausedUntil = completion.getRetry().notBefore;
+                }
+                if (!chat.messages.isEmpty()) {
+                    ready.add(chat);
+                }
+            }
+        }
+
+        private void drainInbox(long now) {
+            PendingMessage message;
+            while ((message = inbox.poll()) != null) {
+                long chatId = message.delivery.getChatId();
+                ChatQueue chat = chats.get(chatId);
+                if (chat == null) {
+                    chat = new ChatQueue(this, chatId, newChatBucket(chatId, now), now);
+                    chats.put(chatId, chat);
+                    activeChats.incrementAndGet();
+                }
+                chat.messages.add(message);
+                chatQueueDepth.record(chat.messages.size());
+                if (!chat.inFlight && chat.messages.size() == 1) {
+                    ready.add(chat);
+                }
+            }
+        }
+
+        /**
+         * Sends one message of every ready chat whose bucket has a token, while the global bucket has tokens
+         * and less than {@code max-concurrent-sends} requests are in flight.
+         *
+         * @return nanoseconds to wait until the next message may be sent
+         */
+        private long dispatchReady(long now) {
+            long parkNanos = MAX_PARK_NANOS;
+            for (int i = ready.size(); i > 0; i--) {
+                ChatQueue chat = ready.peek();
+                long chatWait = Math.max(chat.bucket.nanosUntilToken(now), chat.pausedUntil - now);
+                if (chatWait > 0) {
+                    ready.add(ready.poll());
+                    parkNanos = Math.min(parkNanos, chatWait);
+                    continue;
+                }
+                if (!tryStartSend()) {
+                    // a response wakes the dispatcher up, checked again in case it came meanwhile
+                    waitingForSend = true;
+                    if (!tryStartSend()) {
+                        return parkNanos;
+                    }
+                    waitingForSend = false;
+                }
+                long globalWait = takeGlobalToken(now);
+                if (globalWait > 0) {
+                    // the chat stays first in line for the next global token
+                    finishSend();
+                    return Math.min(parkNanos, globalWait);
+                }
+                ready.poll();
+                chat.bucket.tryTake(now);
+                chat.inFlight = true;
+                chat.lastSentAt = now;
+                PendingMessage message = chat.messages.poll();
+                if (message.attempts == 0) {
+                    scheduleDelay.record(now - message.queuedAt, TimeUnit.NANOSECONDS);
+                }
+                sendAsync(chat, message);
+            }
+            return parkNanos;
+        }
+
+        private void evictIdleChats(long now) {
+            long idleNanos = rateLimit.getIdleChatEviction().toNanos();
+            int maxDepth = 0;
+            Iterator<ChatQueue> iterator = chats.values().iterator();
+            while (iterator.hasNext()) {
+                ChatQueue chat = iterator.next();
+                maxDepth = Math.max(maxDepth, chat.messages.size());
+                // a full bucket is recreated in the same state, so eviction never lets a chat exceed its limit,
+                // even if the chat moves to another shard
+                if (!chat.inFlight && chat.messages.isEmpty() && now - chat.lastSentAt >= idleNanos
+                        && chat.bucket.isFull(now) && releaseRoute(chat.id)) {
+                    iterator.remove();
+                    activeChats.decrementAndGet();
+                }
+            }
+            maxChatDepth = maxDepth;
+            nextEvictionAt = now + Math.min(idleNanos, MAX_PARK_NANOS);
+        }
+
+        private TokenBucket newChatBucket(long chatId, long now) {
+            // group and channel IDs are negative in Bot API
+            return chatId < 0
+                    ? new TokenBucket(rateLimit.getGroupChatPerMinute(), Duration.ofMinutes(1), rateLimit.getBurst(),
+                    now)
+                    : new TokenBucket(rateLimit.getChatPerSecond(), Duration.ofSeconds(1), rateLimit.getBurst(), now);
+        }
+    }
+
+    /**
+     * Shard of a chat with pending messages
+     */
+    private static final class Route {
+        final Shard shard;
+        final AtomicInteger pending = new AtomicInteger();
+
+        Route(Shard shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * Tags of a {@code telegram.delivery.errors} counter
+     */
+    @Value
+    private static class ErrorCounterKey {
+        Integer code;
+        FailureType type;
+    }
+
+    /**
+     * Result of a send passed from the completion thread back to the dispatcher
+     */
+    @Value
+    private static class Completion {
+        ChatQueue chat;
+        PendingMessage retry;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Kind of a failed Bot API call, decides whether the message is sent again.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum FailureType {
+    /**
+     * 429 Too Many Requests, retried after the 'retry_after' given by Telegram
+     */
+    RATE_LIMITED("rate_limited", true),
+    /**
+     * Network errors and 5xx responses, retried with exponential backoff
+     */
+    TRANSIENT("transient", true),
+    /**
+     * 400 "can't parse entities", the message is sent once more as plain text
+     */
+    BAD_MARKUP("bad_markup", false),
+    /**
+     * Request Telegram will never accept, e.g. 400 bad request or 403 bot blocked by the user
+     */
+    PERMANENT("permanent", false);
+
+    private final String tag;
+    private final boolean retryable;
+}
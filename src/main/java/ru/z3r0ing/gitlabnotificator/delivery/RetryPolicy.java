@@ -0,0 +1,86 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a message failed to be sent is sent again.
+ * Rate limited messages wait exactly the 'retry_after' returned by Telegram,
+ * transient failures wait an exponentially growing delay with jitter, so retries of many messages spread out.
+ */
+@Component
+public class RetryPolicy {
+
+    /**
+     * Returned by {@link #retryDelay} when the message must not be sent again
+     */
+    public static final long NO_RETRY = -1;
+
+    /**
+     * Part of the Bot API error description when the message has invalid Markdown
+     */
+    private static final String BAD_MARKUP_DESCRIPTION = "can't parse entities";
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    public RetryPolicy(AppProperties appProperties) {
+        AppProperties.Retry retry = appProperties.getTelegram().getRetry();
+        this.maxAttempts = retry.getMaxAttempts();
+        this.initialBackoffNanos = retry.getInitialBackoff().toNanos();
+        this.maxBackoffNanos = retry.getMaxBackoff().toNanos();
+    }
+
+    public FailureType classify(TelegramApiException e) {
+        if (!(e instanceof TelegramApiRequestException requestException) || requestException.getErrorCode() == null) {
+            // no response from Bot API, e.g. connection reset or timeout
+            return FailureType.TRANSIENT;
+        }
+        int errorCode = requestException.getErrorCode();
+        if (errorCode == 429) {
+            return FailureType.RATE_LIMITED;
+        }
+        if (errorCode == 400 && isBadMarkup(requestException.getApiResponse())) {
+            return FailureType.BAD_MARKUP;
+        }
+        return errorCode >= 500 ? FailureType.TRANSIENT : FailureType.PERMANENT;
+    }
+
+    /**
+     * @param e        failure of the last attempt
+     * @param attempts amount of attempts made, including the failed one
+     * @return nanoseconds to wait before the next attempt, or {@link #NO_RETRY}
+     */
+    public long retryDelay(TelegramApiException e, int attempts) {
+        FailureType failureType = classify(e);
+        if (!failureType.isRetryable() || attempts >= maxAttempts) {
+            return NO_RETRY;
+        }
+        if (failureType == FailureType.RATE_LIMITED) {
+            Integer retryAfter = getRetryAfter((TelegramApiRequestException) e);
+            if (retryAfter != null) {
+                return Duration.ofSeconds(retryAfter).toNanos();
+            }
+        }
+        long backoff = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempts - 1, 20));
+        // equal jitter: at least half of the backoff, so retries are still spaced out
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private static boolean isBadMarkup(String apiResponse) {
+        // e.g. "Bad Request: can't parse entities: Can't find end of the entity starting at byte offset 42"
+        return apiResponse != null && apiResponse.contains(BAD_MARKUP_DESCRIPTION);
+    }
+
+    private static Integer getRetryAfter(TelegramApiRequestException e) {
+        ResponseParameters parameters = e.getParameters();
+        return parameters != null ? parameters.getRetryAfter() : null;
+    }
+}
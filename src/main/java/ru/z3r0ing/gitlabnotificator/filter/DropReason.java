@@ -0,0 +1,33 @@
+package ru.z3r0ing.gitlabnotificator.filter;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reason for dropping a webhook before it is parsed, see {@link WebhookPreFilter}.
+ */
+@RequiredArgsConstructor
+@Getter
+public enum DropReason {
+    /**
+     * Merge request is closed, see {@code MergeRequestEventHandler#isClosedMergeRequest}
+     */
+    CLOSED_MERGE_REQUEST("closed_merge_request"),
+    /**
+     * Issue is closed
+     */
+    CLOSED_ISSUE("closed_issue"),
+    /**
+     * Comment is not left on a merge request
+     */
+    NOT_MERGE_REQUEST_NOTE("not_merge_request_note"),
+    /**
+     * Pipeline is not finished yet
+     */
+    PIPELINE_IN_PROGRESS("pipeline_in_progress");
+
+    /**
+     * Value of the metric tag
+     */
+    private final String tag;
+}
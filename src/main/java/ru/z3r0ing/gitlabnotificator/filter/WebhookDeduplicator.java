@@ -0,0 +1,118 @@
+package ru.z3r0ing.gitlabnotificator.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Remembers keys of accepted webhooks, so retries of the same webhook by GitLab are not processed twice.
+ * Webhooks are identified by 'Idempotency-Key' or 'X-Gitlab-Event-UUID' header,
+ * or by the SHA-256 hash of the body if GitLab sent neither.
+ * Keys are kept in a bounded cache and expire after {@code app.webhook.dedup.ttl}.
+ */
+@Component
+@Slf4j
+public class WebhookDeduplicator {
+
+    private static final String CONTENT_KEY_PREFIX = "sha256:";
+
+    private final boolean enabled;
+    private final Cache<String, Boolean> keys;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public WebhookDeduplicator(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.Dedup properties = appProperties.getWebhook().getDedup();
+        this.enabled = properties.isEnabled();
+        this.keys = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+
+        this.hitCounter = Counter.builder("gitlab.webhook.dedup.checks")
+                .description("Webhook dedup checks")
+                .tag("result", "duplicate")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("gitlab.webhook.dedup.checks")
+                .description("Webhook dedup checks")
+                .tag("result", "new")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.webhook.dedup.size", keys, Cache::estimatedSize)
+                .description("Remembered webhook keys")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.webhook.dedup.hit.ratio", this, WebhookDeduplicator::getHitRatio)
+                .description("Share of checked webhooks which were duplicates")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return true if webhooks are deduplicated
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks the key and remembers it if it is new.
+     * Safe to call concurrently, only one of the calls with the same key gets false.
+     *
+     * @param key webhook key
+     * @return true if a webhook with this key was already accepted
+     */
+    public boolean isDuplicate(String key) {
+        if (!enabled) {
+            return false;
+        }
+        boolean duplicate = keys.asMap().putIfAbsent(key, Boolean.TRUE) != null;
+        if (duplicate) {
+            hitCounter.increment();
+            log.info("Skipping duplicate GitLab webhook: {}", key);
+        } else {
+            missCounter.increment();
+        }
+        return duplicate;
+    }
+
+    /**
+     * Forgets the key, so the webhook is processed when GitLab retries it.
+     * Used when the webhook was rejected after its key was remembered.
+     *
+     * @param key webhook key
+     */
+    public void forget(String key) {
+        keys.invalidate(key);
+    }
+
+    /**
+     * @return digest for computing the key of a webhook body
+     */
+    public static MessageDigest newContentDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * @param contentDigest digest which was fed with the whole webhook body
+     * @return key of the webhook body
+     */
+    public static String contentKey(MessageDigest contentDigest) {
+        return CONTENT_KEY_PREFIX + HexFormat.of().formatHex(contentDigest.digest());
+    }
+
+    private double getHitRatio() {
+        double checks = hitCounter.count() + missCounter.count();
+        return checks == 0 ? 0 : hitCounter.count() / checks;
+    }
+}
@@ -0,0 +1,209 @@
+package ru.z3r0ing.gitlabnotificator.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Drops webhooks which will not produce any notification before they are fully parsed.
+ * Peeks at {@code object_attributes.state}, {@code object_attributes.status} and
+ * {@code object_attributes.noteable_type} with the streaming parser, skipping all other subtrees,
+ * and stops reading as soon as the field deciding for the event type is found.
+ * The checks mirror the ones in the event handlers and must be kept in sync with them; in-progress pipelines
+ * are kept when their live status messages are enabled.
+ * Drops are counted per reason in {@code gitlab.webhook.filtered}.
+ */
+@Component
+@Slf4j
+public class WebhookPreFilter {
+
+    private static final String OBJECT_ATTRIBUTES = "object_attributes";
+    private static final Set<String> PIPELINE_IN_PROGRESS_STATUSES =
+            Set.of("created", "waiting_for_resource", "preparing", "pending", "running", "scheduled");
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final AppProperties.PreFilter properties;
+    private final boolean pipelineStatusEnabled;
+    private final Map<DropReason, Counter> counters = new EnumMap<>(DropReason.class);
+
+    public WebhookPreFilter(AppProperties appProperties, MeterRegistry meterRegistry) {
+        this.properties = appProperties.getWebhook().getPreFilter();
+        this.pipelineStatusEnabled = appProperties.getNotifications().getPipelineStatus().isEnabled();
+        for (DropReason dropReason : DropReason.values()) {
+            counters.put(dropReason, Counter.builder("gitlab.webhook.filtered")
+                    .description("Webhooks dropped before parsing because they produce no notifications")
+                    .tag("reason", dropReason.getTag())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Checks webhook payload bytes.
+     *
+     * @param eventType type of the event
+     * @param payload   UTF-8 JSON containing the event data
+     * @return reason to drop the webhook, or null if it must be processed
+     */
+    @Nullable
+    public DropReason check(EventType eventType, byte[] payload) {
+        if (!isApplicable(eventType)) {
+            return null;
+        }
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            return count(decide(eventType, parser));
+        } catch (IOException e) {
+            // broken payloads are reported by the full parser
+            return null;
+        }
+    }
+
+    /**
+     * Checks webhook payload stream without consuming it.
+     * Reads at most {@code app.webhook.pre-filter.peek-limit} bytes and resets the stream afterwards,
+     * the webhook is not dropped if the decision cannot be made within the limit.
+     *
+     * @param eventType type of the event
+     * @param payload   stream of UTF-8 JSON containing the event data, must support mark
+     * @return reason to drop the webhook, or null if it must be processed
+     */
+    @Nullable
+    public DropReason check(EventType eventType, InputStream payload) throws IOException {
+        if (!isApplicable(eventType)) {
+            return null;
+        }
+        int peekLimit = (int) Math.min(Integer.MAX_VALUE, properties.getPeekLimit().toBytes());
+        payload.mark(peekLimit);
+        try (JsonParser parser = jsonFactory.createParser(new PeekInputStream(payload, peekLimit))) {
+            return count(decide(eventType, parser));
+        } catch (IOException e) {
+            // end of the peek window or broken payload, let the full parser deal with it
+            return null;
+        } finally {
+            payload.reset();
+        }
+    }
+
+    /**
+     * @return true if webhooks of the type may be dropped by the filter
+     */
+    public boolean isApplicable(EventType eventType) {
+        return properties.isEnabled() && eventType != EventType.TAG_PUSH;
+    }
+
+    @Nullable
+    private DropReason count(@Nullable DropReason dropReason) {
+        if (dropReason != null) {
+            counters.get(dropReason).increment();
+            log.debug("Dropping GitLab event before parsing: {}", dropReason);
+        }
+        return dropReason;
+    }
+
+    @Nullable
+    private DropReason decide(EventType eventType, JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (OBJECT_ATTRIBUTES.equals(fieldName) && value == JsonToken.START_OBJECT) {
+                return decideByAttributes(eventType, parser);
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    @Nullable
+    private DropReason decideByAttributes(EventType eventType, JsonParser parser) throws IOException {
+        String decisiveField = switch (eventType) {
+            case MERGE_REQUEST, ISSUE -> "state";
+            case NOTE -> "noteable_type";
+            case PIPELINE -> "status";
+            default -> null;
+        };
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_STRING && fieldName.equals(decisiveField)) {
+                // the rest of the payload is not needed for the decision
+                return decide(eventType, parser.getText());
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    @Nullable
+    private DropReason decide(EventType eventType, String value) {
+        return switch (eventType) {
+            case MERGE_REQUEST -> "closed".equalsIgnoreCase(value) ? DropReason.CLOSED_MERGE_REQUEST : null;
+            case ISSUE -> "closed".equalsIgnoreCase(value) ? DropReason.CLOSED_ISSUE : null;
+            case NOTE -> !"mergerequest".equalsIgnoreCase(value) ? DropReason.NOT_MERGE_REQUEST_NOTE : null;
+            case PIPELINE -> !pipelineStatusEnabled
+                    && PIPELINE_IN_PROGRESS_STATUSES.contains(value.toLowerCase(Locale.ROOT))
+                    ? DropReason.PIPELINE_IN_PROGRESS
+                    : null;
+            default -> null;
+        };
+    }
+
+    /**
+     * Stream which ends after the given amount of bytes and does not close the underlying stream,
+     * so the peek never reads past the mark limit.
+     */
+    private static class PeekInputStream extends FilterInputStream {
+
+        private int remaining;
+
+        PeekInputStream(InputStream in, int limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value >= 0) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream is reset and read again
+        }
+    }
+}
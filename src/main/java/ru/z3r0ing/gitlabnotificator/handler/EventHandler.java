@@ -1,21 +1,25 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
 import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
 
 import java.util.List;
 
-public interface EventHandler {
+/**
+ * Handler of a single GitLab event type.
+ *
+ * @param <T> type of the parsed event
+ */
+public interface EventHandler<T extends AbstractEvent> {
 
     /**
-     * Formats messages based on the merge request event type.
+     * Formats messages based on the event.
      *
-     * @param payload JSON string containing the merge request event data
+     * @param event parsed GitLab event
      * @return List of HandledEvent objects containing formatted messages and recipient information
-     * @throws JsonProcessingException if payload cannot be parsed
      */
-    List<HandledEvent> handleEvent(String payload) throws JsonProcessingException;
+    List<HandledEvent> handleEvent(T event);
 
     /**
      * Checks if this handler supports the given event type.
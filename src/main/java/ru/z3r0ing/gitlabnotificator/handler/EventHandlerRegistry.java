@@ -0,0 +1,44 @@
+package ru.z3r0ing.gitlabnotificator.handler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of event handlers grouped by the event type they support.
+ * Built once at startup, so dispatching an event is a single map lookup.
+ */
+@Component
+@Slf4j
+public class EventHandlerRegistry {
+
+    private final Map<EventType, List<EventHandler<?>>> handlersByEventType = new EnumMap<>(EventType.class);
+
+    public EventHandlerRegistry(List<EventHandler<?>> eventHandlers) {
+        for (EventType eventType : EventType.values()) {
+            List<EventHandler<?>> supportingHandlers = eventHandlers.stream()
+                    .filter(eventHandler -> eventHandler.doesSupportSuchEvent(eventType))
+                    .toList();
+            if (supportingHandlers.isEmpty()) {
+                log.warn("No event handler registered for GitLab event type: {}", eventType);
+            } else {
+                handlersByEventType.put(eventType, supportingHandlers);
+            }
+        }
+    }
+
+    /**
+     * Returns handlers supporting the given event type.
+     *
+     * @param eventType the type of event
+     * @return immutable list of handlers, empty if there are no handlers for such event type
+     */
+    public List<EventHandler<?>> getHandlers(EventType eventType) {
+        return handlersByEventType.getOrDefault(eventType, Collections.emptyList());
+    }
+}
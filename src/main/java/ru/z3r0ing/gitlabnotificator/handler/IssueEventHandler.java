@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
@@ -22,14 +20,11 @@ import java.util.List;
  */
 @Component
 @RequiredArgsConstructor
-public class IssueEventHandler implements EventHandler {
-    private static final ObjectMapper mapper = new ObjectMapper();
-
+public class IssueEventHandler implements EventHandler<IssueEvent> {
     private final MessageFormatter messageFormatter;
 
     @Override
-    public List<HandledEvent> handleEvent(String payload) throws JsonProcessingException {
-        IssueEvent issueEvent = mapper.readValue(payload, IssueEvent.class);
+    public List<HandledEvent> handleEvent(IssueEvent issueEvent) {
         ru.z3r0ing.gitlabnotificator.model.gitlab.object.Issue issue = issueEvent.getIssue();
 
         // Skip processing if issue is closed
@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
@@ -26,14 +24,11 @@ import java.util.List;
  */
 @Component
 @RequiredArgsConstructor
-public class MergeRequestEventHandler implements EventHandler {
-    private static final ObjectMapper mapper = new ObjectMapper();
-
+public class MergeRequestEventHandler implements EventHandler<MergeRequestEvent> {
     private final MessageFormatter messageFormatter;
 
     @Override
-    public List<HandledEvent> handleEvent(String payload) throws JsonProcessingException {
-        MergeRequestEvent mergeRequestEvent = mapper.readValue(payload, MergeRequestEvent.class);
+    public List<HandledEvent> handleEvent(MergeRequestEvent mergeRequestEvent) {
         MergeRequest mergeRequest = mergeRequestEvent.getMergeRequest();
 
         // If MR is closed, no notifications needed
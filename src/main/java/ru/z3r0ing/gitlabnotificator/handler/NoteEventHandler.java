@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
@@ -23,15 +21,11 @@ import java.util.List;
  */
 @Component
 @RequiredArgsConstructor
-public class NoteEventHandler implements EventHandler {
-    private static final ObjectMapper mapper = new ObjectMapper();
+public class NoteEventHandler implements EventHandler<NoteEvent> {
     private final MessageFormatter messageFormatter;
 
     @Override
-    public List<HandledEvent> handleEvent(String payload) throws JsonProcessingException {
-        // Parse the JSON payload into a NoteEvent object
-        NoteEvent noteEvent = mapper.readValue(payload, NoteEvent.class);
-
+    public List<HandledEvent> handleEvent(NoteEvent noteEvent) {
         // Only process comments on Merge Requests, ignore other note types
         if (!"mergerequest".equalsIgnoreCase(noteEvent.getNote().getNoteableType())) {
             return Collections.emptyList();
@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
@@ -23,13 +21,11 @@ import java.util.List;
  */
 @Component
 @RequiredArgsConstructor
-public class PipelineEventHandler implements EventHandler {
-    private static final ObjectMapper mapper = new ObjectMapper();
+public class PipelineEventHandler implements EventHandler<PipelineEvent> {
     private final MessageFormatter messageFormatter;
 
     @Override
-    public List<HandledEvent> handleEvent(String payload) throws JsonProcessingException {
-        PipelineEvent pipelineEvent = mapper.readValue(payload, PipelineEvent.class);
+    public List<HandledEvent> handleEvent(PipelineEvent pipelineEvent) {
         List<HandledEvent> handledEventList = new ArrayList<>();
 
         String pipelineUrl = pipelineEvent.getPipeline().getUrl();
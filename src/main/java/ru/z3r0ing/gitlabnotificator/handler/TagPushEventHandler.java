@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
@@ -21,14 +19,11 @@ import java.util.List;
  */
 @Component
 @RequiredArgsConstructor
-public class TagPushEventHandler implements EventHandler {
-    private static final ObjectMapper mapper = new ObjectMapper();
-
+public class TagPushEventHandler implements EventHandler<TagPushEvent> {
     private final MessageFormatter messageFormatter;
 
     @Override
-    public List<HandledEvent> handleEvent(String payload) throws JsonProcessingException {
-        TagPushEvent tagPushEvent = mapper.readValue(payload, TagPushEvent.class);
+    public List<HandledEvent> handleEvent(TagPushEvent tagPushEvent) {
 
         String projectName = tagPushEvent.getProject().getName();
         String tagName = tagPushEvent.getTagName();
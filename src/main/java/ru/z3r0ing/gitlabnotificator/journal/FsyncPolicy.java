@@ -0,0 +1,19 @@
+package ru.z3r0ing.gitlabnotificator.journal;
+
+/**
+ * Defines when journal writes are forced to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Force every record before the webhook is acknowledged. Most durable, slowest.
+     */
+    ALWAYS,
+    /**
+     * Force after a batch of records or after a time interval, whichever comes first.
+     */
+    BATCH,
+    /**
+     * Never force explicitly, leave flushing to the operating system.
+     */
+    OS
+}
@@ -0,0 +1,17 @@
+package ru.z3r0ing.gitlabnotificator.journal;
+
+import lombok.Value;
+import org.springframework.lang.Nullable;
+
+/**
+ * Webhook stored in the journal.
+ */
+@Value
+public class JournalRecord {
+    long sequence;
+
+    @Nullable
+    String eventType;
+
+    byte[] payload;
+}
@@ -0,0 +1,408 @@
+package ru.z3r0ing.gitlabnotificator.journal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only write-ahead log of accepted GitLab webhooks.
+ * <p>
+ * Every webhook is written to the current segment file before it is acknowledged and is marked as
+ * completed when its processing is finished. The checkpoint file keeps the highest sequence number
+ * up to which all webhooks are completed, so on startup everything after the checkpoint is replayed.
+ * Webhooks completed out of order after the checkpoint are replayed as well, so delivery is at-least-once.
+ * <p>
+ * Segment record layout: {@code int bodyLength | int crc32(body) | body}, where body is
+ * {@code long sequence | short eventTypeLength | eventType | payload}.
+ */
+@Component
+@Slf4j
+public class WebhookJournal {
+
+    public static final long NO_SEQUENCE = -1;
+
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int MIN_BODY_SIZE = Long.BYTES + Short.BYTES;
+    private static final long MAINTENANCE_PERIOD_MILLIS = 60_000;
+
+    private final AppProperties.Journal properties;
+    private final NavigableSet<Long> pendingSequences = new ConcurrentSkipListSet<>();
+    private final Object checkpointLock = new Object();
+
+    private Path directory;
+    private ScheduledExecutorService maintenanceExecutor;
+
+    // guarded by this
+    private FileChannel segmentChannel;
+    private long segmentPosition;
+    private long nextSequence;
+    private int unsyncedWrites;
+
+    // guarded by checkpointLock
+    private FileChannel checkpointChannel;
+    private long checkpoint;
+
+    private volatile long lastAppendedSequence;
+    private long recoveredUpToSequence;
+
+    public WebhookJournal(AppProperties appProperties) {
+        this.properties = appProperties.getWebhook().getJournal();
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        directory = Path.of(properties.getDirectory());
+        Files.createDirectories(directory);
+
+        checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpoint = readCheckpoint();
+
+        // Find webhooks which were accepted but not completed before the last shutdown
+        long maxSequence = checkpoint;
+        for (Path segment : listSegments()) {
+            long[] segmentMaxSequence = {maxSequence};
+            long validSize = readSegment(segment, journalRecord -> {
+                segmentMaxSequence[0] = Math.max(segmentMaxSequence[0], journalRecord.getSequence());
+                if (journalRecord.getSequence() > checkpoint) {
+                    pendingSequences.add(journalRecord.getSequence());
+                }
+            });
+            maxSequence = segmentMaxSequence[0];
+            if (validSize < Files.size(segment)) {
+                log.warn("Journal segment {} has a torn tail after {} bytes, truncating", segment, validSize);
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(validSize);
+                }
+            }
+        }
+        recoveredUpToSequence = maxSequence;
+        lastAppendedSequence = maxSequence;
+        nextSequence = maxSequence + 1;
+        openSegment(nextSequence);
+
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webhook-journal-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (properties.getFsync() == FsyncPolicy.BATCH) {
+            long intervalMillis = Math.max(1, properties.getFsyncInterval().toMillis());
+            maintenanceExecutor.scheduleWithFixedDelay(this::forceQuietly,
+                    intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        maintenanceExecutor.scheduleWithFixedDelay(this::deleteExpiredSegments,
+                MAINTENANCE_PERIOD_MILLIS, MAINTENANCE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+        log.info("Opened webhook journal in {}, checkpoint {}, {} webhooks to replay",
+                directory.toAbsolutePath(), checkpoint, pendingSequences.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        maintenanceExecutor.shutdownNow();
+        synchronized (this) {
+            if (properties.getFsync() != FsyncPolicy.OS) {
+                segmentChannel.force(false);
+            }
+            segmentChannel.close();
+        }
+        synchronized (checkpointLock) {
+            checkpointChannel.force(false);
+            checkpointChannel.close();
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Writes webhook to the journal.
+     *
+     * @param eventType value of 'X-Gitlab-Event' header
+     * @param payload   webhook body
+     * @return sequence number of the record, or {@link #NO_SEQUENCE} if journal is disabled
+     * @throws UncheckedIOException if the record could not be written
+     */
+    public long append(@Nullable String eventType, byte[] payload) {
+        if (!properties.isEnabled()) {
+            return NO_SEQUENCE;
+        }
+        byte[] eventTypeBytes = eventType == null ? new byte[0] : eventType.getBytes(UTF_8);
+        if (eventTypeBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Event type is too long: " + eventTypeBytes.length + " bytes");
+        }
+        int bodyLength = MIN_BODY_SIZE + eventTypeBytes.length + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyLength);
+        CRC32 crc = new CRC32();
+
+        synchronized (this) {
+            long sequence = nextSequence;
+            buffer.putInt(bodyLength)
+                    .putInt(0)
+                    .putLong(sequence)
+                    .putShort((short) eventTypeBytes.length)
+                    .put(eventTypeBytes)
+                    .put(payload);
+            crc.update(buffer.array(), RECORD_HEADER_SIZE, bodyLength);
+            buffer.putInt(Integer.BYTES, (int) crc.getValue());
+            buffer.flip();
+
+            try {
+                if (segmentPosition > 0 && segmentPosition + buffer.remaining() > properties.getSegmentSize().toBytes()) {
+                    rotateSegment(sequence);
+                }
+                while (buffer.hasRemaining()) {
+                    segmentPosition += segmentChannel.write(buffer);
+                }
+                nextSequence++;
+                pendingSequences.add(sequence);
+                lastAppendedSequence = sequence;
+                forceIfNeeded();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write webhook to journal", e);
+            }
+            return sequence;
+        }
+    }
+
+    /**
+     * Marks webhook as processed, so it is not replayed after restart.
+     *
+     * @param sequence sequence number returned by {@link #append(String, byte[])}
+     */
+    public void complete(long sequence) {
+        if (!properties.isEnabled() || sequence == NO_SEQUENCE) {
+            return;
+        }
+        pendingSequences.remove(sequence);
+
+        // lastAppendedSequence must be read before pending sequences,
+        // every sequence up to it is already in the pending set
+        long lastAppended = lastAppendedSequence;
+        Long firstPending = pendingSequences.ceiling(Long.MIN_VALUE);
+        long newCheckpoint = firstPending == null ? lastAppended : Math.min(firstPending - 1, lastAppended);
+
+        synchronized (checkpointLock) {
+            if (newCheckpoint <= checkpoint) {
+                return;
+            }
+            checkpoint = newCheckpoint;
+            try {
+                checkpointChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, newCheckpoint), 0);
+                if (properties.getFsync() == FsyncPolicy.ALWAYS) {
+                    checkpointChannel.force(false);
+                }
+            } catch (IOException e) {
+                // the webhook will be sent once again after restart, it is not worth failing the processing
+                log.error("Could not write journal checkpoint {}", newCheckpoint, e);
+            }
+        }
+    }
+
+    /**
+     * Passes webhooks which were not completed before the last shutdown to the consumer.
+     * Replayed webhooks have to be completed like the new ones.
+     *
+     * @param consumer consumer of the webhooks
+     */
+    public void replay(Consumer<JournalRecord> consumer) throws IOException {
+        Long replayFrom = properties.isEnabled() ? pendingSequences.ceiling(Long.MIN_VALUE) : null;
+        if (replayFrom == null) {
+            return;
+        }
+        for (Path segment : listSegments()) {
+            if (segmentFirstSequence(segment) > recoveredUpToSequence) {
+                break;
+            }
+            readSegment(segment, journalRecord -> {
+                long sequence = journalRecord.getSequence();
+                if (sequence >= replayFrom && sequence <= recoveredUpToSequence && pendingSequences.contains(sequence)) {
+                    consumer.accept(journalRecord);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return amount of written webhooks which are not completed yet
+     */
+    public int getPendingCount() {
+        return pendingSequences.size();
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpointChannel.size() < Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        while (buffer.hasRemaining()) {
+            if (checkpointChannel.read(buffer, buffer.position()) < 0) {
+                return 0;
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    /**
+     * Reads valid records of the segment.
+     *
+     * @return size of the valid part of the segment in bytes
+     */
+    private long readSegment(Path segment, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int recordStart = buffer.position();
+                int bodyLength = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (bodyLength < MIN_BODY_SIZE || bodyLength > buffer.remaining()) {
+                    buffer.position(recordStart);
+                    break;
+                }
+                ByteBuffer body = buffer.slice(buffer.position(), bodyLength);
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    buffer.position(recordStart);
+                    break;
+                }
+
+                long sequence = body.getLong();
+                byte[] eventType = new byte[Short.toUnsignedInt(body.getShort())];
+                body.get(eventType);
+                byte[] payload = new byte[body.remaining()];
+                body.get(payload);
+                consumer.accept(new JournalRecord(sequence,
+                        eventType.length == 0 ? null : new String(eventType, UTF_8), payload));
+
+                buffer.position(recordStart + RECORD_HEADER_SIZE + bodyLength);
+            }
+            return buffer.position();
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path segment = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        segmentChannel = FileChannel.open(segment,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentPosition = segmentChannel.size();
+    }
+
+    private void rotateSegment(long firstSequence) throws IOException {
+        if (properties.getFsync() != FsyncPolicy.OS) {
+            segmentChannel.force(false);
+        }
+        segmentChannel.close();
+        unsyncedWrites = 0;
+        openSegment(firstSequence);
+    }
+
+    private void forceIfNeeded() throws IOException {
+        switch (properties.getFsync()) {
+            case ALWAYS -> segmentChannel.force(false);
+            case BATCH -> {
+                if (++unsyncedWrites >= properties.getFsyncBatchSize()) {
+                    segmentChannel.force(false);
+                    unsyncedWrites = 0;
+                }
+            }
+            case OS -> {
+                // flushing is up to operating system
+            }
+        }
+    }
+
+    private void forceQuietly() {
+        try {
+            synchronized (this) {
+                if (unsyncedWrites > 0) {
+                    segmentChannel.force(false);
+                    unsyncedWrites = 0;
+                }
+            }
+            synchronized (checkpointLock) {
+                checkpointChannel.force(false);
+            }
+        } catch (IOException e) {
+            log.error("Could not flush webhook journal", e);
+        }
+    }
+
+    /**
+     * Deletes segments which are fully completed and older than retention period.
+     */
+    void deleteExpiredSegments() {
+        try {
+            List<Path> segments = listSegments();
+            long currentCheckpoint;
+            synchronized (checkpointLock) {
+                currentCheckpoint = checkpoint;
+            }
+            Instant expiration = Instant.now().minus(properties.getRetention());
+            // the last segment is the active one
+            for (int i = 0; i < segments.size() - 1; i++) {
+                Path segment = segments.get(i);
+                long lastSequence = segmentFirstSequence(segments.get(i + 1)) - 1;
+                if (lastSequence <= currentCheckpoint
+                        && Files.getLastModifiedTime(segment).toInstant().isBefore(expiration)) {
+                    Files.delete(segment);
+                    log.debug("Deleted expired journal segment {}", segment);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Could not delete expired journal segments", e);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentFirstSequence(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+}
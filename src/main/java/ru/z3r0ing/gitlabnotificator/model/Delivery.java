@@ -0,0 +1,41 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.springframework.lang.Nullable;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+
+/**
+ * One Telegram message to send: all notifications of a webhook for the chat, deduplicated and merged.
+ */
+@Value
+@AllArgsConstructor
+public class Delivery {
+    long chatId;
+    /**
+     * Telegram payload of the message, shared with other chats receiving the same message
+     */
+    PreparedNotification payload;
+    /**
+     * Amount of notifications delivered by this message
+     */
+    int notifications;
+    /**
+     * ID of a message of the bot in the chat to replace with this one, null to send a new message
+     */
+    @Nullable
+    Integer editMessageId;
+
+    public Delivery(long chatId, PreparedNotification payload, int notifications) {
+        this(chatId, payload, notifications, null);
+    }
+
+    public Delivery(long chatId, MessageWithKeyboard messageWithKeyboard, int notifications) {
+        this(chatId, PreparedNotification.of(messageWithKeyboard), notifications, null);
+    }
+
+    public MessageWithKeyboard getMessageWithKeyboard() {
+        return payload.getMessageWithKeyboard();
+    }
+}
@@ -0,0 +1,20 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+/**
+ * Kind of notifications folded into one digest message,
+ * see {@link ru.z3r0ing.gitlabnotificator.coalescing.NotificationCoalescer}.
+ */
+public enum DigestKind {
+    /**
+     * Comments on one merge request
+     */
+    COMMENTS,
+    /**
+     * Tags created in one project
+     */
+    TAGS,
+    /**
+     * Successful deploy pipelines of one ref
+     */
+    DEPLOYS
+}
@@ -0,0 +1,41 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+import lombok.Getter;
+
+import java.util.Locale;
+
+/**
+ * Outcome of accepting a GitLab webhook.
+ */
+@Getter
+public enum IngestionResult {
+    /**
+     * Webhook is queued for processing
+     */
+    ACCEPTED,
+    /**
+     * Webhook is not supported or cannot be parsed, nothing to process
+     */
+    IGNORED,
+    /**
+     * Webhook produces no notifications and is dropped before parsing
+     */
+    FILTERED,
+    /**
+     * Webhook was already accepted before, GitLab retried it
+     */
+    DUPLICATE,
+    /**
+     * Priority lane of the webhook is full, GitLab should retry it later
+     */
+    SHED,
+    /**
+     * Webhook cannot be stored right now, GitLab should retry it later
+     */
+    REJECTED;
+
+    /**
+     * Value of the 'result' tag of metrics
+     */
+    private final String tag = name().toLowerCase(Locale.ROOT);
+}
@@ -0,0 +1,23 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+/**
+ * State of a notification in the outbox.
+ */
+public enum OutboxStatus {
+    /**
+     * Waiting for a delivery worker
+     */
+    PENDING,
+    /**
+     * Leased by a delivery worker until 'leased_until', returned to {@link #PENDING} if the lease expires
+     */
+    CLAIMED,
+    /**
+     * Sent to Telegram
+     */
+    SENT,
+    /**
+     * Could not be sent and was moved to dead letters
+     */
+    FAILED
+}
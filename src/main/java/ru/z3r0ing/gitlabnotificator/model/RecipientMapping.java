@@ -0,0 +1,15 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
+
+/**
+ * Projection of {@link UserMapping} with only the columns needed to route notifications.
+ * Selected without hydrating entities into the persistence context.
+ */
+public interface RecipientMapping {
+    Long getTelegramId();
+
+    Long getGitlabUserId();
+
+    UserRole getRole();
+}
@@ -0,0 +1,31 @@
+package ru.z3r0ing.gitlabnotificator.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Priority lane of an accepted webhook.
+ * Each lane has its own bounded queue, and workers always drain higher-priority lanes first.
+ * Constants are declared from the highest priority to the lowest.
+ */
+@RequiredArgsConstructor
+@Getter
+public enum WebhookLane {
+    /**
+     * Alerts which must not be delayed, such as failed pipelines
+     */
+    HIGH("high"),
+    /**
+     * Regular notifications: merge requests opened, merged or (re)assigned, issues, deploys, tags
+     */
+    NORMAL("normal"),
+    /**
+     * Notifications which may be deferred or shed first, such as comments and other merge request updates
+     */
+    LOW("low");
+
+    /**
+     * Value of the metric tag
+     */
+    private final String tag;
+}
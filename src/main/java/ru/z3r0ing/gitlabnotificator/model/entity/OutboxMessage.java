@@ -0,0 +1,101 @@
+package ru.z3r0ing.gitlabnotificator.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.proxy.HibernateProxy;
+import ru.z3r0ing.gitlabnotificator.model.OutboxStatus;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Rendered notification waiting in the outbox for a delivery worker of any instance.
+ * Rows are written and claimed with plain JDBC by {@link ru.z3r0ing.gitlabnotificator.outbox.OutboxStore},
+ * the entity defines the table.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_claim", columnList = "status, priority, id"),
+        @Index(name = "idx_notification_outbox_claim_token", columnList = "claim_token")
+})
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    @Column(nullable = false, length = 8192)
+    private String message;
+
+    /**
+     * Inline keyboard serialized as JSON, unbounded as keyboards of merged notifications add up
+     */
+    @Column(columnDefinition = "TEXT")
+    private String keyboard;
+
+    /**
+     * Lower values are claimed first
+     */
+    @Column(nullable = false)
+    private int priority;
+
+    /**
+     * Amount of times the row was claimed
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private OutboxStatus status;
+
+    @Column(name = "claim_token", length = 64)
+    private String claimToken;
+
+    @Column(name = "leased_until")
+    private Instant leasedUntil;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        OutboxMessage that = (OutboxMessage) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.z3r0ing.gitlabnotificator.model.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Telegram message showing the live status of a pipeline in a chat, edited on every status change.
+ * Rows are read and written with plain JDBC by
+ * {@link ru.z3r0ing.gitlabnotificator.status.PipelineStatusStore}, the entity defines the table.
+ */
+@Getter
+@Setter
+@ToString
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "pipeline_status_message",
+        uniqueConstraints = @UniqueConstraint(name = "uk_pipeline_status_message",
+                columnNames = {"pipeline_id", "chat_id"}),
+        indexes = @Index(name = "idx_pipeline_status_message_updated_at", columnList = "updated_at"))
+public class PipelineStatusMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "pipeline_id", nullable = false)
+    private Long pipelineId;
+
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    /**
+     * Telegram message ID, unique within the chat
+     */
+    @Column(name = "message_id", nullable = false)
+    private Integer messageId;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        PipelineStatusMessage that = (PipelineStatusMessage) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy proxy ? proxy.getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
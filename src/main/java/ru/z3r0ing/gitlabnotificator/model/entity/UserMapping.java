@@ -2,6 +2,7 @@ package ru.z3r0ing.gitlabnotificator.model.entity;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
@@ -17,6 +18,7 @@ import lombok.Setter;
 import lombok.ToString;
 import org.hibernate.proxy.HibernateProxy;
 import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.repository.UserMappingChangeListener;
 
 import java.util.Objects;
 
@@ -27,6 +29,7 @@ import java.util.Objects;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@EntityListeners(UserMappingChangeListener.class)
 @Table(name = "user_mapping", uniqueConstraints = {
         @UniqueConstraint(name = "uk_user_mapping_telegram_id", columnNames = "telegram_id"),
         @UniqueConstraint(name = "uk_user_mapping_gitlab_user_id", columnNames = "gitlab_user_id"),
@@ -2,6 +2,7 @@ package ru.z3r0ing.gitlabnotificator.model.gitlab.event;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import ru.z3r0ing.gitlabnotificator.model.gitlab.object.ObjectKind;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Project;
 
 public abstract class AbstractEvent {
 
@@ -10,6 +11,8 @@ public abstract class AbstractEvent {
     @JsonIgnore
     protected abstract EventType getEventType();
 
+    public abstract Project getProject();
+
     @JsonIgnore
     public ObjectKind getObjectKind() {
         return ObjectKind.valueOf(getObjectKindRaw());
@@ -3,23 +3,42 @@ package ru.z3r0ing.gitlabnotificator.model.gitlab.event;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 @RequiredArgsConstructor
 @Getter
 public enum EventType {
-    MERGE_REQUEST("Merge Request Hook"),
-    NOTE("Note Hook"),
-    PIPELINE("Pipeline Hook"),
-    ISSUE("Issue Hook"),
-    TAG_PUSH("Tag Push Hook");
+    MERGE_REQUEST("Merge Request Hook", MergeRequestEvent.class),
+    NOTE("Note Hook", NoteEvent.class),
+    PIPELINE("Pipeline Hook", PipelineEvent.class),
+    ISSUE("Issue Hook", IssueEvent.class),
+    TAG_PUSH("Tag Push Hook", TagPushEvent.class);
+
+    private static final Map<String, EventType> BY_REQUEST_HEADER = new HashMap<>();
+
+    static {
+        for (EventType eventType : values()) {
+            BY_REQUEST_HEADER.put(eventType.getRequestHeader(), eventType);
+        }
+    }
 
     private final String requestHeader;
 
+    private final Class<? extends AbstractEvent> eventClass;
+
+    /**
+     * Value of the 'event' tag of metrics
+     */
+    private final String tag = name().toLowerCase(Locale.ROOT);
+
     public static EventType fromRequestHeader(String requestHeader) {
-        for (EventType eventType : EventType.values()) {
-            if (eventType.getRequestHeader().equals(requestHeader))
-                return eventType;
+        EventType eventType = requestHeader == null ? null : BY_REQUEST_HEADER.get(requestHeader);
+        if (eventType == null) {
+            throw new IllegalArgumentException("No such enum constant " + requestHeader);
         }
-        throw new IllegalArgumentException("No such enum constant " + requestHeader);
+        return eventType;
     }
 
 }
@@ -47,6 +47,8 @@ public class MergeRequestEvent extends AbstractEvent {
         private DraftChanges draft;
         @Nullable
         private ReviewersChanges reviewers;
+        @Nullable
+        private AssigneesChanges assignees;
     }
 
     @Data
@@ -62,4 +64,11 @@ public class MergeRequestEvent extends AbstractEvent {
         private List<User> previous;
         private List<User> current;
     }
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class AssigneesChanges {
+        private List<User> previous;
+        private List<User> current;
+    }
 }
@@ -3,18 +3,21 @@ package ru.z3r0ing.gitlabnotificator.model.telegram;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.util.List;
 
 @Data
 @Builder
 @AllArgsConstructor
+@NoArgsConstructor
 public class InlineKeyboardButtonRow {
     private List<InlineKeyboardButton> buttons;
 
     @Data
     @Builder
     @AllArgsConstructor
+    @NoArgsConstructor
     public static class InlineKeyboardButton {
         private String text;
         private String url;
@@ -0,0 +1,115 @@
+package ru.z3r0ing.gitlabnotificator.model.telegram;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+import ru.z3r0ing.gitlabnotificator.util.MarkdownEscaper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Notification converted to the Telegram payload once, so a broadcast to many chats does not rebuild
+ * the keyboard for every recipient: only the chat ID differs between their messages.
+ * Must not be modified after creation, it is shared by all messages built from it.
+ */
+@Getter
+@EqualsAndHashCode(of = {"messageWithKeyboard", "parseMode"})
+@ToString(of = {"messageWithKeyboard", "parseMode"})
+public final class PreparedNotification {
+
+    private static final String PARSE_MODE = "Markdown";
+
+    private final MessageWithKeyboard messageWithKeyboard;
+    /**
+     * Telegram keyboard, null if the notification has no buttons
+     */
+    private final InlineKeyboardMarkup replyMarkup;
+    /**
+     * Telegram parse mode, null for plain text
+     */
+    private final String parseMode;
+
+    private PreparedNotification(MessageWithKeyboard messageWithKeyboard, InlineKeyboardMarkup replyMarkup,
+                                 String parseMode) {
+        this.messageWithKeyboard = messageWithKeyboard;
+        this.replyMarkup = replyMarkup;
+        this.parseMode = parseMode;
+    }
+
+    public static PreparedNotification of(MessageWithKeyboard messageWithKeyboard) {
+        List<InlineKeyboardButtonRow> keyboard = messageWithKeyboard.getKeyboard();
+        return new PreparedNotification(messageWithKeyboard,
+                keyboard == null || keyboard.isEmpty() ? null : createInlineKeyboardMarkup(keyboard), PARSE_MODE);
+    }
+
+    /**
+     * @return true if the text is sent as Markdown
+     */
+    public boolean isMarkdown() {
+        return parseMode != null;
+    }
+
+    /**
+     * Used when Telegram could not parse the Markdown, so the notification is still delivered.
+     * Escapes are removed, other markup characters are left in the text as is.
+     *
+     * @return the same notification sent as plain text with the same keyboard
+     */
+    public PreparedNotification toPlainText() {
+        MessageWithKeyboard plainText = new MessageWithKeyboard(
+                MarkdownEscaper.MARKDOWN.unescape(messageWithKeyboard.getMessage()), messageWithKeyboard.getKeyboard());
+        return new PreparedNotification(plainText, replyMarkup, null);
+    }
+
+    /**
+     * @param chatId Telegram chat ID as Bot API expects it
+     * @return message to the chat, sharing the keyboard with other messages of the notification
+     */
+    public SendMessage toSendMessage(String chatId) {
+        return SendMessage.builder()
+                .chatId(chatId)
+                .text(messageWithKeyboard.getMessage())
+                .parseMode(parseMode)
+                .replyMarkup(replyMarkup)
+                .build();
+    }
+
+    /**
+     * @param chatId    Telegram chat ID as Bot API expects it
+     * @param messageId ID of the message of the bot to replace
+     * @return request replacing the text and the keyboard of the message
+     */
+    public EditMessageText toEditMessageText(String chatId, int messageId) {
+        return EditMessageText.builder()
+                .chatId(chatId)
+                .messageId(messageId)
+                .text(messageWithKeyboard.getMessage())
+                .parseMode(parseMode)
+                .replyMarkup(replyMarkup)
+                .build();
+    }
+
+    private static InlineKeyboardMarkup createInlineKeyboardMarkup(List<InlineKeyboardButtonRow> buttonRows) {
+        List<InlineKeyboardRow> keyboardRowList = new ArrayList<>(buttonRows.size());
+
+        for (InlineKeyboardButtonRow row : buttonRows) {
+            InlineKeyboardRow inlineKeyboardRow = new InlineKeyboardRow();
+            for (InlineKeyboardButtonRow.InlineKeyboardButton button : row.getButtons()) {
+                InlineKeyboardButton telegramButton = InlineKeyboardButton.builder()
+                        .text(button.getText())
+                        .url(button.getUrl())
+                        .build();
+                inlineKeyboardRow.add(telegramButton);
+            }
+            keyboardRowList.add(inlineKeyboardRow);
+        }
+
+        return new InlineKeyboardMarkup(keyboardRowList);
+    }
+}
@@ -0,0 +1,293 @@
+package ru.z3r0ing.gitlabnotificator.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.OutboxStatus;
+import ru.z3r0ing.gitlabnotificator.outbox.OutboxStore.Backlog;
+import ru.z3r0ing.gitlabnotificator.outbox.OutboxStore.ClaimedMessage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Transactional outbox of rendered notifications, shared by all instances through the database.
+ * <p>
+ * Webhook workers only insert messages, see {@link #enqueue(List, int)}. A poller thread of every instance claims
+ * batches of pending messages with a lease, passes them to {@link DeliveryScheduler} and marks them sent or failed
+ * once the scheduler is done with them. The poller renews leases of messages waiting in the scheduler, so they are
+ * not claimed again however long they wait there. Messages claimed by an instance which stopped before sending them
+ * are claimed again once their lease expires, so delivery is at-least-once: a message is sent twice only if
+ * an instance dies between sending it and marking it sent.
+ * <p>
+ * The poller keeps at most {@code max-in-flight} claimed messages, so the backlog stays in the database, where
+ * the other instances can take it.
+ */
+@Service
+@Slf4j
+public class NotificationOutbox {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+
+    private final OutboxStore outboxStore;
+    private final DeliveryScheduler deliveryScheduler;
+    private final AppProperties.Outbox outbox;
+    private final Queue<ClaimedMessage> sent = new ConcurrentLinkedQueue<>();
+    private final Queue<ClaimedMessage> failed = new ConcurrentLinkedQueue<>();
+    private final Queue<ClaimedMessage> unsubmitted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Claim token to amount of its messages not marked done yet, used by the poller thread only
+     */
+    private final Map<String, Integer> unsettledClaims = new HashMap<>();
+    private final Timer claimTimer;
+    private final Counter reapedCounter;
+
+    private volatile Backlog backlog = new Backlog(0, null);
+    private volatile boolean running;
+    private volatile Thread poller;
+    private long nextReapAt;
+    private long nextRenewAt;
+
+    public NotificationOutbox(AppProperties appProperties,
+                              OutboxStore outboxStore,
+                              DeliveryScheduler deliveryScheduler,
+                              MeterRegistry meterRegistry) {
+        this.outboxStore = outboxStore;
+        this.deliveryScheduler = deliveryScheduler;
+        this.outbox = appProperties.getOutbox();
+
+        this.claimTimer = Timer.builder("notification.outbox.claim")
+                .description("Time to claim a batch of messages from the outbox")
+                .register(meterRegistry);
+        this.reapedCounter = Counter.builder("notification.outbox.reaped")
+                .description("Claimed messages returned to the outbox after their lease expired")
+                .register(meterRegistry);
+        Gauge.builder("notification.outbox.backlog", this, o -> o.backlog.getPending())
+                .description("Messages waiting in the outbox to be claimed")
+                .register(meterRegistry);
+        Gauge.builder("notification.outbox.backlog.age", this, NotificationOutbox::getBacklogAgeSeconds)
+                .description("Age of the oldest message waiting in the outbox")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!outbox.isEnabled()) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::poll, "outbox-poller");
+        thread.setDaemon(true);
+        poller = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        Thread thread = poller;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join(SHUTDOWN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return true if notifications should go through the outbox
+     */
+    public boolean isEnabled() {
+        return outbox.isEnabled();
+    }
+
+    /**
+     * Stores the messages in the outbox in one batch; they are sent by the poller of any instance.
+     *
+     * @param deliveries messages to send
+     * @param priority   lower values are sent first, see {@link ru.z3r0ing.gitlabnotificator.model.WebhookLane}
+     */
+    public void enqueue(List<Delivery> deliveries, int priority) {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        outboxStore.insert(deliveries, priority);
+        Thread thread = poller;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * @return amount of claimed messages not yet sent by this instance
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    private void poll() {
+        long pollIntervalNanos = outbox.getPollInterval().toNanos();
+        while (running) {
+            int claimed = 0;
+            try {
+                flushCompletions();
+                renewIfDue();
+                reapIfDue();
+                claimed = claimBatch();
+            } catch (RuntimeException e) {
+                // the database may be unavailable for a while, claimed messages are still sent
+                log.error("Error polling notification outbox", e);
+            }
+            // claim the next batch right away while the outbox is not drained
+            if (claimed == 0 && running) {
+                LockSupport.parkNanos(this, pollIntervalNanos);
+            }
+        }
+        awaitInFlight();
+    }
+
+    private int claimBatch() {
+        int limit = Math.min(outbox.getBatchSize(), outbox.getMaxInFlight() - inFlight.get());
+        if (limit <= 0) {
+            return 0;
+        }
+        long startedAt = System.nanoTime();
+        List<ClaimedMessage> messages = outboxStore.claim(limit, Instant.now().plus(outbox.getLeaseDuration()));
+        claimTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        inFlight.addAndGet(messages.size());
+        unsettledClaims.merge(messages.get(0).getClaimToken(), messages.size(), Integer::sum);
+        for (ClaimedMessage message : messages) {
+            if (message.getAttempts() > 1) {
+                log.info("Sending outbox message {} to a chat {} again, claim {}",
+                        message.getId(), message.getDelivery().getChatId(), message.getAttempts());
+            }
+            try {
+                deliveryScheduler.submit(message.getDelivery(), isSent -> {
+                    (isSent ? sent : failed).add(message);
+                    inFlight.decrementAndGet();
+                });
+            } catch (RuntimeException e) {
+                // the message is returned to the outbox and claimed again by any instance
+                unsubmitted.add(message);
+                inFlight.decrementAndGet();
+                log.error("Could not send outbox message {} to a chat {}",
+                        message.getId(), message.getDelivery().getChatId(), e);
+            }
+        }
+        return messages.size();
+    }
+
+    private void flushCompletions() {
+        flush(sent, messages -> complete(messages, OutboxStatus.SENT));
+        flush(failed, messages -> complete(messages, OutboxStatus.FAILED));
+        flush(unsubmitted, outboxStore::release);
+    }
+
+    private void flush(Queue<ClaimedMessage> completions, Consumer<List<ClaimedMessage>> store) {
+        List<ClaimedMessage> messages = new ArrayList<>();
+        ClaimedMessage message;
+        while ((message = completions.poll()) != null) {
+            messages.add(message);
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        try {
+            store.accept(messages);
+        } catch (RuntimeException e) {
+            // keep them for the next attempt, otherwise the messages would be sent again after the lease
+            completions.addAll(messages);
+            throw e;
+        }
+        for (ClaimedMessage settled : messages) {
+            unsettledClaims.computeIfPresent(settled.getClaimToken(),
+                    (claimToken, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private void complete(List<ClaimedMessage> messages, OutboxStatus status) {
+        int completed = outboxStore.complete(messages, status);
+        if (completed < messages.size()) {
+            log.warn("{} outbox messages were claimed again after their lease expired before they were marked {}",
+                    messages.size() - completed, status);
+        }
+    }
+
+    private void renewIfDue() {
+        long now = System.nanoTime();
+        if (!unsettledClaims.isEmpty() && now - nextRenewAt < 0) {
+            return;
+        }
+        // renewed well before the lease expires, so a slow database round-trip does not lose it
+        nextRenewAt = now + outbox.getLeaseDuration().toNanos() / 3;
+        if (unsettledClaims.isEmpty()) {
+            return;
+        }
+        outboxStore.renewLeases(unsettledClaims.keySet(), Instant.now().plus(outbox.getLeaseDuration()));
+    }
+
+    private void reapIfDue() {
+        long now = System.nanoTime();
+        if (now - nextReapAt < 0) {
+            return;
+        }
+        nextReapAt = now + outbox.getReapInterval().toNanos();
+        Instant currentTime = Instant.now();
+        int reaped = outboxStore.reapExpiredLeases(currentTime);
+        if (reaped > 0) {
+            reapedCounter.increment(reaped);
+            log.warn("Returned {} outbox messages with expired leases", reaped);
+        }
+        int purged = outboxStore.purgeCompleted(currentTime.minus(outbox.getRetention()));
+        if (purged > 0) {
+            log.debug("Deleted {} completed outbox messages", purged);
+        }
+        backlog = outboxStore.getBacklog();
+    }
+
+    private void awaitInFlight() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MILLIS);
+        while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        try {
+            flushCompletions();
+        } catch (RuntimeException e) {
+            log.error("Could not mark outbox messages as sent", e);
+        }
+        if (inFlight.get() > 0) {
+            log.warn("Notification outbox stopped with {} claimed messages, they are sent again after the lease expires",
+                    inFlight.get());
+        }
+    }
+
+    private double getBacklogAgeSeconds() {
+        Instant oldestCreatedAt = backlog.getOldestCreatedAt();
+        if (oldestCreatedAt == null) {
+            return 0;
+        }
+        return Math.max(0, Duration.between(oldestCreatedAt, Instant.now()).toMillis() / 1000.0);
+    }
+}
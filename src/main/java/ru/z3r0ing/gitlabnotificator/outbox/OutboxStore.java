@@ -0,0 +1,237 @@
+package ru.z3r0ing.gitlabnotificator.outbox;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.OutboxStatus;
+import ru.z3r0ing.gitlabnotificator.model.entity.OutboxMessage;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.util.KeyboardJson;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JDBC access to the notification outbox table, see {@link OutboxMessage}.
+ * <p>
+ * Rows are inserted in JDBC batches, since JPA cannot batch inserts with identity IDs.
+ * On PostgreSQL rows are claimed with {@code FOR UPDATE SKIP LOCKED}, so workers of several instances claim
+ * disjoint batches without waiting for each other. Other databases (H2 of the default profile) use an optimistic
+ * claim: the update re-checks the status, so concurrent workers may claim fewer rows, but never the same row.
+ * <p>
+ * Claimed rows are completed or released only with the token of their claim, so a worker whose lease expired
+ * does not overwrite the row claimed again by another worker.
+ */
+@Repository
+@Slf4j
+public class OutboxStore {
+
+    private static final String INSERT = """
+            INSERT INTO notification_outbox (chat_id, message, keyboard, priority, attempts, status, created_at)
+            VALUES (?, ?, ?, ?, 0, 'PENDING', ?)""";
+    private static final String CLAIM = """
+            UPDATE notification_outbox
+            SET status = 'CLAIMED', claim_token = ?, leased_until = ?, attempts = attempts + 1
+            WHERE status = 'PENDING' AND id IN (
+                SELECT id FROM notification_outbox WHERE status = 'PENDING' ORDER BY priority, id LIMIT ?%s)""";
+    private static final String SELECT_CLAIMED = """
+            SELECT id, chat_id, message, keyboard, priority, attempts, created_at
+            FROM notification_outbox WHERE claim_token = ? ORDER BY priority, id""";
+    private static final String RENEW = """
+            UPDATE notification_outbox SET leased_until = ? WHERE claim_token = ? AND status = 'CLAIMED'""";
+    private static final String COMPLETE = """
+            UPDATE notification_outbox SET status = ?, completed_at = ?, claim_token = NULL, leased_until = NULL
+            WHERE id = ? AND claim_token = ?""";
+    private static final String RELEASE = """
+            UPDATE notification_outbox SET status = 'PENDING', claim_token = NULL, leased_until = NULL
+            WHERE id = ? AND claim_token = ?""";
+    private static final String REAP = """
+            UPDATE notification_outbox SET status = 'PENDING', claim_token = NULL, leased_until = NULL
+            WHERE status = 'CLAIMED' AND leased_until < ?""";
+    private static final String PURGE = """
+            DELETE FROM notification_outbox WHERE status IN ('SENT', 'FAILED') AND completed_at < ?""";
+    private static final String BACKLOG = """
+            SELECT COUNT(*), MIN(created_at) FROM notification_outbox WHERE status = 'PENDING'""";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String claimSql;
+
+    @Autowired
+    public OutboxStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this(jdbcTemplate, transactionManager, isPostgres(jdbcTemplate));
+    }
+
+    OutboxStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, boolean skipLocked) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.claimSql = CLAIM.formatted(skipLocked ? " FOR UPDATE SKIP LOCKED" : "");
+        log.info("Notification outbox claims rows {}", skipLocked ? "with SKIP LOCKED" : "optimistically");
+    }
+
+    /**
+     * Inserts the messages in one transaction.
+     *
+     * @param deliveries messages to send
+     * @param priority   lower values are claimed first
+     */
+    public void insert(List<Delivery> deliveries, int priority) {
+        Timestamp now = Timestamp.from(Instant.now());
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT, deliveries,
+                deliveries.size(), (statement, delivery) -> {
+                    statement.setLong(1, delivery.getChatId());
+                    statement.setString(2, delivery.getMessageWithKeyboard().getMessage());
+                    statement.setString(3, KeyboardJson.write(delivery.getMessageWithKeyboard().getKeyboard()));
+                    statement.setInt(4, priority);
+                    statement.setTimestamp(5, now);
+                }));
+    }
+
+    /**
+     * Leases up to {@code limit} pending rows, the highest priority and the oldest first.
+     *
+     * @param limit       max amount of rows to claim
+     * @param leasedUntil rows are returned to pending after this time unless completed
+     * @return claimed rows
+     */
+    public List<ClaimedMessage> claim(int limit, Instant leasedUntil) {
+        String claimToken = UUID.randomUUID().toString();
+        return transactionTemplate.execute(status -> {
+            int claimed = jdbcTemplate.update(claimSql, claimToken, Timestamp.from(leasedUntil), limit);
+            if (claimed == 0) {
+                return List.of();
+            }
+            // rows of a broadcast share the payload, so it is converted once per batch
+            Map<List<String>, PreparedNotification> payloads = new HashMap<>();
+            return jdbcTemplate.query(SELECT_CLAIMED, (rs, rowNum) -> {
+                String message = rs.getString("message");
+                String keyboard = rs.getString("keyboard");
+                PreparedNotification payload = payloads.computeIfAbsent(Arrays.asList(message, keyboard),
+                        key -> PreparedNotification.of(new MessageWithKeyboard(message, KeyboardJson.read(keyboard))));
+                return new ClaimedMessage(rs.getLong("id"), claimToken,
+                        new Delivery(rs.getLong("chat_id"), payload, 1),
+                        rs.getInt("attempts"), rs.getTimestamp("created_at").toInstant());
+            }, claimToken);
+        });
+    }
+
+    /**
+     * Extends leases of rows which are still claimed.
+     *
+     * @param claimTokens tokens of the claims
+     * @param leasedUntil new end of the leases
+     */
+    public void renewLeases(Collection<String> claimTokens, Instant leasedUntil) {
+        Timestamp until = Timestamp.from(leasedUntil);
+        jdbcTemplate.batchUpdate(RENEW, claimTokens, claimTokens.size(), (statement, claimToken) -> {
+            statement.setTimestamp(1, until);
+            statement.setString(2, claimToken);
+        });
+    }
+
+    /**
+     * Marks claimed rows as done.
+     *
+     * @param messages claimed rows
+     * @param status   {@link OutboxStatus#SENT} or {@link OutboxStatus#FAILED}
+     * @return amount of rows marked done, rows claimed again after their lease expired are not
+     */
+    public int complete(List<ClaimedMessage> messages, OutboxStatus status) {
+        Timestamp now = Timestamp.from(Instant.now());
+        return sum(jdbcTemplate.batchUpdate(COMPLETE, messages, messages.size(), (statement, message) -> {
+            statement.setString(1, status.name());
+            statement.setTimestamp(2, now);
+            statement.setLong(3, message.getId());
+            statement.setString(4, message.getClaimToken());
+        }));
+    }
+
+    /**
+     * Returns claimed rows to pending right away, without waiting for their lease to expire.
+     *
+     * @param messages claimed rows
+     */
+    public void release(List<ClaimedMessage> messages) {
+        jdbcTemplate.batchUpdate(RELEASE, messages, messages.size(), (statement, message) -> {
+            statement.setLong(1, message.getId());
+            statement.setString(2, message.getClaimToken());
+        });
+    }
+
+    /**
+     * Returns rows with expired leases to pending, e.g. claimed by an instance which crashed.
+     *
+     * @return amount of returned rows
+     */
+    public int reapExpiredLeases(Instant now) {
+        return jdbcTemplate.update(REAP, Timestamp.from(now));
+    }
+
+    /**
+     * Deletes rows completed before the given time.
+     *
+     * @return amount of deleted rows
+     */
+    public int purgeCompleted(Instant completedBefore) {
+        return jdbcTemplate.update(PURGE, Timestamp.from(completedBefore));
+    }
+
+    public Backlog getBacklog() {
+        return jdbcTemplate.queryForObject(BACKLOG, (rs, rowNum) -> {
+            Timestamp oldest = rs.getTimestamp(2);
+            return new Backlog(rs.getLong(1), oldest != null ? oldest.toInstant() : null);
+        });
+    }
+
+    private static int sum(int[][] updateCounts) {
+        int sum = 0;
+        for (int[] batch : updateCounts) {
+            for (int count : batch) {
+                // some drivers do not report counts of batched statements
+                sum += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+        }
+        return sum;
+    }
+
+    private static boolean isPostgres(JdbcTemplate jdbcTemplate) {
+        String databaseProductName = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(databaseProductName);
+    }
+
+    @Value
+    public static class ClaimedMessage {
+        long id;
+        String claimToken;
+        Delivery delivery;
+        /**
+         * Amount of claims including this one, more than 1 if a lease expired before
+         */
+        int attempts;
+        Instant createdAt;
+    }
+
+    @Value
+    public static class Backlog {
+        long pending;
+        /**
+         * Creation time of the oldest pending row, null if there are no pending rows
+         */
+        Instant oldestCreatedAt;
+    }
+}
@@ -0,0 +1,55 @@
+package ru.z3r0ing.gitlabnotificator.replay;
+
+import lombok.Value;
+
+import java.util.Map;
+
+/**
+ * Summary of a finished webhook replay.
+ */
+@Value
+public class ReplayReport {
+    boolean dryRun;
+    /**
+     * Amount of non-empty lines read
+     */
+    long lines;
+    /**
+     * Lines processed without errors
+     */
+    long processed;
+    /**
+     * Lines with unsupported event type
+     */
+    long skipped;
+    /**
+     * Lines which could not be parsed or processed
+     */
+    long failed;
+    /**
+     * Notifications produced by the handlers, except those held for digests
+     */
+    long notifications;
+    /**
+     * Telegram messages sent, not counting digests; always 0 in dry run
+     */
+    long messagesSent;
+    /**
+     * Telegram messages saved by deduplicating and merging notifications for the same chat
+     */
+    long sendsSaved;
+    long elapsedMillis;
+    double linesPerSecond;
+    /**
+     * Timings of pipeline stages by stage name
+     */
+    Map<String, StageTiming> stages;
+
+    @Value
+    public static class StageTiming {
+        long count;
+        double totalMillis;
+        double avgMicros;
+        double maxMicros;
+    }
+}
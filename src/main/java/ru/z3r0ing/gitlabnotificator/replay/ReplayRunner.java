@@ -0,0 +1,57 @@
+package ru.z3r0ing.gitlabnotificator.replay;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Command line mode of {@link ReplayService}.
+ * Started with {@code --app.replay.file=events.ndjson}, optionally with {@code --app.replay.dry-run=true}
+ * and {@code --app.replay.parallelism=N}; replays the file, logs the report and exits,
+ * with a non-zero exit code if some lines failed.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.replay", name = "file")
+@RequiredArgsConstructor
+@Slf4j
+public class ReplayRunner implements ApplicationRunner {
+
+    private final AppProperties appProperties;
+    private final ReplayService replayService;
+    private final ConfigurableApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        AppProperties.Replay properties = appProperties.getReplay();
+        Path file = Path.of(properties.getFile());
+        log.info("Replaying webhooks from {}, dry run: {}", file, properties.isDryRun());
+
+        ReplayReport report;
+        try (InputStream input = Files.newInputStream(file)) {
+            report = replayService.replay(input, properties.isDryRun(), properties.getParallelism());
+        }
+
+        log.info("Replayed {} lines in {} ms ({} lines/s): {} processed, {} skipped, {} failed, "
+                        + "{} notifications, {} messages sent, {} sends saved",
+                report.getLines(), report.getElapsedMillis(), String.format("%.1f", report.getLinesPerSecond()),
+                report.getProcessed(), report.getSkipped(), report.getFailed(),
+                report.getNotifications(), report.getMessagesSent(), report.getSendsSaved());
+        report.getStages().forEach((stage, timing) ->
+                log.info("Stage {}: {} calls, avg {} us, max {} us, total {} ms", stage, timing.getCount(),
+                        String.format("%.1f", timing.getAvgMicros()), String.format("%.1f", timing.getMaxMicros()),
+                        String.format("%.1f", timing.getTotalMillis())));
+
+        int exitCode = SpringApplication.exit(applicationContext, () -> report.getFailed() > 0 ? 1 : 0);
+        System.exit(exitCode);
+    }
+}
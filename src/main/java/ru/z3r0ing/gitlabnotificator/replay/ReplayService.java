@@ -0,0 +1,235 @@
+package ru.z3r0ing.gitlabnotificator.replay;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.service.DeliverySink;
+import ru.z3r0ing.gitlabnotificator.service.GitlabEventService;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Re-drives recorded GitLab webhooks through the regular {@link GitlabEventService} pipeline.
+ * Input is NDJSON, one {@code {"eventType": "Merge Request Hook", "payload": {...}}} object per line,
+ * where {@code eventType} is the value of 'X-Gitlab-Event' header and {@code payload} is the webhook body.
+ * <p>
+ * Lines are read one by one and processed by a pool of {@code parallelism} threads;
+ * the reader waits while {@code 2 * parallelism} lines are in flight, so memory stays bounded for any input size.
+ * Used for backfills after outages and for load testing, see {@link ReplayRunner} for the command line mode.
+ */
+@Service
+@Slf4j
+public class ReplayService {
+
+    private static final String STAGE_PARSE = "parse";
+    /**
+     * Whole {@link GitlabEventService} pipeline of a webhook, including the send stage
+     */
+    private static final String STAGE_PROCESS = "process";
+    private static final String STAGE_SEND = "send";
+
+    private final GitlabEventParser gitlabEventParser;
+    private final GitlabEventService gitlabEventService;
+    private final ObjectReader lineReader = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build()
+            .readerFor(ReplayLine.class);
+
+    public ReplayService(GitlabEventParser gitlabEventParser, GitlabEventService gitlabEventService) {
+        this.gitlabEventParser = gitlabEventParser;
+        this.gitlabEventService = gitlabEventService;
+    }
+
+    /**
+     * Replays all lines of the input and waits for them to be processed.
+     *
+     * @param ndjson      NDJSON input, read until its end
+     * @param dryRun      render notifications without sending them to Telegram
+     * @param parallelism amount of threads processing the lines
+     * @return summary of the replay
+     * @throws IOException if input cannot be read
+     */
+    public ReplayReport replay(InputStream ndjson, boolean dryRun, int parallelism) throws IOException {
+        ReplayRun run = new ReplayRun(dryRun);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "replay-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(2 * parallelism);
+        long startedAt = System.nanoTime();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                run.lines.increment();
+                inFlight.acquire();
+                String currentLine = line;
+                executor.execute(() -> {
+                    try {
+                        processLine(currentLine, run);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for replay to finish, {} lines read", run.lines.sum());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying webhooks", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ReplayReport report = run.toReport(System.nanoTime() - startedAt);
+        log.info("Replay finished: {}", report);
+        return report;
+    }
+
+    private void processLine(String line, ReplayRun run) {
+        try {
+            long startedAt = System.nanoTime();
+            ReplayLine replayLine = lineReader.readValue(line);
+            EventType eventType;
+            try {
+                eventType = EventType.fromRequestHeader(replayLine.getEventType());
+            } catch (IllegalArgumentException e) {
+                run.skipped.increment();
+                return;
+            }
+            if (replayLine.getPayload() == null) {
+                throw new IllegalArgumentException("Replay line has no payload");
+            }
+            AbstractEvent event = gitlabEventParser.parse(eventType, replayLine.getPayload().asParser());
+            startedAt = run.record(STAGE_PARSE, startedAt);
+
+            gitlabEventService.handleGitlabEvent(eventType, event, run);
+            run.record(STAGE_PROCESS, startedAt);
+            run.processed.increment();
+        } catch (IOException | RuntimeException e) {
+            run.failed.increment();
+            log.warn("Could not replay line: {}", e.getMessage());
+            log.debug("Replay line failure", e);
+        }
+    }
+
+    /**
+     * One line of the replay input
+     */
+    @Data
+    static class ReplayLine {
+        private String eventType;
+        /**
+         * Webhook body kept as tokens, so it is parsed right into the event class once the type is known
+         */
+        private TokenBuffer payload;
+    }
+
+    /**
+     * Counters of a running replay, updated concurrently by the workers
+     */
+    private class ReplayRun implements DeliverySink {
+        private final boolean dryRun;
+        private final LongAdder lines = new LongAdder();
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder notifications = new LongAdder();
+        private final LongAdder messagesSent = new LongAdder();
+        private final LongAdder sendsSaved = new LongAdder();
+        private final Map<String, StageStats> stages = new LinkedHashMap<>();
+
+        ReplayRun(boolean dryRun) {
+            this.dryRun = dryRun;
+            for (String stage : List.of(STAGE_PARSE, STAGE_PROCESS, STAGE_SEND)) {
+                stages.put(stage, new StageStats());
+            }
+        }
+
+        @Override
+        public void deliver(EventType eventType, AbstractEvent event, long[][] recipients, List<Delivery> deliveries) {
+            notifications.add(recipients.length);
+            int undeduplicatedSends = 0;
+            for (long[] chatIds : recipients) {
+                undeduplicatedSends += chatIds.length;
+            }
+            sendsSaved.add(undeduplicatedSends - deliveries.size());
+            if (!dryRun) {
+                long startedAt = System.nanoTime();
+                gitlabEventService.send(eventType, event, deliveries);
+                record(STAGE_SEND, startedAt);
+                messagesSent.add(deliveries.size());
+            }
+        }
+
+        @Override
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        /**
+         * @return current time, the start of the next stage
+         */
+        long record(String stage, long startedAt) {
+            long now = System.nanoTime();
+            StageStats stats = stages.get(stage);
+            stats.count.increment();
+            stats.totalNanos.add(now - startedAt);
+            stats.maxNanos.accumulate(now - startedAt);
+            return now;
+        }
+
+        ReplayReport toReport(long elapsedNanos) {
+            Map<String, ReplayReport.StageTiming> timings = new LinkedHashMap<>();
+            stages.forEach((stage, stats) -> {
+                long count = stats.count.sum();
+                long totalNanos = stats.totalNanos.sum();
+                timings.put(stage, new ReplayReport.StageTiming(count,
+                        totalNanos / 1_000_000.0,
+                        count == 0 ? 0 : totalNanos / 1_000.0 / count,
+                        stats.maxNanos.get() / 1_000.0));
+            });
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            return new ReplayReport(dryRun, lines.sum(), processed.sum(), skipped.sum(), failed.sum(),
+                    notifications.sum(), messagesSent.sum(), sendsSaved.sum(), elapsedMillis,
+                    elapsedNanos == 0 ? 0 : lines.sum() * 1_000_000_000.0 / elapsedNanos,
+                    timings);
+        }
+    }
+
+    private static class StageStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+}
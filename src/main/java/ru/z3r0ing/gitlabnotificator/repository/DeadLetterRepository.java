@@ -0,0 +1,14 @@
+package ru.z3r0ing.gitlabnotificator.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ru.z3r0ing.gitlabnotificator.model.entity.DeadLetter;
+
+import java.util.List;
+
+@Repository
+public interface DeadLetterRepository extends JpaRepository<DeadLetter, Long> {
+    List<DeadLetter> findAllByOrderByIdDesc(Pageable pageable);
+    List<DeadLetter> findAllByOrderByIdAsc(Pageable pageable);
+}
@@ -0,0 +1,42 @@
+package ru.z3r0ing.gitlabnotificator.repository;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
+import ru.z3r0ing.gitlabnotificator.service.RecipientIndex;
+
+/**
+ * Refreshes {@link RecipientIndex} when a {@link UserMapping} is written through JPA.
+ * The refresh runs after the transaction is committed, so the index reads the new data.
+ */
+@Component
+public class UserMappingChangeListener {
+
+    // the index depends on the repository, so it is resolved lazily to avoid a dependency cycle
+    private final ObjectProvider<RecipientIndex> recipientIndex;
+
+    public UserMappingChangeListener(ObjectProvider<RecipientIndex> recipientIndex) {
+        this.recipientIndex = recipientIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(UserMapping userMapping) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recipientIndex.ifAvailable(RecipientIndex::refreshAsync);
+                }
+            });
+        } else {
+            recipientIndex.ifAvailable(RecipientIndex::refreshAsync);
+        }
+    }
+}
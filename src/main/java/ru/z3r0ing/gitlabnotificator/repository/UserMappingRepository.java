@@ -2,9 +2,11 @@ package ru.z3r0ing.gitlabnotificator.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import ru.z3r0ing.gitlabnotificator.model.RecipientMapping;
 import ru.z3r0ing.gitlabnotificator.model.UserRole;
 import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,4 +15,8 @@ public interface UserMappingRepository extends JpaRepository<UserMapping, Long>
     Optional<UserMapping> findByTelegramId(Long telegramId);
     Optional<UserMapping> findByGitlabUserId(Long gitlabUserId);
     List<UserMapping> findAllByRole(UserRole role);
+
+    List<RecipientMapping> findAllProjectedBy();
+    List<RecipientMapping> findAllByGitlabUserIdIn(Collection<Long> gitlabUserIds);
+    List<RecipientMapping> findAllByRoleIn(Collection<UserRole> roles);
 }
@@ -0,0 +1,133 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups resolved notifications of one webhook by Telegram chat.
+ * A chat receiving the same message several times (e.g. LEAD who is also the assignee) gets it once,
+ * and different messages for one chat are merged into one send while they fit into a Telegram message.
+ */
+@Component
+public class DeliveryPlanner {
+
+    static final String MESSAGE_SEPARATOR = "\n\n";
+
+    private final boolean mergeMessages;
+    private final int maxMessageLength;
+    private final Counter duplicatesSaved;
+    private final Counter mergesSaved;
+
+    public DeliveryPlanner(AppProperties appProperties, MeterRegistry meterRegistry) {
+        AppProperties.Notifications notifications = appProperties.getNotifications();
+        this.mergeMessages = notifications.isMergeMessages();
+        this.maxMessageLength = notifications.getMaxMessageLength();
+        this.duplicatesSaved = Counter.builder("gitlab.notification.sends.saved")
+                .description("Telegram sends saved by grouping notifications by chat")
+                .tag("reason", "duplicate")
+                .register(meterRegistry);
+        this.mergesSaved = Counter.builder("gitlab.notification.sends.saved")
+                .description("Telegram sends saved by grouping notifications by chat")
+                .tag("reason", "merged")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param handledEvents notifications of one webhook
+     * @param recipients    Telegram IDs of the receivers of each notification, in the same order
+     * @return messages to send, in the order chats first appear in the notifications
+     */
+    public List<Delivery> plan(List<HandledEvent> handledEvents, long[][] recipients) {
+        if (handledEvents.size() == 1) {
+            // chat IDs of one notification are unique, there is nothing to group
+            PreparedNotification payload = PreparedNotification.of(handledEvents.get(0).getMessageWithKeyboard());
+            List<Delivery> deliveries = new ArrayList<>(recipients[0].length);
+            for (long chatId : recipients[0]) {
+                deliveries.add(new Delivery(chatId, payload, 1));
+            }
+            return deliveries;
+        }
+
+        Map<Long, List<MessageWithKeyboard>> messagesByChat = new LinkedHashMap<>();
+        int duplicates = 0;
+        for (int i = 0; i < recipients.length; i++) {
+            MessageWithKeyboard message = handledEvents.get(i).getMessageWithKeyboard();
+            for (long chatId : recipients[i]) {
+                List<MessageWithKeyboard> messages = messagesByChat.computeIfAbsent(chatId, id -> new ArrayList<>(2));
+                if (messages.contains(message)) {
+                    duplicates++;
+                } else {
+                    messages.add(message);
+                }
+            }
+        }
+
+        List<Delivery> deliveries = new ArrayList<>(messagesByChat.size());
+        // notifications are shared by their recipients, so each one is converted to Telegram payload once
+        Map<MessageWithKeyboard, PreparedNotification> payloads = new IdentityHashMap<>();
+        int merged = 0;
+        for (Map.Entry<Long, List<MessageWithKeyboard>> entry : messagesByChat.entrySet()) {
+            List<MessageWithKeyboard> messages = entry.getValue();
+            int sendsBefore = deliveries.size();
+            if (mergeMessages && messages.size() > 1) {
+                merge(entry.getKey(), messages, deliveries);
+            } else {
+                for (MessageWithKeyboard message : messages) {
+                    deliveries.add(new Delivery(entry.getKey(),
+                            payloads.computeIfAbsent(message, PreparedNotification::of), 1));
+                }
+            }
+            merged += messages.size() - (deliveries.size() - sendsBefore);
+        }
+
+        duplicatesSaved.increment(duplicates);
+        mergesSaved.increment(merged);
+        return deliveries;
+    }
+
+    private void merge(long chatId, List<MessageWithKeyboard> messages, List<Delivery> deliveries) {
+        StringBuilder text = new StringBuilder();
+        List<InlineKeyboardButtonRow> keyboard = new ArrayList<>();
+        int count = 0;
+        for (MessageWithKeyboard message : messages) {
+            if (count > 0
+                    && text.length() + MESSAGE_SEPARATOR.length() + message.getMessage().length() > maxMessageLength) {
+                deliveries.add(toDelivery(chatId, text, keyboard, count));
+                text.setLength(0);
+                keyboard = new ArrayList<>();
+                count = 0;
+            }
+            if (count > 0) {
+                text.append(MESSAGE_SEPARATOR);
+            }
+            text.append(message.getMessage());
+            if (message.getKeyboard() != null) {
+                for (InlineKeyboardButtonRow row : message.getKeyboard()) {
+                    if (!keyboard.contains(row)) {
+                        keyboard.add(row);
+                    }
+                }
+            }
+            count++;
+        }
+        deliveries.add(toDelivery(chatId, text, keyboard, count));
+    }
+
+    private static Delivery toDelivery(long chatId, StringBuilder text, List<InlineKeyboardButtonRow> keyboard,
+                                       int notifications) {
+        return new Delivery(chatId, new MessageWithKeyboard(text.toString(), keyboard), notifications);
+    }
+}
@@ -0,0 +1,31 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.util.List;
+
+/**
+ * Receives the messages planned by {@link GitlabEventService} for a webhook, sends them in the live pipeline.
+ * Called on the thread processing the webhook.
+ */
+@FunctionalInterface
+public interface DeliverySink {
+
+    /**
+     * @param eventType  type of the webhook
+     * @param event      parsed webhook
+     * @param recipients Telegram IDs of the receivers of each notification of the webhook, in the same order
+     * @param deliveries messages planned for the notifications, one per chat
+     */
+    void deliver(EventType eventType, AbstractEvent event, long[][] recipients, List<Delivery> deliveries);
+
+    /**
+     * @return true if nothing may reach Telegram: pipeline status messages are not updated and notifications
+     * are not held for digests, so every notification is passed to {@link #deliver}
+     */
+    default boolean isDryRun() {
+        return false;
+    }
+}
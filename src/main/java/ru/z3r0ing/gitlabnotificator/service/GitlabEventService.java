@@ -1,88 +1,255 @@
 package ru.z3r0ing.gitlabnotificator.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.coalescing.NotificationCoalescer;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
 import ru.z3r0ing.gitlabnotificator.handler.EventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.EventHandlerRegistry;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
-import ru.z3r0ing.gitlabnotificator.model.UserRole;
-import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
 import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
-import ru.z3r0ing.gitlabnotificator.repository.UserMappingRepository;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Project;
+import ru.z3r0ing.gitlabnotificator.outbox.NotificationOutbox;
+import ru.z3r0ing.gitlabnotificator.status.PipelineStatusNotifier;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class GitlabEventService {
 
-    private final TelegramService telegramService;
-    private final UserMappingRepository userMappingRepository;
-    private final ApplicationContext applicationContext;
+    /**
+     * Value of the 'project' tag of projects which are not tagged separately, keeps the cardinality bounded
+     */
+    private static final String OTHER_PROJECT_TAG = "other";
 
-    public void handleGitlabEvent(String eventTypeRaw, String payload) {
-        EventType eventType;
+    private final RecipientIndex recipientIndex;
+    private final EventHandlerRegistry eventHandlerRegistry;
+    private final DeliveryPlanner deliveryPlanner;
+    private final DeliveryScheduler deliveryScheduler;
+    private final NotificationOutbox notificationOutbox;
+    private final WebhookLaneClassifier webhookLaneClassifier;
+    private final NotificationCoalescer notificationCoalescer;
+    private final PipelineStatusNotifier pipelineStatusNotifier;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> taggedProjects;
+    private final Map<EventHandler<?>, Timer> handleTimers = new ConcurrentHashMap<>();
+    private final Map<EventCounterKey, Counter> eventCounters = new ConcurrentHashMap<>();
+    private final Timer resolveTimer;
+    /**
+     * Sends the messages of the webhooks received from GitLab
+     */
+    private final DeliverySink liveSink = (eventType, event, recipients, deliveries) ->
+            send(eventType, event, deliveries);
+
+    public GitlabEventService(RecipientIndex recipientIndex,
+                              EventHandlerRegistry eventHandlerRegistry,
+                              DeliveryPlanner deliveryPlanner,
+                              DeliveryScheduler deliveryScheduler,
+                              NotificationOutbox notificationOutbox,
+                              WebhookLaneClassifier webhookLaneClassifier,
+                              NotificationCoalescer notificationCoalescer,
+                              PipelineStatusNotifier pipelineStatusNotifier,
+                              AppProperties appProperties,
+                              MeterRegistry meterRegistry) {
+        this.recipientIndex = recipientIndex;
+        this.eventHandlerRegistry = eventHandlerRegistry;
+        this.deliveryPlanner = deliveryPlanner;
+        this.deliveryScheduler = deliveryScheduler;
+        this.notificationOutbox = notificationOutbox;
+        this.webhookLaneClassifier = webhookLaneClassifier;
+        this.notificationCoalescer = notificationCoalescer;
+        this.pipelineStatusNotifier = pipelineStatusNotifier;
+        this.meterRegistry = meterRegistry;
+        this.taggedProjects = new HashSet<>(appProperties.getMetrics().getProjects());
+        this.resolveTimer = Timer.builder("gitlab.notification.resolve")
+                .description("Time to find Telegram chats of the notifications of one webhook")
+                .register(meterRegistry);
+    }
+
+    public void handleGitlabEvent(EventType eventType, AbstractEvent event) {
+        handleGitlabEvent(eventType, event, liveSink);
+    }
+
+    /**
+     * Processes the webhook the same way as {@link #handleGitlabEvent(EventType, AbstractEvent)}, passing
+     * the messages to the sink instead of sending them, e.g. to replay recorded webhooks.
+     *
+     * @param eventType type of the webhook
+     * @param event     parsed webhook
+     * @param sink      receiver of the messages which are not held for a digest
+     */
+    public void handleGitlabEvent(EventType eventType, AbstractEvent event, DeliverySink sink) {
+        String result;
         try {
-            eventType = EventType.fromRequestHeader(eventTypeRaw);
-        } catch (IllegalArgumentException iae) {
-            log.warn("Unsupported GitLab event: {}", eventTypeRaw);
-            log.debug("Unsupported GitLab webhook payload: {}", payload);
-            return;
+            result = process(eventType, event, sink);
+        } catch (RuntimeException e) {
+            countEvent(eventType, event, "failed");
+            throw e;
         }
+        countEvent(eventType, event, result);
+    }
 
-        List<EventHandler> eventHandlers = getAllEventHandlers();
-
-        for (EventHandler eventHandler : eventHandlers) {
-            if (eventHandler.doesSupportSuchEvent(eventType)) {
-                try {
-                    List<HandledEvent> handledEventList = eventHandler.handleEvent(payload);
-                    handledEventList.forEach(this::sendEventNotification);
-                } catch (JsonProcessingException e) {
-                    log.error("Error processing GitLab event payload for event type: {}", eventType, e);
-                    log.debug("Bad GitLab webhook payload: {}", payload);
-                }
-                break;
-            }
+    /**
+     * @return outcome of the webhook for metrics
+     */
+    private String process(EventType eventType, AbstractEvent event, DeliverySink sink) {
+        if (eventType == EventType.PIPELINE && pipelineStatusNotifier.isEnabled() && !sink.isDryRun()) {
+            // edits are silent, so failed and deployed pipelines are still notified with new messages below
+            PipelineEvent pipelineEvent = (PipelineEvent) event;
+            List<HandledEvent> statuses = pipelineStatusNotifier.render(pipelineEvent);
+            pipelineStatusNotifier.update(pipelineEvent, statuses, resolveRecipients(statuses));
         }
+        List<HandledEvent> handledEvents = renderNotifications(eventType, event);
+        if (handledEvents.isEmpty()) {
+            return "silent";
+        }
+        long[][] recipients = resolveRecipients(handledEvents);
+        if (!sink.isDryRun() && notificationCoalescer.offer(eventType, event, handledEvents, recipients)) {
+            // sent later as a part of a digest, see NotificationCoalescer
+            return "coalesced";
+        }
+        sink.deliver(eventType, event, recipients, planDeliveries(handledEvents, recipients));
+        return "notified";
     }
 
-    private void sendEventNotification(HandledEvent handledEvent) {
-        Long gitlabUserReceiverId = handledEvent.getGitlabUserReceiverId();
-        if (gitlabUserReceiverId == null) {
-            UserRole userRole = handledEvent.getUserRole();
-            if (userRole == null) {
-                throw new IllegalArgumentException("Need at least 'userRole' or 'gitlabUserReceiverId'");
-            }
-            List<UserMapping> allByRole = userMappingRepository.findAllByRole(userRole);
-            for (UserMapping user : allByRole) {
-                telegramService.sendMarkdownMessage(user.getTelegramId(),
-                        handledEvent.getMessageWithKeyboard().getMessage(),
-                        handledEvent.getMessageWithKeyboard().getKeyboard());
-            }
-        } else {
-            Optional<UserMapping> optionalUser =
-                    userMappingRepository.findByGitlabUserId(gitlabUserReceiverId);
-            if (optionalUser.isEmpty()) {
+    /**
+     * Runs the event through its handlers.
+     *
+     * @param eventType type of the event
+     * @param event     parsed event
+     * @return notifications produced by the handlers
+     */
+    private List<HandledEvent> renderNotifications(EventType eventType, AbstractEvent event) {
+        List<EventHandler<?>> eventHandlers = eventHandlerRegistry.getHandlers(eventType);
+        if (eventHandlers.size() == 1) {
+            return handleEvent(eventType, eventHandlers.get(0), event);
+        }
+        List<HandledEvent> handledEvents = new ArrayList<>();
+        for (EventHandler<?> eventHandler : eventHandlers) {
+            handledEvents.addAll(handleEvent(eventType, eventHandler, event));
+        }
+        return handledEvents;
+    }
+
+    /**
+     * Finds Telegram chats which should receive the notifications, resolving all of them at once.
+     *
+     * @param handledEvents notifications with their receiver GitLab users or roles
+     * @return Telegram IDs of the receivers in the order of notifications, empty if receiver has no mapping;
+     * the arrays are shared with {@link RecipientIndex} and must not be modified
+     */
+    private long[][] resolveRecipients(List<HandledEvent> handledEvents) {
+        long startedAt = System.nanoTime();
+        long[][] recipients = recipientIndex.resolve(handledEvents);
+        resolveTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        for (int i = 0; i < recipients.length; i++) {
+            Long gitlabUserReceiverId = handledEvents.get(i).getGitlabUserReceiverId();
+            if (recipients[i].length == 0 && gitlabUserReceiverId != null) {
                 log.warn("User mapping not found for GitLab user ID: {}", gitlabUserReceiverId);
-                return;
             }
-            UserMapping user = optionalUser.get();
-            telegramService.sendMarkdownMessage(user.getTelegramId(),
-                    handledEvent.getMessageWithKeyboard().getMessage(),
-                    handledEvent.getMessageWithKeyboard().getKeyboard());
         }
+        return recipients;
     }
 
+    /**
+     * Groups the notifications by Telegram chat, see {@link DeliveryPlanner}.
+     *
+     * @param handledEvents notifications of one webhook
+     * @param recipients    receivers of the notifications from {@link #resolveRecipients(List)}
+     * @return messages to send
+     */
+    private List<Delivery> planDeliveries(List<HandledEvent> handledEvents, long[][] recipients) {
+        return deliveryPlanner.plan(handledEvents, recipients);
+    }
+
+    /**
+     * Sends the messages of one webhook: stores them in {@link NotificationOutbox} if it is enabled,
+     * otherwise queues them right away, see {@link #send(Delivery)}.
+     *
+     * @param eventType  type of the webhook
+     * @param event      webhook, its priority lane is the outbox priority of the messages
+     * @param deliveries messages to send
+     */
+    public void send(EventType eventType, AbstractEvent event, List<Delivery> deliveries) {
+        if (notificationOutbox.isEnabled()) {
+            notificationOutbox.enqueue(deliveries, webhookLaneClassifier.classify(eventType, event).ordinal());
+            return;
+        }
+        for (Delivery delivery : deliveries) {
+            send(delivery);
+        }
+    }
+
+    /**
+     * Queues the message for sending to its Telegram chat within Bot API rate limits.
+     *
+     * @param delivery message to send
+     */
+    public void send(Delivery delivery) {
+        deliveryScheduler.submit(delivery);
+    }
 
+    private List<HandledEvent> handleEvent(EventType eventType, EventHandler<?> eventHandler, AbstractEvent event) {
+        long startedAt = System.nanoTime();
+        try {
+            return handleEvent(eventHandler, event);
+        } finally {
+            handleTimers.computeIfAbsent(eventHandler, handler -> Timer.builder("gitlab.notification.handle")
+                            .description("Time handlers take to render notifications of a webhook")
+                            .tag("event", eventType.getTag())
+                            .tag("handler", handler.getClass().getSimpleName())
+                            .register(meterRegistry))
+                    .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends AbstractEvent> List<HandledEvent> handleEvent(EventHandler<T> eventHandler,
+                                                                           AbstractEvent event) {
+        // registry guarantees that the handler supports the event type, and so its class
+        return eventHandler.handleEvent((T) event);
+    }
+
+    /**
+     * Counts processed webhooks by type, project and outcome. Projects are tagged by name
+     * only if listed in {@code app.metrics.projects}, so a large GitLab instance does not flood the registry.
+     */
+    private void countEvent(EventType eventType, AbstractEvent event, String result) {
+        Project project = event.getProject();
+        String projectTag = project != null && taggedProjects.contains(project.getName())
+                ? project.getName() : OTHER_PROJECT_TAG;
+        eventCounters.computeIfAbsent(new EventCounterKey(eventType, projectTag, result),
+                        key -> Counter.builder("gitlab.notification.events")
+                                .description("Processed webhooks by event type, project and outcome")
+                                .tag("event", key.getEventType().getTag())
+                                .tag("project", key.getProject())
+                                .tag("result", key.getResult())
+                                .register(meterRegistry))
+                .increment();
+    }
 
-    private List<EventHandler> getAllEventHandlers() {
-        Map<String, EventHandler> beans = applicationContext.getBeansOfType(EventHandler.class);
-        return new ArrayList<>(beans.values());
+    /**
+     * Tags of a {@code gitlab.notification.events} counter
+     */
+    @Value
+    private static class EventCounterKey {
+        EventType eventType;
+        String project;
+        String result;
     }
 }
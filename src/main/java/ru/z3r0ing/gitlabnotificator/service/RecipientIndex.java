@@ -0,0 +1,292 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.RecipientMapping;
+import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
+import ru.z3r0ing.gitlabnotificator.repository.UserMappingRepository;
+import ru.z3r0ing.gitlabnotificator.util.LongLongHashMap;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Read-mostly in-memory index of {@link UserMapping} for resolving notification recipients
+ * without querying the database for every notification.
+ * <p>
+ * The whole table is loaded into an immutable snapshot, which is swapped atomically on refresh.
+ * Refresh runs on startup, every {@code app.recipients.refresh-interval}, and shortly after mappings are written
+ * through JPA. Lookups use primitive long-keyed maps and return shared arrays, so they do not allocate.
+ * <p>
+ * All notifications of one webhook are resolved together by {@link #resolve(List)}: against one snapshot,
+ * and with at most one database round-trip for users and one for roles missing in it. Users and roles not found
+ * in the database either are remembered in the snapshot, so they are not queried again until the next refresh.
+ */
+@Component
+@Slf4j
+public class RecipientIndex {
+
+    public static final long[] NO_RECIPIENTS = new long[0];
+
+    private static final long NOT_FOUND = -1;
+
+    private final UserMappingRepository userMappingRepository;
+    private final Duration refreshInterval;
+    private final boolean loadMissing;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private ScheduledExecutorService refreshExecutor;
+
+    public RecipientIndex(AppProperties appProperties, UserMappingRepository userMappingRepository) {
+        this.userMappingRepository = userMappingRepository;
+        this.refreshInterval = appProperties.getRecipients().getRefreshInterval();
+        this.loadMissing = appProperties.getRecipients().isLoadMissing();
+    }
+
+    @PostConstruct
+    public void start() {
+        refresh();
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recipient-index-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = refreshInterval.toMillis();
+        refreshExecutor.scheduleWithFixedDelay(this::refreshSafely, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param gitlabUserId GitLab user ID
+     * @return Telegram ID of the user as a single element array, or {@link #NO_RECIPIENTS} if user is not mapped;
+     * the array is shared and must not be modified
+     */
+    public long[] findByGitlabUserId(long gitlabUserId) {
+        Snapshot current = snapshot;
+        long slot = current.userSlots.get(gitlabUserId, NOT_FOUND);
+        return slot == NOT_FOUND ? NO_RECIPIENTS : current.userRecipients[(int) slot];
+    }
+
+    /**
+     * @param role user role
+     * @return Telegram IDs of all users with the role; the array is shared and must not be modified
+     */
+    public long[] findByRole(UserRole role) {
+        return snapshot.roleRecipients.getOrDefault(role, NO_RECIPIENTS);
+    }
+
+    /**
+     * Resolves receivers of all notifications at once.
+     *
+     * @param handledEvents notifications, each with its receiver GitLab user or role
+     * @return Telegram IDs of the receivers in the order of notifications, empty arrays for receivers
+     * without mapping; the arrays are shared and must not be modified
+     * @throws IllegalArgumentException if a notification has neither receiver user nor role
+     */
+    public long[][] resolve(List<HandledEvent> handledEvents) {
+        Snapshot current = snapshot;
+        long[][] recipients = new long[handledEvents.size()][];
+        Set<Long> missingUsers = null;
+        Set<UserRole> missingRoles = null;
+        for (int i = 0; i < recipients.length; i++) {
+            HandledEvent handledEvent = handledEvents.get(i);
+            Long gitlabUserId = handledEvent.getGitlabUserReceiverId();
+            if (gitlabUserId != null) {
+                long slot = current.userSlots.get(gitlabUserId, NOT_FOUND);
+                if (slot != NOT_FOUND) {
+                    recipients[i] = current.userRecipients[(int) slot];
+                } else if (loadMissing && !current.unmappedUsers.contains(gitlabUserId)) {
+                    missingUsers = missingUsers == null ? new LinkedHashSet<>() : missingUsers;
+                    missingUsers.add(gitlabUserId);
+                }
+                continue;
+            }
+            UserRole role = handledEvent.getUserRole();
+            if (role == null) {
+                throw new IllegalArgumentException("Need at least 'userRole' or 'gitlabUserReceiverId'");
+            }
+            recipients[i] = current.roleRecipients.get(role);
+            if (recipients[i] == null && loadMissing && !current.unmappedRoles.contains(role)) {
+                missingRoles = missingRoles == null ? EnumSet.noneOf(UserRole.class) : missingRoles;
+                missingRoles.add(role);
+            }
+        }
+
+        if (missingUsers != null || missingRoles != null) {
+            loadMissing(current, handledEvents, recipients, missingUsers, missingRoles);
+        }
+        for (int i = 0; i < recipients.length; i++) {
+            if (recipients[i] == null) {
+                recipients[i] = NO_RECIPIENTS;
+            }
+        }
+        return recipients;
+    }
+
+    /**
+     * @return amount of indexed mappings
+     */
+    public int size() {
+        return snapshot.userRecipients.length;
+    }
+
+    /**
+     * Reloads all mappings from the database and swaps the index.
+     */
+    public synchronized void refresh() {
+        List<RecipientMapping> mappings = userMappingRepository.findAllProjectedBy();
+        snapshot = Snapshot.of(mappings);
+        log.debug("Recipient index refreshed, {} mappings", mappings.size());
+    }
+
+    /**
+     * Schedules refresh on the background thread.
+     * Calls made before the refresh starts are coalesced into one refresh.
+     */
+    public void refreshAsync() {
+        if (refreshExecutor != null && refreshScheduled.compareAndSet(false, true)) {
+            refreshExecutor.execute(() -> {
+                refreshScheduled.set(false);
+                refreshSafely();
+            });
+        }
+    }
+
+    private void loadMissing(Snapshot current, List<HandledEvent> handledEvents, long[][] recipients,
+                             Set<Long> missingUsers, Set<UserRole> missingRoles) {
+        Map<Long, long[]> loadedUsers = new HashMap<>();
+        Map<UserRole, long[]> loadedRoles = new EnumMap<>(UserRole.class);
+        try {
+            if (missingUsers != null) {
+                for (RecipientMapping mapping : userMappingRepository.findAllByGitlabUserIdIn(missingUsers)) {
+                    loadedUsers.put(mapping.getGitlabUserId(), new long[]{mapping.getTelegramId()});
+                }
+            }
+            if (missingRoles != null) {
+                loadedRoles.putAll(Snapshot.groupByRole(userMappingRepository.findAllByRoleIn(missingRoles)));
+            }
+        } catch (RuntimeException e) {
+            // receivers found in the index are still notified
+            log.error("Could not load recipients missing in the index", e);
+            return;
+        }
+        rememberUnmapped(current, missingUsers, loadedUsers, missingRoles, loadedRoles);
+        if (loadedUsers.isEmpty() && loadedRoles.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < recipients.length; i++) {
+            if (recipients[i] == null) {
+                HandledEvent handledEvent = handledEvents.get(i);
+                recipients[i] = handledEvent.getGitlabUserReceiverId() != null
+                        ? loadedUsers.get(handledEvent.getGitlabUserReceiverId())
+                        : loadedRoles.get(handledEvent.getUserRole());
+            }
+        }
+        // mappings were written bypassing this instance, so the index is stale
+        refreshAsync();
+    }
+
+    private static void rememberUnmapped(Snapshot current, Set<Long> missingUsers, Map<Long, long[]> loadedUsers,
+                                         Set<UserRole> missingRoles, Map<UserRole, long[]> loadedRoles) {
+        if (missingUsers != null) {
+            for (Long gitlabUserId : missingUsers) {
+                if (!loadedUsers.containsKey(gitlabUserId)) {
+                    current.unmappedUsers.add(gitlabUserId);
+                }
+            }
+        }
+        if (missingRoles != null) {
+            for (UserRole role : missingRoles) {
+                if (!loadedRoles.containsKey(role)) {
+                    current.unmappedRoles.add(role);
+                }
+            }
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // keep serving the previous snapshot
+            log.error("Could not refresh recipient index", e);
+        }
+    }
+
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = of(List.of());
+
+        /**
+         * GitLab user ID to index in {@link #userRecipients}
+         */
+        final LongLongHashMap userSlots;
+        /**
+         * Single element arrays of Telegram IDs, shared by all lookups of the user
+         */
+        final long[][] userRecipients;
+        final Map<UserRole, long[]> roleRecipients;
+        /**
+         * Users and roles not found in the database since the snapshot was loaded
+         */
+        final Set<Long> unmappedUsers = ConcurrentHashMap.newKeySet();
+        final Set<UserRole> unmappedRoles = ConcurrentHashMap.newKeySet();
+
+        private Snapshot(LongLongHashMap userSlots, long[][] userRecipients, Map<UserRole, long[]> roleRecipients) {
+            this.userSlots = userSlots;
+            this.userRecipients = userRecipients;
+            this.roleRecipients = roleRecipients;
+        }
+
+        static Snapshot of(List<RecipientMapping> mappings) {
+            LongLongHashMap userSlots = new LongLongHashMap(mappings.size());
+            long[][] userRecipients = new long[mappings.size()][];
+            for (int i = 0; i < mappings.size(); i++) {
+                RecipientMapping mapping = mappings.get(i);
+                userRecipients[i] = new long[]{mapping.getTelegramId()};
+                userSlots.put(mapping.getGitlabUserId(), i);
+            }
+            return new Snapshot(userSlots, userRecipients, groupByRole(mappings));
+        }
+
+        static Map<UserRole, long[]> groupByRole(List<RecipientMapping> mappings) {
+            Map<UserRole, List<Long>> telegramIdsByRole = new EnumMap<>(UserRole.class);
+            for (RecipientMapping mapping : mappings) {
+                if (mapping.getRole() != null) {
+                    telegramIdsByRole.computeIfAbsent(mapping.getRole(), role -> new ArrayList<>())
+                            .add(mapping.getTelegramId());
+                }
+            }
+            Map<UserRole, long[]> roleRecipients = new EnumMap<>(UserRole.class);
+            telegramIdsByRole.forEach((role, telegramIds) ->
+                    roleRecipients.put(role, telegramIds.stream().mapToLong(Long::longValue).toArray()));
+            return roleRecipients;
+        }
+    }
+}
@@ -3,16 +3,13 @@ package ru.z3r0ing.gitlabnotificator.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
-import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
-import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -21,42 +18,57 @@ public class TelegramService {
 
     private final TelegramClient telegramClient;
 
-    public void sendMarkdownMessage(long chatId, String text, List<InlineKeyboardButtonRow> buttons) {
+    /**
+     * Sends the prepared notification, see {@link PreparedNotification}.
+     *
+     * @throws TelegramApiException if Bot API rejected the message or could not be reached
+     */
+    public Message sendMarkdownMessageOrThrow(long chatId, PreparedNotification notification)
+            throws TelegramApiException {
+        Message message = telegramClient.execute(notification.toSendMessage(String.valueOf(chatId)));
+        log.debug("Message send to a chat {}: {}", chatId, notification.getMessageWithKeyboard().getMessage());
+        return message;
+    }
+
+    /**
+     * Replaces the text and the keyboard of a message sent by the bot.
+     *
+     * @throws TelegramApiException if Bot API rejected the edit, e.g. the message was deleted, or could not be reached
+     */
+    public void editMarkdownMessageOrThrow(long chatId, int messageId, PreparedNotification notification)
+            throws TelegramApiException {
+        telegramClient.execute(notification.toEditMessageText(String.valueOf(chatId), messageId));
+        log.debug("Message {} edited in a chat {}: {}", messageId, chatId,
+                notification.getMessageWithKeyboard().getMessage());
+    }
+
+    /**
+     * Same as {@link #sendMarkdownMessageOrThrow(long, PreparedNotification)}, but does not wait for Bot API response.
+     *
+     * @param chatId chat ID as a string, so callers sending to the chat repeatedly can keep it
+     * @return sent message, completed exceptionally with {@link TelegramApiException}
+     * if Bot API rejected the message or could not be reached
+     */
+    public CompletableFuture<Message> sendMarkdownMessageAsync(String chatId, PreparedNotification notification) {
         try {
-            SendMessage.SendMessageBuilder messageBuilder = SendMessage.builder()
-                    .chatId(String.valueOf(chatId))
-                    .text(text)
-                    .parseMode("Markdown");
-
-            // Added keyboard if specified
-            if (buttons != null && !buttons.isEmpty()) {
-                InlineKeyboardMarkup markup = createInlineKeyboardMarkup(buttons);
-                messageBuilder.replyMarkup(markup);
-            }
-
-            SendMessage message = messageBuilder.build();
-            telegramClient.execute(message);
-            log.debug("Message send to a chat {}: {}", chatId, text);
+            return telegramClient.executeAsync(notification.toSendMessage(chatId));
         } catch (TelegramApiException e) {
-            log.error("Error sending message to a chat {}: {}", chatId, e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    private InlineKeyboardMarkup createInlineKeyboardMarkup(List<InlineKeyboardButtonRow> buttonRows) {
-        List<InlineKeyboardRow> keyboardRowList = new ArrayList<>();
-
-        for (InlineKeyboardButtonRow row : buttonRows) {
-            InlineKeyboardRow inlineKeyboardRow = new InlineKeyboardRow();
-            for (InlineKeyboardButtonRow.InlineKeyboardButton button : row.getButtons()) {
-                InlineKeyboardButton telegramButton = InlineKeyboardButton.builder()
-                        .text(button.getText())
-                        .url(button.getUrl())
-                        .build();
-                inlineKeyboardRow.add(telegramButton);
-            }
-            keyboardRowList.add(inlineKeyboardRow);
+    /**
+     * Same as {@link #editMarkdownMessageOrThrow}, but does not wait for Bot API response.
+     *
+     * @return edited message, completed exceptionally with {@link TelegramApiException}
+     * if Bot API rejected the edit or could not be reached
+     */
+    public CompletableFuture<Serializable> editMarkdownMessageAsync(String chatId, int messageId,
+                                                                    PreparedNotification notification) {
+        try {
+            return telegramClient.executeAsync(notification.toEditMessageText(chatId, messageId));
+        } catch (TelegramApiException e) {
+            return CompletableFuture.failedFuture(e);
         }
-
-        return new InlineKeyboardMarkup(keyboardRowList);
     }
 }
@@ -0,0 +1,313 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import com.fasterxml.jackson.core.JacksonException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.filter.WebhookDeduplicator;
+import ru.z3r0ing.gitlabnotificator.filter.WebhookPreFilter;
+import ru.z3r0ing.gitlabnotificator.journal.JournalRecord;
+import ru.z3r0ing.gitlabnotificator.journal.WebhookJournal;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.util.CappedCopyInputStream;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Accepts GitLab webhooks on the request thread.
+ * The body is parsed straight from the request stream into a typed event, without building a string of the whole
+ * payload. Raw bytes are copied while the stream is parsed only when the journal needs them, and a capped copy
+ * only when debug logging is on.
+ * Webhooks which produce no notifications are dropped by {@link WebhookPreFilter} before parsing,
+ * webhooks retried by GitLab are acknowledged without processing by {@link WebhookDeduplicator}.
+ * Parsed events are put into {@link WebhookQueueService} for asynchronous processing.
+ */
+@Service
+@Slf4j
+public class WebhookIngestionService {
+
+    private static final String UNSUPPORTED_EVENT_TAG = "unsupported";
+
+    private final AppProperties appProperties;
+    private final GitlabEventParser gitlabEventParser;
+    private final WebhookPreFilter webhookPreFilter;
+    private final WebhookDeduplicator webhookDeduplicator;
+    private final WebhookJournal webhookJournal;
+    private final WebhookQueueService webhookQueueService;
+    private final Map<EventType, Map<IngestionResult, Counter>> receivedCounters = new EnumMap<>(EventType.class);
+    private final Counter unsupportedCounter;
+    private final Map<EventType, Timer> parseTimers = new EnumMap<>(EventType.class);
+
+    public WebhookIngestionService(AppProperties appProperties,
+                                   GitlabEventParser gitlabEventParser,
+                                   WebhookPreFilter webhookPreFilter,
+                                   WebhookDeduplicator webhookDeduplicator,
+                                   WebhookJournal webhookJournal,
+                                   WebhookQueueService webhookQueueService,
+                                   MeterRegistry meterRegistry) {
+        this.appProperties = appProperties;
+        this.gitlabEventParser = gitlabEventParser;
+        this.webhookPreFilter = webhookPreFilter;
+        this.webhookDeduplicator = webhookDeduplicator;
+        this.webhookJournal = webhookJournal;
+        this.webhookQueueService = webhookQueueService;
+
+        for (EventType eventType : EventType.values()) {
+            Map<IngestionResult, Counter> counters = new EnumMap<>(IngestionResult.class);
+            for (IngestionResult result : IngestionResult.values()) {
+                counters.put(result, receivedCounter(eventType.getTag(), result, meterRegistry));
+            }
+            receivedCounters.put(eventType, counters);
+            parseTimers.put(eventType, Timer.builder("gitlab.webhook.parse")
+                    .description("Time to read and parse webhook bodies, the request stream is read while parsing")
+                    .tag("event", eventType.getTag())
+                    .register(meterRegistry));
+        }
+        this.unsupportedCounter = receivedCounter(UNSUPPORTED_EVENT_TAG, IngestionResult.IGNORED, meterRegistry);
+    }
+
+    private static Counter receivedCounter(String eventTag, IngestionResult result, MeterRegistry meterRegistry) {
+        return Counter.builder("gitlab.webhook.received")
+                .description("Webhooks with a valid token by event type and outcome of the ingestion")
+                .tag("event", eventTag)
+                .tag("result", result.getTag())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Parses webhook body and puts the event into the queue.
+     *
+     * @param eventTypeHeader value of 'X-Gitlab-Event' header
+     * @param deliveryKey     value of 'Idempotency-Key' or 'X-Gitlab-Event-UUID' header,
+     *                        hash of the body is used for deduplication if it is null
+     * @param body            webhook body stream
+     * @return result of the ingestion
+     * @throws IOException if body cannot be read
+     */
+    public IngestionResult ingest(@Nullable String eventTypeHeader, @Nullable String deliveryKey, InputStream body)
+            throws IOException {
+        EventType eventType;
+        try {
+            eventType = EventType.fromRequestHeader(eventTypeHeader);
+        } catch (IllegalArgumentException e) {
+            log.warn("Got unsupported GitLab event: {}", eventTypeHeader);
+            unsupportedCounter.increment();
+            return IngestionResult.IGNORED;
+        }
+
+        IngestionResult result = ingest(eventType, deliveryKey, body);
+        receivedCounters.get(eventType).get(result).increment();
+        return result;
+    }
+
+    private IngestionResult ingest(EventType eventType, @Nullable String deliveryKey, InputStream body)
+            throws IOException {
+        // known keys are checked before the body is even read
+        if (deliveryKey != null && webhookDeduplicator.isDuplicate(deliveryKey)) {
+            return IngestionResult.DUPLICATE;
+        }
+
+        IngestionResult result;
+        try {
+            result = ingestBody(eventType, deliveryKey, body);
+        } catch (IOException | RuntimeException e) {
+            // the webhook was not processed and GitLab will retry it, so it must not be taken for a duplicate
+            forget(deliveryKey);
+            throw e;
+        }
+        return forgetIfUnprocessed(deliveryKey, result);
+    }
+
+    private IngestionResult ingestBody(EventType eventType, @Nullable String deliveryKey, InputStream body)
+            throws IOException {
+        boolean journaled = webhookJournal.isEnabled();
+        CappedCopyInputStream copyingBody = null;
+        if (journaled) {
+            // the journal needs the raw bytes, they are copied while the parser reads the stream
+            copyingBody = new CappedCopyInputStream(body, Integer.MAX_VALUE);
+            body = copyingBody;
+        } else if (log.isDebugEnabled()) {
+            copyingBody = new CappedCopyInputStream(body, getDebugPayloadLimit());
+            body = copyingBody;
+        }
+
+        if (webhookPreFilter.isApplicable(eventType)) {
+            // the filter peeks at the beginning of the body, so the stream must be resettable
+            if (!body.markSupported()) {
+                body = new BufferedInputStream(body);
+            }
+            if (webhookPreFilter.check(eventType, body) != null) {
+                return IngestionResult.FILTERED;
+            }
+        }
+
+        DigestInputStream digestingBody = null;
+        if (deliveryKey == null && webhookDeduplicator.isEnabled()) {
+            digestingBody = new DigestInputStream(body, WebhookDeduplicator.newContentDigest());
+            body = digestingBody;
+        }
+
+        AbstractEvent event = parse(eventType, body);
+        if (journaled || digestingBody != null) {
+            // the parser stops at the end of the JSON value, the trailing bytes are journaled and hashed too
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        if (copyingBody != null) {
+            logPayload(copyingBody.getCopy(), copyingBody.isTruncated());
+        }
+        if (event == null) {
+            return IngestionResult.IGNORED;
+        }
+
+        String contentKey = null;
+        if (digestingBody != null) {
+            contentKey = WebhookDeduplicator.contentKey(digestingBody.getMessageDigest());
+            if (webhookDeduplicator.isDuplicate(contentKey)) {
+                return IngestionResult.DUPLICATE;
+            }
+        }
+        IngestionResult result;
+        try {
+            result = journaled
+                    ? journalAndSubmit(eventType, copyingBody.getCopy(), event)
+                    : submit(WebhookJournal.NO_SEQUENCE, eventType, event);
+        } catch (RuntimeException e) {
+            forget(contentKey);
+            throw e;
+        }
+        return forgetIfUnprocessed(contentKey, result);
+    }
+
+    private IngestionResult forgetIfUnprocessed(@Nullable String key, IngestionResult result) {
+        boolean unprocessed = result == IngestionResult.SHED
+                || result == IngestionResult.REJECTED
+                || result == IngestionResult.IGNORED;
+        if (unprocessed) {
+            // a retry of the rejected or unreadable webhook must not be taken for a duplicate
+            forget(key);
+        }
+        return result;
+    }
+
+    private void forget(@Nullable String key) {
+        if (key != null) {
+            webhookDeduplicator.forget(key);
+        }
+    }
+
+    /**
+     * Puts webhooks which were not processed before the last shutdown into the queue.
+     * Waits for free space in the queue, so none of them is rejected.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayJournal() throws IOException {
+        if (!webhookJournal.isEnabled()) {
+            return;
+        }
+        int[] replayed = {0};
+        webhookJournal.replay(journalRecord -> {
+            if (replay(journalRecord)) {
+                replayed[0]++;
+            }
+        });
+        if (replayed[0] > 0) {
+            log.info("Replayed {} unprocessed webhooks from journal", replayed[0]);
+        }
+    }
+
+    private boolean replay(JournalRecord journalRecord) {
+        AbstractEvent event = null;
+        EventType eventType = null;
+        try {
+            eventType = EventType.fromRequestHeader(journalRecord.getEventType());
+            event = gitlabEventParser.parse(eventType, journalRecord.getPayload());
+        } catch (IllegalArgumentException | IOException e) {
+            log.error("Skipping unreadable journal record {}", journalRecord.getSequence(), e);
+        }
+        if (event == null) {
+            webhookJournal.complete(journalRecord.getSequence());
+            return false;
+        }
+
+        try {
+            webhookQueueService.put(journalRecord.getSequence(), eventType, event);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying webhook journal", e);
+        }
+    }
+
+    private IngestionResult journalAndSubmit(EventType eventType, byte[] payload, AbstractEvent event) {
+        long sequence;
+        try {
+            sequence = webhookJournal.append(eventType.getRequestHeader(), payload);
+        } catch (UncheckedIOException e) {
+            log.error("Could not write GitLab event to journal, rejecting: {}", eventType, e);
+            return IngestionResult.REJECTED;
+        }
+
+        IngestionResult result = submit(sequence, eventType, event);
+        if (result == IngestionResult.SHED) {
+            // GitLab will retry the rejected webhook, so it must not be replayed from the journal
+            webhookJournal.complete(sequence);
+        }
+        return result;
+    }
+
+    private IngestionResult submit(long sequence, EventType eventType, AbstractEvent event) {
+        return webhookQueueService.submit(sequence, eventType, event)
+                ? IngestionResult.ACCEPTED
+                : IngestionResult.SHED;
+    }
+
+    @Nullable
+    private AbstractEvent parse(EventType eventType, InputStream body) throws IOException {
+        long startedAt = System.nanoTime();
+        try {
+            return gitlabEventParser.parse(eventType, body);
+        } catch (JacksonException e) {
+            log.error("Could not parse GitLab event: {}", eventType, e);
+            return null;
+        } finally {
+            parseTimers.get(eventType).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void logPayload(byte[] payload, boolean truncated) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        int limit = Math.min(payload.length, getDebugPayloadLimit());
+        String text = new String(payload, 0, limit, UTF_8);
+        if (truncated || payload.length > limit) {
+            log.debug("GitLab webhook payload (truncated to {} bytes): {}", limit, text);
+        } else {
+            log.debug("GitLab webhook payload: {}", text);
+        }
+    }
+
+    private int getDebugPayloadLimit() {
+        return (int) Math.min(Integer.MAX_VALUE, appProperties.getWebhook().getDebugPayloadLimit().toBytes());
+    }
+}
@@ -0,0 +1,49 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.MergeRequestEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.MergeRequest;
+
+/**
+ * Chooses the priority lane of a parsed webhook by its type and content.
+ */
+@Component
+public class WebhookLaneClassifier {
+
+    /**
+     * @param eventType type of the event
+     * @param event     parsed webhook body
+     * @return priority lane of the webhook
+     */
+    public WebhookLane classify(EventType eventType, AbstractEvent event) {
+        return switch (eventType) {
+            case PIPELINE -> isFailedPipeline((PipelineEvent) event) ? WebhookLane.HIGH : WebhookLane.NORMAL;
+            case MERGE_REQUEST -> isMinorUpdate((MergeRequestEvent) event) ? WebhookLane.LOW : WebhookLane.NORMAL;
+            case ISSUE, TAG_PUSH -> WebhookLane.NORMAL;
+            case NOTE -> WebhookLane.LOW;
+        };
+    }
+
+    /**
+     * @return true for an update of a merge request other than a change of its reviewers or assignees,
+     * e.g. a push or an edited description
+     */
+    private static boolean isMinorUpdate(MergeRequestEvent mergeRequestEvent) {
+        MergeRequest mergeRequest = mergeRequestEvent.getMergeRequest();
+        if (mergeRequest == null || !"update".equalsIgnoreCase(mergeRequest.getAction())) {
+            // opened, merged, approved and other actions
+            return false;
+        }
+        MergeRequestEvent.Changes changes = mergeRequestEvent.getChanges();
+        return changes == null || changes.getReviewers() == null && changes.getAssignees() == null;
+    }
+
+    private static boolean isFailedPipeline(PipelineEvent pipelineEvent) {
+        return pipelineEvent.getPipeline() != null
+                && "failed".equalsIgnoreCase(pipelineEvent.getPipeline().getStatus());
+    }
+}
@@ -0,0 +1,225 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.config.WorkerThreads;
+import ru.z3r0ing.gitlabnotificator.journal.WebhookJournal;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-memory queues of accepted GitLab webhooks, one per {@link WebhookLane}.
+ * Parsed webhooks are put into the lane chosen by {@link WebhookLaneClassifier} and drained by a fixed pool
+ * of worker threads, so GitLab gets its response without waiting for the notifications to be sent.
+ * The workers are virtual threads if enabled, see {@link WorkerThreads}, and then there are {@code virtual-workers}
+ * of them instead of {@code workers}, so many of them may wait for JDBC and Bot API at once.
+ * Workers always take webhooks from higher-priority lanes first, and a full lane sheds only its own webhooks.
+ * Journaled webhooks are completed in {@link WebhookJournal} after processing.
+ */
+@Service
+@Slf4j
+public class WebhookQueueService {
+
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10_000;
+    private static final WebhookLane[] LANES = WebhookLane.values();
+
+    private final GitlabEventService gitlabEventService;
+    private final WebhookJournal webhookJournal;
+    private final WebhookLaneClassifier webhookLaneClassifier;
+    private final WorkerThreads workerThreads;
+    private final int workersCount;
+    private final Map<WebhookLane, BlockingQueue<WebhookTask>> queues = new EnumMap<>(WebhookLane.class);
+    /**
+     * One permit per webhook in any lane, so workers wait on it instead of polling every lane
+     */
+    private final Semaphore queuedTasks = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Map<WebhookLane, Counter> shedCounters = new EnumMap<>(WebhookLane.class);
+    private final Map<WebhookLane, Timer> waitTimers = new EnumMap<>(WebhookLane.class);
+
+    private volatile boolean running;
+
+    public WebhookQueueService(AppProperties appProperties,
+                               GitlabEventService gitlabEventService,
+                               WebhookJournal webhookJournal,
+                               WebhookLaneClassifier webhookLaneClassifier,
+                               WorkerThreads workerThreads,
+                               MeterRegistry meterRegistry) {
+        AppProperties.Webhook webhookProperties = appProperties.getWebhook();
+        this.gitlabEventService = gitlabEventService;
+        this.webhookJournal = webhookJournal;
+        this.webhookLaneClassifier = webhookLaneClassifier;
+        this.workerThreads = workerThreads;
+        this.workersCount = workerThreads.isVirtual()
+                ? webhookProperties.getVirtualWorkers()
+                : webhookProperties.getWorkers();
+
+        for (WebhookLane lane : LANES) {
+            int capacity = webhookProperties.getLanes().getCapacity(lane);
+            BlockingQueue<WebhookTask> queue = new ArrayBlockingQueue<>(capacity);
+            queues.put(lane, queue);
+
+            Gauge.builder("gitlab.webhook.queue.size", queue, BlockingQueue::size)
+                    .description("Accepted webhooks waiting for processing")
+                    .tag("lane", lane.getTag())
+                    .register(meterRegistry);
+            Gauge.builder("gitlab.webhook.queue.capacity", () -> capacity)
+                    .description("Max amount of webhooks waiting for processing")
+                    .tag("lane", lane.getTag())
+                    .register(meterRegistry);
+            waitTimers.put(lane, Timer.builder("gitlab.webhook.queue.wait")
+                    .description("Time webhooks spend in the queue before a worker takes them")
+                    .tag("lane", lane.getTag())
+                    .register(meterRegistry));
+            shedCounters.put(lane, Counter.builder("gitlab.webhook.shed")
+                    .description("Webhooks rejected because their lane was full")
+                    .tag("lane", lane.getTag())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("gitlab.webhook.workers", this, service -> service.workersCount)
+                .description("Amount of webhook worker threads")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.webhook.workers.active", activeWorkers, AtomicInteger::get)
+                .description("Amount of webhook worker threads busy with processing")
+                .register(meterRegistry);
+        Gauge.builder("gitlab.webhook.journal.pending", webhookJournal, WebhookJournal::getPendingCount)
+                .description("Journaled webhooks which are not processed yet")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (int i = 0; i < workersCount; i++) {
+            Thread worker = workerThreads.newThread("webhook-worker-" + i, this::processQueue);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Started {} webhook workers", workersCount);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MILLIS;
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+        }
+        if (getQueueSize() > 0) {
+            log.warn("Webhook workers stopped with {} unprocessed webhooks", getQueueSize());
+        }
+    }
+
+    /**
+     * Puts parsed webhook into its lane without blocking.
+     *
+     * @param sequence  journal sequence of the webhook or {@link WebhookJournal#NO_SEQUENCE}
+     * @param eventType type of the event
+     * @param event     parsed webhook body
+     * @return true if webhook was accepted, false if its lane is full
+     */
+    public boolean submit(long sequence, EventType eventType, AbstractEvent event) {
+        WebhookLane lane = webhookLaneClassifier.classify(eventType, event);
+        boolean accepted = queues.get(lane).offer(new WebhookTask(sequence, eventType, event, lane, System.nanoTime()));
+        if (accepted) {
+            queuedTasks.release();
+        } else {
+            shedCounters.get(lane).increment();
+            log.warn("Webhook lane {} is full, shedding GitLab event: {}", lane, eventType);
+        }
+        return accepted;
+    }
+
+    /**
+     * Puts parsed webhook into its lane, waiting for free space if necessary.
+     * Used for journal replay, where webhooks must not be rejected.
+     *
+     * @param sequence  journal sequence of the webhook
+     * @param eventType type of the event
+     * @param event     parsed webhook body
+     */
+    public void put(long sequence, EventType eventType, AbstractEvent event) throws InterruptedException {
+        WebhookLane lane = webhookLaneClassifier.classify(eventType, event);
+        queues.get(lane).put(new WebhookTask(sequence, eventType, event, lane, System.nanoTime()));
+        queuedTasks.release();
+    }
+
+    /**
+     * @return amount of webhooks waiting for processing in all lanes
+     */
+    public int getQueueSize() {
+        return queuedTasks.availablePermits();
+    }
+
+    private void processQueue() {
+        // keep draining after stop() was called, so accepted webhooks are not lost on graceful shutdown
+        while (running || getQueueSize() > 0) {
+            try {
+                if (!queuedTasks.tryAcquire(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            process(pollHighestPriority());
+        }
+    }
+
+    private WebhookTask pollHighestPriority() {
+        // webhooks are put into a lane before the permit is released, so the acquired permit
+        // guarantees one of the lanes holds a webhook for this worker
+        while (true) {
+            for (WebhookLane lane : LANES) {
+                WebhookTask task = queues.get(lane).poll();
+                if (task != null) {
+                    return task;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void process(WebhookTask task) {
+        waitTimers.get(task.getLane()).record(System.nanoTime() - task.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+        activeWorkers.incrementAndGet();
+        try {
+            gitlabEventService.handleGitlabEvent(task.getEventType(), task.getEvent());
+        } catch (RuntimeException e) {
+            log.error("Error processing GitLab event: {}", task.getEventType(), e);
+        } finally {
+            webhookJournal.complete(task.getSequence());
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    @Value
+    private static class WebhookTask {
+        long sequence;
+        EventType eventType;
+        AbstractEvent event;
+        WebhookLane lane;
+        long enqueuedAt;
+    }
+}
@@ -0,0 +1,335 @@
+package ru.z3r0ing.gitlabnotificator.status;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryCallback;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Pipeline;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Project;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one live status message per pipeline in a chat: the first status of a pipeline is sent as a new message,
+ * the following ones edit it, so a pipeline going from created to success leaves one message instead of five.
+ * <p>
+ * Status changes are debounced: a status waits {@code debounce} for the following ones and only the latest is sent,
+ * an unchanged text is not sent at all. Sends and edits go through {@link DeliveryScheduler}, so they share the
+ * Bot API rate limits with other notifications. At most one message per pipeline and chat is in flight, a status
+ * coming meanwhile is sent once the previous message is done.
+ * <p>
+ * IDs of the status messages are kept in a bounded LRU cache backed by {@link PipelineStatusStore}, so a restart
+ * or an eviction does not start a new message. A failed edit, e.g. of a message deleted by the user, forgets the
+ * message and the next status is sent as a new one; the failed edit is not kept in dead letters, since sending it
+ * again would only add an outdated status. Messages older than {@code retention} are not edited.
+ */
+@Service
+@Slf4j
+public class PipelineStatusNotifier {
+
+    private static final long PURGE_PERIOD_MINUTES = 60;
+
+    private final AppProperties.PipelineStatus properties;
+    private final MessageFormatter messageFormatter;
+    private final PipelineStatusStore store;
+    private final DeliveryScheduler deliveryScheduler;
+    /**
+     * Access ordered, all access is guarded by the map itself
+     */
+    private final Map<StatusKey, StatusMessage> messages;
+
+    private volatile ScheduledExecutorService executor;
+
+    public PipelineStatusNotifier(AppProperties appProperties,
+                                  MessageFormatter messageFormatter,
+                                  PipelineStatusStore store,
+                                  DeliveryScheduler deliveryScheduler) {
+        this.properties = appProperties.getNotifications().getPipelineStatus();
+        this.messageFormatter = messageFormatter;
+        this.store = store;
+        this.deliveryScheduler = deliveryScheduler;
+        int cacheSize = properties.getCacheSize();
+        this.messages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StatusKey, StatusMessage> eldest) {
+                // a message with a status scheduled or in flight is kept, so its status is not sent twice;
+                // the cache grows past its size until such messages settle
+                Iterator<StatusMessage> iterator = values().iterator();
+                while (size() > cacheSize && iterator.hasNext()) {
+                    if (iterator.next().isSettled()) {
+                        iterator.remove();
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduledExecutor.scheduleWithFixedDelay(this::purge, PURGE_PERIOD_MINUTES, PURGE_PERIOD_MINUTES,
+                TimeUnit.MINUTES);
+        executor = scheduledExecutor;
+    }
+
+    @PreDestroy
+    public void stop() {
+        ScheduledExecutorService scheduledExecutor = executor;
+        if (scheduledExecutor != null) {
+            executor = null;
+            scheduledExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if pipeline statuses are sent as live messages
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Renders the status message of the pipeline. It is sent to the user who ran the pipeline of a merge request,
+     * to leads otherwise, the same way as failed pipelines.
+     *
+     * @param pipelineEvent pipeline webhook
+     * @return status notification, empty if the pipeline has no ID
+     */
+    public List<HandledEvent> render(PipelineEvent pipelineEvent) {
+        Pipeline pipeline = pipelineEvent.getPipeline();
+        if (pipeline == null || pipeline.getId() == null) {
+            return Collections.emptyList();
+        }
+        Project project = pipelineEvent.getProject();
+        String message = messageFormatter.formatPipelineStatus(project != null ? project.getName() : null,
+                pipeline.getRef(), pipeline.getStatus());
+        MessageWithKeyboard messageWithKeyboard = new MessageWithKeyboard(message,
+                messageFormatter.buttonsForPipeline(pipeline.getUrl()));
+        if (pipelineEvent.getMergeRequest() != null && pipelineEvent.getUser() != null) {
+            return Collections.singletonList(new HandledEvent(pipelineEvent.getUser().getId(), messageWithKeyboard));
+        }
+        return Collections.singletonList(new HandledEvent(UserRole.LEAD, messageWithKeyboard));
+    }
+
+    /**
+     * Updates the status messages of the pipeline after the debounce.
+     *
+     * @param pipelineEvent pipeline webhook
+     * @param statuses      notifications from {@link #render(PipelineEvent)}
+     * @param recipients    Telegram IDs of the receivers of each notification, in the same order
+     */
+    public void update(PipelineEvent pipelineEvent, List<HandledEvent> statuses, long[][] recipients) {
+        long pipelineId = pipelineEvent.getPipeline().getId();
+        for (int i = 0; i < statuses.size(); i++) {
+            PreparedNotification payload = PreparedNotification.of(statuses.get(i).getMessageWithKeyboard());
+            for (long chatId : recipients[i]) {
+                update(new StatusKey(pipelineId, chatId), payload);
+            }
+        }
+    }
+
+    private void update(StatusKey key, PreparedNotification payload) {
+        StatusMessage message;
+        boolean schedule;
+        synchronized (messages) {
+            message = messages.computeIfAbsent(key, k -> new StatusMessage());
+            message.pending = payload;
+            message.updatedAt = Instant.now();
+            schedule = !message.flushScheduled && !message.inFlight;
+            message.flushScheduled |= schedule;
+        }
+        if (schedule) {
+            scheduleFlush(key, message);
+        }
+    }
+
+    private void scheduleFlush(StatusKey key, StatusMessage message) {
+        ScheduledExecutorService scheduledExecutor = executor;
+        if (scheduledExecutor == null) {
+            return;
+        }
+        try {
+            scheduledExecutor.schedule(() -> flush(key, message), properties.getDebounce().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Pipeline status of a chat {} is not sent on shutdown", key.getChatId());
+        }
+    }
+
+    private void flush(StatusKey key, StatusMessage message) {
+        if (!message.loaded) {
+            Integer storedMessageId = findStored(key);
+            synchronized (messages) {
+                if (message.messageId == null) {
+                    message.messageId = storedMessageId;
+                }
+                message.loaded = true;
+            }
+        }
+        PreparedNotification payload;
+        Integer messageId;
+        synchronized (messages) {
+            message.flushScheduled = false;
+            payload = message.pending;
+            message.pending = null;
+            if (payload == null || payload.equals(message.sent)) {
+                return;
+            }
+            message.inFlight = true;
+            messageId = message.messageId;
+        }
+        deliveryScheduler.submit(new Delivery(key.getChatId(), payload, 1, messageId),
+                new StatusCallback(key, message, payload, messageId));
+    }
+
+    @Nullable
+    private Integer findStored(StatusKey key) {
+        try {
+            return store.find(key.getPipelineId(), key.getChatId());
+        } catch (DataAccessException e) {
+            log.error("Error loading pipeline status message of a chat {}", key.getChatId(), e);
+            return null;
+        }
+    }
+
+    private void save(StatusKey key, int messageId) {
+        try {
+            store.save(key.getPipelineId(), key.getChatId(), messageId);
+        } catch (DataAccessException e) {
+            log.error("Error saving pipeline status message of a chat {}", key.getChatId(), e);
+        }
+    }
+
+    private void purge() {
+        Instant updatedBefore = Instant.now().minus(properties.getRetention());
+        synchronized (messages) {
+            messages.values().removeIf(message -> message.isSettled() && message.updatedAt.isBefore(updatedBefore));
+        }
+        try {
+            int purged = store.purge(updatedBefore);
+            log.debug("Purged {} pipeline status messages", purged);
+        } catch (DataAccessException e) {
+            log.error("Error purging pipeline status messages", e);
+        }
+    }
+
+    /**
+     * Runs on a sender thread of {@link DeliveryScheduler}, database access is passed to the notifier thread.
+     */
+    private class StatusCallback implements DeliveryCallback {
+
+        private final StatusKey key;
+        private final StatusMessage message;
+        private final PreparedNotification payload;
+        @Nullable
+        private final Integer editedMessageId;
+        @Nullable
+        private Integer sentMessageId;
+
+        StatusCallback(StatusKey key, StatusMessage message, PreparedNotification payload,
+                       @Nullable Integer editedMessageId) {
+            this.key = key;
+            this.message = message;
+            this.payload = payload;
+            this.editedMessageId = editedMessageId;
+        }
+
+        @Override
+        public void onSent(@Nullable Message sentMessage) {
+            if (sentMessage != null) {
+                sentMessageId = sentMessage.getMessageId();
+            }
+        }
+
+        @Override
+        public void onComplete(boolean sent) {
+            Integer messageId = sentMessageId != null ? sentMessageId : editedMessageId;
+            boolean reschedule;
+            synchronized (messages) {
+                message.inFlight = false;
+                if (sent) {
+                    message.sent = payload;
+                    message.messageId = messageId;
+                } else if (editedMessageId != null) {
+                    // the message is likely deleted, the next status starts a new one
+                    message.sent = null;
+                    message.messageId = null;
+                }
+                reschedule = message.pending != null && !message.flushScheduled;
+                message.flushScheduled |= reschedule;
+            }
+            ScheduledExecutorService scheduledExecutor = executor;
+            if (sent && messageId != null && scheduledExecutor != null) {
+                try {
+                    // refreshes the retention of an edited message as well
+                    scheduledExecutor.execute(() -> save(key, messageId));
+                } catch (RejectedExecutionException e) {
+                    log.debug("Pipeline status message of a chat {} is not saved on shutdown", key.getChatId());
+                }
+            }
+            if (reschedule) {
+                scheduleFlush(key, message);
+            }
+        }
+    }
+
+    @Value
+    private static class StatusKey {
+        long pipelineId;
+        long chatId;
+    }
+
+    /**
+     * Status message of a pipeline in a chat, guarded by the cache
+     */
+    private static final class StatusMessage {
+        @Nullable
+        Integer messageId;
+        /**
+         * True once the message ID is looked up in the store
+         */
+        boolean loaded;
+        @Nullable
+        PreparedNotification pending;
+        @Nullable
+        PreparedNotification sent;
+        boolean flushScheduled;
+        boolean inFlight;
+        Instant updatedAt;
+
+        boolean isSettled() {
+            return !flushScheduled && !inFlight;
+        }
+    }
+}
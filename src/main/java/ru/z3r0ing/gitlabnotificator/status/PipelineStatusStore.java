@@ -0,0 +1,67 @@
+package ru.z3r0ing.gitlabnotificator.status;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.z3r0ing.gitlabnotificator.model.entity.PipelineStatusMessage;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * JDBC access to the pipeline status message table, see {@link PipelineStatusMessage}.
+ * Keeps only the IDs needed to edit a message, so a restart or an eviction from the in-memory cache
+ * does not start a new status message.
+ */
+@Repository
+public class PipelineStatusStore {
+
+    private static final String FIND = """
+            SELECT message_id FROM pipeline_status_message WHERE pipeline_id = ? AND chat_id = ?""";
+    private static final String UPDATE = """
+            UPDATE pipeline_status_message SET message_id = ?, updated_at = ? WHERE pipeline_id = ? AND chat_id = ?""";
+    private static final String INSERT = """
+            INSERT INTO pipeline_status_message (pipeline_id, chat_id, message_id, updated_at) VALUES (?, ?, ?, ?)""";
+    private static final String PURGE = """
+            DELETE FROM pipeline_status_message WHERE updated_at < ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PipelineStatusStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return ID of the status message of the pipeline in the chat, null if there is none
+     */
+    public Integer find(long pipelineId, long chatId) {
+        List<Integer> messageIds = jdbcTemplate.queryForList(FIND, Integer.class, pipelineId, chatId);
+        return messageIds.isEmpty() ? null : messageIds.get(0);
+    }
+
+    /**
+     * Stores the status message of the pipeline in the chat, replacing the previous one.
+     */
+    public void save(long pipelineId, long chatId, int messageId) {
+        Timestamp now = Timestamp.from(Instant.now());
+        if (jdbcTemplate.update(UPDATE, messageId, now, pipelineId, chatId) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT, pipelineId, chatId, messageId, now);
+        } catch (DuplicateKeyException e) {
+            // another instance saved its message first, the latest one is kept
+            jdbcTemplate.update(UPDATE, messageId, now, pipelineId, chatId);
+        }
+    }
+
+    /**
+     * Deletes status messages not changed since the given time.
+     *
+     * @return amount of deleted rows
+     */
+    public int purge(Instant updatedBefore) {
+        return jdbcTemplate.update(PURGE, Timestamp.from(updatedBefore));
+    }
+}
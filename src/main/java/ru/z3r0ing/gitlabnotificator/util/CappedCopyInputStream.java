@@ -0,0 +1,75 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream keeping a copy of at most {@code limit} first bytes read through it.
+ */
+public class CappedCopyInputStream extends FilterInputStream {
+
+    private final int limit;
+    private final ByteArrayOutputStream copy;
+    private long totalRead;
+
+    public CappedCopyInputStream(InputStream in, int limit) {
+        super(in);
+        this.limit = limit;
+        this.copy = new ByteArrayOutputStream(Math.min(limit, 1024));
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            if (copy.size() < limit) {
+                copy.write(value);
+            }
+            totalRead++;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            int toCopy = Math.min(read, limit - copy.size());
+            if (toCopy > 0) {
+                copy.write(buffer, offset, toCopy);
+            }
+            totalRead += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // read instead of skipping, so skipped bytes get into the copy too
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        // a reset would copy the same bytes twice, so wrap it into a buffered stream to peek
+        return false;
+    }
+
+    /**
+     * @return copy of the first bytes read
+     */
+    public byte[] getCopy() {
+        return copy.toByteArray();
+    }
+
+    /**
+     * @return true if more bytes were read than were copied
+     */
+    public boolean isTruncated() {
+        return totalRead > copy.size();
+    }
+}
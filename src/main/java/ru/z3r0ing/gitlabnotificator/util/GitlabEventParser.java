@@ -0,0 +1,92 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.stereotype.Component;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Parses GitLab webhook payloads into event objects.
+ * Holds one shared {@link ObjectReader} per event type, so deserializers are built once for the whole application.
+ * Properties which are not mapped in the event classes are skipped by the streaming parser
+ * without building any tree or strings for them.
+ */
+@Component
+public class GitlabEventParser {
+
+    private final Map<EventType, ObjectReader> readers = new EnumMap<>(EventType.class);
+
+    public GitlabEventParser() {
+        ObjectMapper mapper = JsonMapper.builder()
+                // generates bytecode accessors instead of reflection calls
+                .addModule(new BlackbirdModule())
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                // the caller owns the stream and may read the rest of the body after the event
+                .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+                .build();
+        for (EventType eventType : EventType.values()) {
+            readers.put(eventType, mapper.readerFor(eventType.getEventClass()));
+        }
+    }
+
+    /**
+     * Parses payload into the event class of the given event type.
+     *
+     * @param eventType type of the event
+     * @param payload   JSON string containing the event data
+     * @return parsed event, instance of {@link EventType#getEventClass()}
+     * @throws JsonProcessingException if payload cannot be parsed
+     */
+    public AbstractEvent parse(EventType eventType, String payload) throws JsonProcessingException {
+        return readers.get(eventType).readValue(payload);
+    }
+
+    /**
+     * Parses payload bytes into the event class of the given event type.
+     *
+     * @param eventType type of the event
+     * @param payload   UTF-8 JSON containing the event data
+     * @return parsed event, instance of {@link EventType#getEventClass()}
+     * @throws IOException if payload cannot be parsed
+     */
+    public AbstractEvent parse(EventType eventType, byte[] payload) throws IOException {
+        return readers.get(eventType).readValue(payload);
+    }
+
+    /**
+     * Parses payload straight from the stream into the event class of the given event type.
+     * The stream is read only as far as needed to parse one JSON value and is not closed.
+     *
+     * @param eventType type of the event
+     * @param payload   stream of UTF-8 JSON containing the event data
+     * @return parsed event, instance of {@link EventType#getEventClass()}
+     * @throws IOException if payload cannot be read or parsed
+     */
+    public AbstractEvent parse(EventType eventType, InputStream payload) throws IOException {
+        return readers.get(eventType).readValue(payload);
+    }
+
+    /**
+     * Parses the next JSON value of the parser into the event class of the given event type.
+     *
+     * @param eventType type of the event
+     * @param payload   parser positioned before the event data
+     * @return parsed event, instance of {@link EventType#getEventClass()}
+     * @throws IOException if payload cannot be parsed
+     */
+    public AbstractEvent parse(EventType eventType, JsonParser payload) throws IOException {
+        return readers.get(eventType).readValue(payload);
+    }
+}
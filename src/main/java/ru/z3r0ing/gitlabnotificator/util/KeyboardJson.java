@@ -0,0 +1,55 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+
+import java.util.List;
+
+/**
+ * Stores inline keyboards of messages as JSON columns.
+ * A keyboard which cannot be written or read is dropped, the message itself is still delivered.
+ */
+@Slf4j
+public final class KeyboardJson {
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder().build();
+    private static final TypeReference<List<InlineKeyboardButtonRow>> KEYBOARD_TYPE = new TypeReference<>() {
+    };
+
+    private KeyboardJson() {
+    }
+
+    /**
+     * @return keyboard as JSON, null for an empty keyboard
+     */
+    public static String write(List<InlineKeyboardButtonRow> keyboard) {
+        if (keyboard == null || keyboard.isEmpty()) {
+            return null;
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(keyboard);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize message keyboard, message is stored without keyboard", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return keyboard read from JSON, empty for null
+     */
+    public static List<InlineKeyboardButtonRow> read(String keyboard) {
+        if (keyboard == null) {
+            return List.of();
+        }
+        try {
+            return OBJECT_MAPPER.readValue(keyboard, KEYBOARD_TYPE);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not read message keyboard, message is sent without keyboard", e);
+            return List.of();
+        }
+    }
+}
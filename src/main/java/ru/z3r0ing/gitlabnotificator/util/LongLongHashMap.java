@@ -0,0 +1,116 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+/**
+ * Open addressing hash map with primitive {@code long} keys and values.
+ * Lookups neither box keys nor allocate. Not thread-safe: fill it first, then share it read-only.
+ */
+public class LongLongHashMap {
+
+    private static final long FREE_KEY = 0;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    // zero marks free slots, so its value is kept aside
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    /**
+     * @param expectedSize amount of entries which fit without rehashing
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Puts the value, replacing the previous value of the key.
+     */
+    public void put(long key, long value) {
+        if (key == FREE_KEY) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        int slot = findSlot(keys, mask, key);
+        if (keys[slot] == FREE_KEY) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        // keep load factor at most 1/2, so probe sequences stay short
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * @return value of the key, or {@code defaultValue} if there is no such key
+     */
+    public long get(long key, long defaultValue) {
+        if (key == FREE_KEY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int slot = findSlot(keys, mask, key);
+        return keys[slot] == FREE_KEY ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        if (key == FREE_KEY) {
+            return hasZeroKey;
+        }
+        return keys[findSlot(keys, mask, key)] != FREE_KEY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE_KEY) {
+                int slot = findSlot(keys, mask, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return slot holding the key, or the free slot where it should be put
+     */
+    private static int findSlot(long[] keys, int mask, long key) {
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) * 2 - 1) << 1;
+        return Math.max(capacity, 4);
+    }
+
+    @Override
+    public String toString() {
+        return "LongLongHashMap{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+/**
+ * Escapes text for Telegram parse modes. Every string is scanned once; a string without characters to escape
+ * is returned as is, without copying.
+ */
+public enum MarkdownEscaper {
+    /**
+     * Legacy "Markdown" parse mode, used by the notifications
+     */
+    MARKDOWN("_*`["),
+    /**
+     * "MarkdownV2" parse mode
+     */
+    MARKDOWN_V2("_*[]()~`>#+-=|{}.!\\");
+
+    private static final char ESCAPE = '\\';
+
+    /**
+     * Characters to escape, all of them are ASCII
+     */
+    private final boolean[] special = new boolean[128];
+
+    MarkdownEscaper(String specialCharacters) {
+        for (int i = 0; i < specialCharacters.length(); i++) {
+            special[specialCharacters.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * @param c character
+     * @return true if the character has to be escaped outside of entities
+     */
+    public boolean isSpecial(char c) {
+        return c < special.length && special[c];
+    }
+
+    /**
+     * @param text text to escape, may be null
+     * @return escaped text, the same instance if nothing had to be escaped
+     */
+    public String escape(String text) {
+        if (text == null) {
+            return null;
+        }
+        int first = indexOfSpecial(text, 0);
+        if (first < 0) {
+            return text;
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        appendEscaped(escaped, text, first);
+        return escaped.toString();
+    }
+
+    /**
+     * Appends the text escaped, copying the parts between special characters at once.
+     *
+     * @param target builder to append to
+     * @param text   text to escape
+     */
+    public void appendEscaped(StringBuilder target, String text) {
+        appendEscaped(target, text, indexOfSpecial(text, 0));
+    }
+
+    /**
+     * Reverts {@link #escape}: removes backslashes before special characters, so a message Telegram could not parse
+     * can be sent as plain text.
+     *
+     * @param text escaped text, may be null
+     * @return text without escapes, the same instance if there were none
+     */
+    public String unescape(String text) {
+        if (text == null || text.indexOf(ESCAPE) < 0) {
+            return text;
+        }
+        StringBuilder unescaped = new StringBuilder(text.length());
+        int copiedUpTo = 0;
+        for (int i = 0; i < text.length() - 1; i++) {
+            if (text.charAt(i) == ESCAPE && isSpecial(text.charAt(i + 1))) {
+                unescaped.append(text, copiedUpTo, i);
+                // keep the escaped character even if it is a backslash
+                copiedUpTo = ++i;
+            }
+        }
+        return unescaped.append(text, copiedUpTo, text.length()).toString();
+    }
+
+    private void appendEscaped(StringBuilder target, String text, int first) {
+        int copiedUpTo = 0;
+        for (int i = first; i >= 0; i = indexOfSpecial(text, i + 1)) {
+            target.append(text, copiedUpTo, i).append(ESCAPE).append(text.charAt(i));
+            copiedUpTo = i + 1;
+        }
+        target.append(text, copiedUpTo, text.length());
+    }
+
+    private int indexOfSpecial(String text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (isSpecial(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
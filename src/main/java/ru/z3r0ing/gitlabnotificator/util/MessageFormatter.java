@@ -5,10 +5,124 @@ import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
+/**
+ * Telegram Markdown texts of notifications. Templates are compiled once, values are escaped while rendering,
+ * see {@link MessageTemplate}. Templates are compiled when the class is loaded, so a broken template fails the start.
+ */
 @Component
 public class MessageFormatter {
 
+    private static final MessageTemplate MR_APPROVED = MessageTemplate.compile("""
+            ✅ *Merge Request approved!*
+
+            Project: _%s_
+            MR: *%s*
+            Approved by: %s
+            """);
+
+    private static final MessageTemplate YOU_ARE_MR_REVIEWER_NOW = MessageTemplate.compile("""
+            👀 *You are assigned as MR reviewer!*
+
+            Project: _%s_
+            MR: *%s*
+            Please review this merge request
+            """);
+
+    private static final MessageTemplate MR_MERGED = MessageTemplate.compile("""
+            🚀 *Merge Request merged!*
+
+            Project: _%s_
+            MR: *%s*
+            Merged by: %s
+            """);
+
+    private static final MessageTemplate MR_UNDRAFT = MessageTemplate.compile("""
+            📝 *Merge Request is ready for review!*
+
+            Project: _%s_
+            MR: *%s*
+            MR was moved from draft status
+            """);
+
+    private static final MessageTemplate NEW_MR = MessageTemplate.compile("""
+            🆕 *New Merge Request created!*
+
+            Project: _%s_
+            MR: *%s*
+            Author: %s
+            """);
+
+    private static final MessageTemplate NEW_COMMENT_FOR_MR = MessageTemplate.compile("""
+            💬 *New comment on Merge Request!*
+
+            Project: _%s_
+            MR: *%s*
+            Comment by: %s
+            """);
+
+    private static final MessageTemplate NEW_ISSUE = MessageTemplate.compile("""
+            🐛 *New Issue created!*
+
+            Project: _%s_
+            Issue: *%s*
+            Author: %s
+            """);
+
+    private static final MessageTemplate NEW_TAG = MessageTemplate.compile("""
+            🏷️ *New Tag created!*
+
+            Project: _%s_
+            Tag: *%s*
+            """);
+
+    private static final MessageTemplate PIPELINE_FAILED = MessageTemplate.compile("""
+            ❌ *Pipeline failed!*
+
+            Project: _%s_
+            Pipeline: *%s*
+            Please check the pipeline logs
+            """);
+
+    private static final MessageTemplate PIPELINE_DEPLOYED = MessageTemplate.compile("""
+            🚀 *Pipeline deployed successfully!*
+
+            Project: _%s_
+            Pipeline: *%s*
+            Deployment completed
+            """);
+
+    private static final MessageTemplate PIPELINE_STATUS = MessageTemplate.compile("""
+            %s *Pipeline %s*
+
+            Project: _%s_
+            Pipeline: *%s*
+            """);
+
+    private static final MessageTemplate NEW_COMMENTS_DIGEST = MessageTemplate.compile("""
+            💬 *%s new comments on Merge Request!*
+
+            Project: _%s_
+            MR: *%s*
+            Comments by: %s
+            """);
+
+    private static final MessageTemplate NEW_TAGS_DIGEST = MessageTemplate.compile("""
+            🏷️ *%s new Tags created!*
+
+            Project: _%s_
+            Tags: %s
+            """);
+
+    private static final MessageTemplate PIPELINES_DEPLOYED_DIGEST = MessageTemplate.compile("""
+            🚀 *%s pipelines deployed successfully!*
+
+            Project: _%s_
+            Pipeline: *%s*
+            Last deployment completed
+            """);
+
     /**
      * Format message for approved MR
      *
@@ -18,13 +132,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatMrApproved(String projectName, String mrTitle, String approverName) {
-        return String.format("""
-                ✅ *Merge Request approved!*
-
-                Project: _%s_
-                MR: *%s*
-                Approved by: %s
-                """, projectName, mrTitle, approverName);
+        return MR_APPROVED.render(projectName, mrTitle, approverName);
     }
 
     /**
@@ -35,13 +143,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatYouAreMrReviewerNow(String projectName, String mrTitle) {
-        return String.format("""
-                👀 *You are assigned as MR reviewer!*
-
-                Project: _%s_
-                MR: *%s*
-                Please review this merge request
-                """, projectName, mrTitle);
+        return YOU_ARE_MR_REVIEWER_NOW.render(projectName, mrTitle);
     }
 
     /**
@@ -53,13 +155,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatMrMerged(String projectName, String mrTitle, String mergerName) {
-        return String.format("""
-                🚀 *Merge Request merged!*
-
-                Project: _%s_
-                MR: *%s_
-                Merged by: %s
-                """, projectName, mrTitle, mergerName);
+        return MR_MERGED.render(projectName, mrTitle, mergerName);
     }
 
     /**
@@ -70,13 +166,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatMrUndraft(String projectName, String mrTitle) {
-        return String.format("""
-                📝 *Merge Request is ready for review!*
-
-                Project: _%s_
-                MR: *%s*
-                MR was moved from draft status
-                """, projectName, mrTitle);
+        return MR_UNDRAFT.render(projectName, mrTitle);
     }
 
     /**
@@ -88,13 +178,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatNewMr(String projectName, String mrTitle, String mrAuthor) {
-        return String.format("""
-                🆕 *New Merge Request created!*
-
-                Project: _%s_
-                MR: *%s*
-                Author: %s
-                """, projectName, mrTitle, mrAuthor);
+        return NEW_MR.render(projectName, mrTitle, mrAuthor);
     }
 
     /**
@@ -106,13 +190,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatNewCommentForMr(String projectName, String mrTitle, String commentAuthor) {
-        return String.format("""
-                💬 *New comment on Merge Request!*
-
-                Project: _%s_
-                MR: *%s*
-                Comment by: %s
-                """, projectName, mrTitle, commentAuthor);
+        return NEW_COMMENT_FOR_MR.render(projectName, mrTitle, commentAuthor);
     }
 
     /**
@@ -124,13 +202,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatNewIssue(String projectName, String issueTitle, String issueAuthor) {
-        return String.format("""
-                🐛 *New Issue created!*
-
-                Project: _%s_
-                Issue: *%s*
-                Author: %s
-                """, projectName, issueTitle, issueAuthor);
+        return NEW_ISSUE.render(projectName, issueTitle, issueAuthor);
     }
 
     /**
@@ -141,12 +213,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatNewTag(String projectName, String tagName) {
-        return String.format("""
-                🏷️ *New Tag created!*
-
-                Project: _%s_
-                Tag: *%s*
-                """, projectName, tagName);
+        return NEW_TAG.render(projectName, tagName);
     }
 
     /**
@@ -157,13 +224,7 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatPipelineFailed(String projectName, String pipelineName) {
-        return String.format("""
-                ❌ *Pipeline failed!*
-
-                Project: _%s_
-                Pipeline: *%s*
-                Please check the pipeline logs
-                """, projectName, pipelineName);
+        return PIPELINE_FAILED.render(projectName, pipelineName);
     }
 
     /**
@@ -174,13 +235,64 @@ public class MessageFormatter {
      * @return formatted message text
      */
     public String formatPipelineDeployed(String projectName, String pipelineName) {
-        return String.format("""
-                🚀 *Pipeline deployed successfully!*
+        return PIPELINE_DEPLOYED.render(projectName, pipelineName);
+    }
 
-                Project: _%s_
-                Pipeline: *%s*
-                Deployment completed
-                """, projectName, pipelineName);
+    /**
+     * Format live status of a pipeline, the message is edited on every status change
+     *
+     * @param projectName  project name
+     * @param pipelineName pipeline name
+     * @param status       GitLab pipeline status, e.g. running
+     * @return formatted message text
+     */
+    public String formatPipelineStatus(String projectName, String pipelineName, String status) {
+        String emoji = switch (status == null ? "" : status.toLowerCase(Locale.ROOT)) {
+            case "success" -> "✅";
+            case "failed" -> "❌";
+            case "running" -> "🔄";
+            case "canceled", "skipped" -> "⛔";
+            case "manual" -> "✋";
+            default -> "⏳";
+        };
+        return PIPELINE_STATUS.render(emoji, status, projectName, pipelineName);
+    }
+
+    /**
+     * Format digest of comments on one MR
+     *
+     * @param projectName project name
+     * @param mrTitle     merge request title
+     * @param count       amount of comments
+     * @param authorNames names of the comment authors
+     * @return formatted message text
+     */
+    public String formatNewCommentsDigest(String projectName, String mrTitle, int count, String authorNames) {
+        return NEW_COMMENTS_DIGEST.render(String.valueOf(count), projectName, mrTitle, authorNames);
+    }
+
+    /**
+     * Format digest of tags created in one project
+     *
+     * @param projectName project name
+     * @param count       amount of tags
+     * @param tagNames    names of the tags
+     * @return formatted message text
+     */
+    public String formatNewTagsDigest(String projectName, int count, String tagNames) {
+        return NEW_TAGS_DIGEST.render(String.valueOf(count), projectName, tagNames);
+    }
+
+    /**
+     * Format digest of deploys of one ref
+     *
+     * @param projectName  project name
+     * @param pipelineName pipeline name
+     * @param count        amount of deployed pipelines
+     * @return formatted message text
+     */
+    public String formatPipelinesDeployedDigest(String projectName, String pipelineName, int count) {
+        return PIPELINES_DEPLOYED_DIGEST.render(String.valueOf(count), projectName, pipelineName);
     }
 
     /**
@@ -244,7 +356,8 @@ public class MessageFormatter {
             return Collections.emptyList();
         }
 
-        InlineKeyboardButtonRow.InlineKeyboardButton button = new InlineKeyboardButtonRow.InlineKeyboardButton(buttonText, url);
+        InlineKeyboardButtonRow.InlineKeyboardButton button =
+                new InlineKeyboardButtonRow.InlineKeyboardButton(buttonText, url);
 
         InlineKeyboardButtonRow row = new InlineKeyboardButtonRow(Collections.singletonList(button));
 
@@ -0,0 +1,133 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Telegram Markdown message template with {@code %s} placeholders, compiled once into literal segments.
+ * <p>
+ * Rendering appends the segments and the values into one pre-sized {@link StringBuilder} and escapes the values
+ * while copying them, so user content (project names, titles, user names) cannot break the message markup.
+ * Escaping depends on where the placeholder is: outside of entities Markdown characters are escaped with a backslash
+ * by {@link MarkdownEscaper#MARKDOWN}, inside of an entity (e.g. {@code *%s*}) Telegram does not support escapes,
+ * so the closing character of the entity in a value closes the entity, is written escaped and opens the entity again.
+ * <p>
+ * {@code %%} stands for a literal percent sign, other format specifiers are not supported.
+ * Templates are validated when compiled, so a template with an entity left open fails the application start
+ * rather than every message sent with it.
+ */
+public final class MessageTemplate {
+
+    private static final char OUTSIDE_ENTITY = 0;
+    /**
+     * Characters reserved for escapes of every value when sizing the output
+     */
+    private static final int ESCAPE_RESERVE = 4;
+
+    private final String[] literals;
+    /**
+     * Character closing the entity enclosing each placeholder, {@link #OUTSIDE_ENTITY} if there is none
+     */
+    private final char[] entities;
+    private final int literalsLength;
+
+    private MessageTemplate(String[] literals, char[] entities) {
+        this.literals = literals;
+        this.entities = entities;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalsLength = length;
+    }
+
+    /**
+     * @param template Markdown text with {@code %s} placeholders
+     * @return compiled template
+     * @throws IllegalArgumentException if the template has format specifiers other than {@code %s} and {@code %%}
+     *                                  or an entity is not closed
+     */
+    public static MessageTemplate compile(String template) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder entities = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        char entity = OUTSIDE_ENTITY;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '%') {
+                char next = i + 1 < template.length() ? template.charAt(i + 1) : OUTSIDE_ENTITY;
+                if (next == 's') {
+                    literals.add(literal.toString());
+                    literal.setLength(0);
+                    entities.append(entity);
+                } else if (next == '%') {
+                    literal.append('%');
+                } else {
+                    throw new IllegalArgumentException("Unsupported format specifier at " + i + " in template: "
+                            + template);
+                }
+                i++;
+                continue;
+            }
+            literal.append(c);
+            if (c == '\\' && entity == OUTSIDE_ENTITY && i + 1 < template.length()) {
+                // escaped character does not open an entity
+                literal.append(template.charAt(++i));
+            } else if (entity != OUTSIDE_ENTITY) {
+                if (c == entity) {
+                    entity = OUTSIDE_ENTITY;
+                }
+            } else if (c == '_' || c == '*' || c == '`') {
+                entity = c;
+            }
+        }
+        if (entity != OUTSIDE_ENTITY) {
+            throw new IllegalArgumentException("Entity '" + entity + "' is not closed in template: " + template);
+        }
+        literals.add(literal.toString());
+        return new MessageTemplate(literals.toArray(new String[0]), entities.toString().toCharArray());
+    }
+
+    /**
+     * @return amount of {@code %s} placeholders
+     */
+    public int getPlaceholderCount() {
+        return entities.length;
+    }
+
+    /**
+     * @param values values of the placeholders in order, null is rendered as "null"
+     * @return message text with escaped values
+     * @throws IllegalArgumentException if amount of values does not match amount of placeholders
+     */
+    public String render(String... values) {
+        if (values.length != entities.length) {
+            throw new IllegalArgumentException("Template expects " + entities.length + " values, got "
+                    + values.length);
+        }
+        int capacity = literalsLength + values.length * ESCAPE_RESERVE;
+        for (String value : values) {
+            capacity += value != null ? value.length() : 4;
+        }
+        StringBuilder text = new StringBuilder(capacity);
+        for (int i = 0; i < values.length; i++) {
+            text.append(literals[i]);
+            appendEscaped(text, String.valueOf(values[i]), entities[i]);
+        }
+        return text.append(literals[values.length]).toString();
+    }
+
+    private static void appendEscaped(StringBuilder text, String value, char entity) {
+        if (entity == OUTSIDE_ENTITY) {
+            MarkdownEscaper.MARKDOWN.appendEscaped(text, value);
+            return;
+        }
+        int copiedUpTo = 0;
+        for (int i = value.indexOf(entity); i >= 0; i = value.indexOf(entity, i + 1)) {
+            // close the entity, write the character escaped and reopen the entity
+            text.append(value, copiedUpTo, i).append(entity).append('\\').append(entity).append(entity);
+            copiedUpTo = i + 1;
+        }
+        text.append(value, copiedUpTo, value.length());
+    }
+}
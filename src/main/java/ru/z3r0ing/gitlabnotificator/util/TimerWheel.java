@@ -0,0 +1,169 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel driven by the caller's clock, for many timers with a coarse resolution.
+ * <p>
+ * Time is split into ticks. Timers due within 64 ticks are kept in the slots of the first level, later ones in
+ * the coarser levels, each 64 times longer than the previous one; a slot of a coarser level is spread over the finer
+ * levels once time reaches it. Scheduling and expiring a timer take constant time however many timers there are,
+ * and a timer never fires before its deadline, at most one tick after it.
+ * <p>
+ * Timers cannot be cancelled: an owner which moves its deadline checks it when the timer fires and schedules
+ * a new one. Not thread-safe: a wheel is owned by one thread.
+ *
+ * @param <T> timer payload
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    /**
+     * Timers further than this are clamped to it, about 19 days with 100 ms ticks
+     */
+    private static final long MAX_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    private final long tickNanos;
+    private final long startedAt;
+    private final ArrayDeque<Timer<T>>[][] slots;
+    /**
+     * Next tick to expire, all earlier ticks are expired
+     */
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param tick resolution of the wheel
+     * @param now  current {@link System#nanoTime()}
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(Duration tick, long now) {
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Tick must be positive");
+        }
+        this.tickNanos = tick.toNanos();
+        this.startedAt = now;
+        this.slots = new ArrayDeque[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots[level][slot] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    /**
+     * @param payload  passed to the consumer once the timer fires
+     * @param deadline {@link System#nanoTime()} the timer fires at
+     */
+    public void schedule(T payload, long deadline) {
+        // round up, so the timer does not fire before the deadline
+        long tick = Math.max(0, Math.floorDiv(deadline - startedAt + tickNanos - 1, tickNanos));
+        add(new Timer<>(payload, tick));
+        size++;
+    }
+
+    /**
+     * Fires all timers due by now.
+     *
+     * @param now     current {@link System#nanoTime()}
+     * @param expired receives payloads of the fired timers, may schedule new timers
+     * @return amount of fired timers
+     */
+    public int advance(long now, Consumer<T> expired) {
+        long targetTick = Math.floorDiv(now - startedAt, tickNanos);
+        int fired = 0;
+        while (currentTick <= targetTick) {
+            if (size == 0) {
+                // nothing to fire or cascade, skip idle time at once
+                currentTick = targetTick + 1;
+                break;
+            }
+            int index = (int) (currentTick & SLOT_MASK);
+            if (index == 0) {
+                cascade(1);
+            }
+            ArrayDeque<Timer<T>> slot = slots[0][index];
+            if (slot.isEmpty()) {
+                currentTick++;
+                continue;
+            }
+            // timers scheduled by the consumer for the current tick go to the next one, not to this slot
+            slots[0][index] = new ArrayDeque<>();
+            currentTick++;
+            size -= slot.size();
+            fired += slot.size();
+            for (Timer<T> timer : slot) {
+                expired.accept(timer.payload);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * @return nanoseconds until the next tick, the earliest time a timer may fire
+     */
+    public long nanosUntilNextTick(long now) {
+        return Math.max(0, startedAt + currentTick * tickNanos - now);
+    }
+
+    /**
+     * @return amount of scheduled timers
+     */
+    public int size() {
+        return size;
+    }
+
+    private void add(Timer<T> timer) {
+        long ticks = timer.tick - currentTick;
+        if (ticks < 0) {
+            slots[0][(int) (currentTick & SLOT_MASK)].add(timer);
+            return;
+        }
+        if (ticks > MAX_TICKS) {
+            timer.tick = currentTick + MAX_TICKS;
+            ticks = MAX_TICKS;
+        }
+        int level = 0;
+        while (ticks >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        slots[level][(int) ((timer.tick >> (SLOT_BITS * level)) & SLOT_MASK)].add(timer);
+    }
+
+    /**
+     * Spreads the slot of the level reached by the current tick over the finer levels.
+     */
+    private void cascade(int level) {
+        if (level == LEVELS) {
+            return;
+        }
+        int index = (int) ((currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+        if (index == 0) {
+            // the coarser level is reached first, its timers may move to this slot
+            cascade(level + 1);
+        }
+        ArrayDeque<Timer<T>> slot = slots[level][index];
+        if (slot.isEmpty()) {
+            return;
+        }
+        slots[level][index] = new ArrayDeque<>();
+        for (Timer<T> timer : slot) {
+            add(timer);
+        }
+    }
+
+    private static final class Timer<T> {
+        final T payload;
+        long tick;
+
+        Timer(T payload, long tick) {
+            this.payload = payload;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import java.time.Duration;
+
+/**
+ * Token bucket rate limiter driven by the caller's clock.
+ * Tracks only the time the bucket becomes full again, so it holds no timers and no background refill.
+ * Not thread-safe: a bucket is owned by one thread.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    /**
+     * Time when the bucket is full again; all tokens are available at or after it
+     */
+    private long fullAt;
+
+    /**
+     * @param permits amount of tokens refilled per {@code period}
+     * @param period  refill period
+     * @param burst   max amount of tokens, i.e. messages which may be taken at once after idle time
+     * @param now     current {@link System#nanoTime()}, the bucket starts full
+     */
+    public TokenBucket(int permits, Duration period, int burst, long now) {
+        if (permits < 1 || burst < 1) {
+            throw new IllegalArgumentException("Permits and burst must be positive");
+        }
+        this.nanosPerToken = period.toNanos() / permits;
+        this.burstNanos = nanosPerToken * burst;
+        this.fullAt = now;
+    }
+
+    /**
+     * @return nanoseconds until a token is available, 0 if it is available now
+     */
+    public long nanosUntilToken(long now) {
+        return Math.max(0, fullAt - burstNanos + nanosPerToken - now);
+    }
+
+    /**
+     * Takes a token if it is available.
+     *
+     * @return true if the token was taken
+     */
+    public boolean tryTake(long now) {
+        if (nanosUntilToken(now) > 0) {
+            return false;
+        }
+        fullAt = Math.max(fullAt, now) + nanosPerToken;
+        return true;
+    }
+
+    /**
+     * @return true if all tokens are available, so the bucket may be dropped and recreated without losing state
+     */
+    public boolean isFull(long now) {
+        return fullAt <= now;
+    }
+}
@@ -0,0 +1,197 @@
+package ru.z3r0ing.gitlabnotificator.coalescing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.NoteEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.MergeRequest;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Pipeline;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Project;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.User;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.outbox.NotificationOutbox;
+import ru.z3r0ing.gitlabnotificator.service.WebhookLaneClassifier;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationCoalescerTest {
+
+    @Mock
+    private NotificationOutbox notificationOutbox;
+    @Mock
+    private DeliveryScheduler deliveryScheduler;
+    private AppProperties appProperties;
+    private NotificationCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        appProperties = new AppProperties();
+        AppProperties.Coalescing coalescing = appProperties.getNotifications().getCoalescing();
+        coalescing.setEnabled(true);
+        coalescing.setQuietWindow(Duration.ofMillis(300));
+        coalescing.setTick(Duration.ofMillis(10));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (coalescer != null) {
+            coalescer.stop();
+        }
+    }
+
+    @Test
+    void offer_CommentsOnOneMr_ShouldSendOneDigestAfterQuietWindow() {
+        // Given
+        coalescer = createCoalescer();
+
+        // When
+        for (String author : List.of("Alice", "Bob", "Alice")) {
+            assertThat(coalescer.offer(EventType.NOTE, comment(author), List.of(handledEvent("comment by " + author)),
+                    new long[][]{{200L}})).isTrue();
+        }
+
+        // Then
+        ArgumentCaptor<Delivery> delivery = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryScheduler, timeout(3000)).submit(delivery.capture());
+        assertThat(delivery.getValue().getChatId()).isEqualTo(200L);
+        assertThat(delivery.getValue().getNotifications()).isEqualTo(3);
+        assertThat(delivery.getValue().getMessageWithKeyboard().getMessage())
+                .contains("3 new comments on Merge Request")
+                .contains("MR: *Fix login*")
+                .contains("Comments by: Alice, Bob");
+        verify(notificationOutbox, never()).enqueue(any(), anyInt());
+    }
+
+    @Test
+    void offer_OneComment_ShouldSendItUnchanged() {
+        // Given
+        coalescer = createCoalescer();
+
+        // When
+        coalescer.offer(EventType.NOTE, comment("Alice"), List.of(handledEvent("comment by Alice")),
+                new long[][]{{200L}});
+
+        // Then
+        verify(deliveryScheduler, timeout(3000))
+                .submit(new Delivery(200L, new MessageWithKeyboard("comment by Alice", List.of()), 1));
+    }
+
+    @Test
+    void offer_FailedPipeline_ShouldNotHoldNotifications() {
+        // Given
+        coalescer = createCoalescer();
+        PipelineEvent failedPipeline = new PipelineEvent();
+        failedPipeline.setProject(project());
+        Pipeline pipeline = new Pipeline();
+        pipeline.setStatus("failed");
+        failedPipeline.setPipeline(pipeline);
+
+        // When
+        boolean held = coalescer.offer(EventType.PIPELINE, failedPipeline, List.of(handledEvent("failed")),
+                new long[][]{{200L}});
+
+        // Then
+        assertThat(held).isFalse();
+        verifyNoInteractions(deliveryScheduler);
+    }
+
+    @Test
+    void offer_Disabled_ShouldNotHoldNotifications() {
+        // Given
+        appProperties.getNotifications().getCoalescing().setEnabled(false);
+        coalescer = createCoalescer();
+
+        // When
+        boolean held = coalescer.offer(EventType.NOTE, comment("Alice"), List.of(handledEvent("comment")),
+                new long[][]{{200L}});
+
+        // Then
+        assertThat(held).isFalse();
+    }
+
+    @Test
+    void stop_ShouldSendOpenWindows() throws InterruptedException {
+        // Given
+        appProperties.getNotifications().getCoalescing().setQuietWindow(Duration.ofMinutes(10));
+        coalescer = createCoalescer();
+        coalescer.offer(EventType.NOTE, comment("Alice"), List.of(handledEvent("comment by Alice")),
+                new long[][]{{200L, 201L}});
+        verify(deliveryScheduler, after(100).never()).submit(any());
+
+        // When
+        coalescer.stop();
+
+        // Then
+        verify(deliveryScheduler).submit(new Delivery(200L, new MessageWithKeyboard("comment by Alice", List.of()), 1));
+        verify(deliveryScheduler).submit(new Delivery(201L, new MessageWithKeyboard("comment by Alice", List.of()), 1));
+    }
+
+    @Test
+    void offer_AfterStop_ShouldNotHoldNotifications() throws InterruptedException {
+        // Given
+        coalescer = createCoalescer();
+        coalescer.stop();
+
+        // When
+        boolean held = coalescer.offer(EventType.NOTE, comment("Alice"), List.of(handledEvent("comment")),
+                new long[][]{{200L}});
+
+        // Then
+        assertThat(held).isFalse();
+        verifyNoInteractions(deliveryScheduler);
+    }
+
+    private NotificationCoalescer createCoalescer() {
+        NotificationCoalescer notificationCoalescer = new NotificationCoalescer(appProperties, new MessageFormatter(),
+                new WebhookLaneClassifier(), notificationOutbox, deliveryScheduler, new SimpleMeterRegistry());
+        notificationCoalescer.start();
+        return notificationCoalescer;
+    }
+
+    private static NoteEvent comment(String authorName) {
+        NoteEvent noteEvent = new NoteEvent();
+        User author = new User();
+        author.setName(authorName);
+        noteEvent.setUser(author);
+        noteEvent.setProject(project());
+        MergeRequest mergeRequest = new MergeRequest();
+        mergeRequest.setIid(7L);
+        mergeRequest.setTitle("Fix login");
+        noteEvent.setMergeRequest(mergeRequest);
+        return noteEvent;
+    }
+
+    private static Project project() {
+        Project project = new Project();
+        project.setId(1L);
+        project.setName("gitlab-test");
+        return project;
+    }
+
+    private static HandledEvent handledEvent(String message) {
+        return new HandledEvent(100L, new MessageWithKeyboard(message, List.of()));
+    }
+}
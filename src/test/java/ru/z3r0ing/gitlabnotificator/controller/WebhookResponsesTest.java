@@ -0,0 +1,53 @@
+package ru.z3r0ing.gitlabnotificator.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookResponsesTest {
+
+    private final AppProperties appProperties = new AppProperties();
+
+    @Test
+    void of_Shed_ShouldAskToRetryAfterTooManyRequests() {
+        // Given
+        appProperties.getWebhook().getLanes().setRetryAfter(Duration.ofSeconds(45));
+
+        // When
+        ResponseEntity<String> response = WebhookResponses.of(IngestionResult.SHED, appProperties);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("45");
+    }
+
+    @Test
+    void of_Rejected_ShouldAskToRetryAfterServiceUnavailable() {
+        // When
+        ResponseEntity<String> response = WebhookResponses.of(IngestionResult.REJECTED, appProperties);
+
+        // Then
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("30");
+    }
+
+    @Test
+    void of_OtherResults_ShouldAcceptWithoutRetryAfter() {
+        for (IngestionResult result : new IngestionResult[]{IngestionResult.ACCEPTED, IngestionResult.IGNORED,
+                IngestionResult.FILTERED, IngestionResult.DUPLICATE}) {
+            // When
+            ResponseEntity<String> response = WebhookResponses.of(result, appProperties);
+
+            // Then
+            assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+            assertThat(response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)).isFalse();
+        }
+    }
+}
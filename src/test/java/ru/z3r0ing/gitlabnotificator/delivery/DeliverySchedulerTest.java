@@ -0,0 +1,418 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.service.TelegramService;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DeliverySchedulerTest {
+
+    @Mock
+    private TelegramService telegramService;
+    @Mock
+    private DeadLetterService deadLetterService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DeliveryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(telegramService.sendMarkdownMessageAsync(anyString(), any())).thenReturn(sent());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    void submit_RateLimitDisabled_ShouldSendRightAway() throws TelegramApiException {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setEnabled(false);
+        scheduler = createScheduler(appProperties);
+
+        // When
+        scheduler.submit(delivery(100L, "test"));
+
+        // Then
+        verify(telegramService).sendMarkdownMessageOrThrow(eq(100L), eq(payload("test")));
+    }
+
+    @Test
+    void submit_SameChat_ShouldKeepOrderAndChatRate() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setChatPerSecond(10);
+        scheduler = createScheduler(appProperties);
+        long startedAt = System.nanoTime();
+
+        // When
+        scheduler.submit(delivery(100L, "first"));
+        scheduler.submit(delivery(100L, "second"));
+        scheduler.submit(delivery(100L, "third"));
+
+        // Then
+        InOrder inOrder = inOrder(telegramService);
+        inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq("100"), eq(payload("first")));
+        inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq("100"), eq(payload("second")));
+        inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq("100"), eq(payload("third")));
+        // three messages at 10 per second need at least two refill intervals
+        assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(190_000_000L);
+    }
+
+    @Test
+    void submit_ManyChats_ShouldKeepGlobalRate() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setGlobalPerSecond(20);
+        scheduler = createScheduler(appProperties);
+        long startedAt = System.nanoTime();
+
+        // When
+        for (long chatId = 1; chatId <= 5; chatId++) {
+            scheduler.submit(delivery(chatId, "test"));
+        }
+
+        // Then
+        verify(telegramService, timeout(2000).times(5)).sendMarkdownMessageAsync(anyString(), any());
+        assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(190_000_000L);
+    }
+
+    @Test
+    void submit_ChatIsThrottled_ShouldNotDelayOtherChats() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setGroupChatPerMinute(30);
+        scheduler = createScheduler(appProperties);
+
+        // When
+        scheduler.submit(delivery(-100L, "first"));
+        scheduler.submit(delivery(-100L, "second"));
+        scheduler.submit(delivery(100L, "private"));
+
+        // Then
+        verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq("100"), eq(payload("private")));
+        verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq("-100"), eq(payload("first")));
+        verify(telegramService, never()).sendMarkdownMessageAsync(eq("-100"), eq(payload("second")));
+    }
+
+    @Test
+    void submit_Sharded_ShouldKeepOrderWithinChat() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        AppProperties.RateLimit rateLimit = appProperties.getTelegram().getRateLimit();
+        rateLimit.setShards(4);
+        rateLimit.setGlobalPerSecond(1000);
+        rateLimit.setChatPerSecond(1000);
+        scheduler = createScheduler(appProperties);
+
+        // When
+        for (String message : List.of("first", "second", "third")) {
+            for (long chatId = 1; chatId <= 8; chatId++) {
+                scheduler.submit(delivery(chatId, message));
+            }
+        }
+
+        // Then
+        for (long chatId = 1; chatId <= 8; chatId++) {
+            InOrder inOrder = inOrder(telegramService);
+            String chat = String.valueOf(chatId);
+            inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq(chat), eq(payload("first")));
+            inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq(chat), eq(payload("second")));
+            inOrder.verify(telegramService, timeout(2000)).sendMarkdownMessageAsync(eq(chat), eq(payload("third")));
+        }
+    }
+
+    @Test
+    void submit_RateLimited_ShouldRetryAfterTelegramDelay() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        TelegramApiRequestException tooManyRequests = requestException(429, 1);
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("first"))))
+                .thenReturn(CompletableFuture.failedFuture(tooManyRequests), sent());
+        long startedAt = System.nanoTime();
+
+        // When
+        scheduler.submit(delivery(100L, "first"));
+        scheduler.submit(delivery(100L, "second"));
+
+        // Then
+        InOrder inOrder = inOrder(telegramService);
+        inOrder.verify(telegramService, timeout(3000).times(2)).sendMarkdownMessageAsync(eq("100"), eq(payload("first")));
+        inOrder.verify(telegramService, timeout(3000)).sendMarkdownMessageAsync(eq("100"), eq(payload("second")));
+        assertThat(System.nanoTime() - startedAt).isGreaterThanOrEqualTo(1_000_000_000L);
+        verifyNoInteractions(deadLetterService);
+    }
+
+    @Test
+    void submit_PermanentFailure_ShouldMoveMessageToDeadLetters() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        TelegramApiRequestException forbidden = requestException(403, null);
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("test"))))
+                .thenReturn(CompletableFuture.failedFuture(forbidden));
+        Delivery delivery = delivery(100L, "test");
+
+        // When
+        scheduler.submit(delivery);
+
+        // Then
+        verify(deadLetterService, timeout(2000)).store(delivery, 1, FailureType.PERMANENT, forbidden);
+        verify(telegramService, times(1)).sendMarkdownMessageAsync(eq("100"), eq(payload("test")));
+        assertThat(scheduler.getPendingCount()).isZero();
+        assertThat(meterRegistry.get("telegram.delivery.errors").tag("code", "403").tag("type", "permanent")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_UnexpectedFailure_ShouldRetryAsTransient() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRetry().setInitialBackoff(Duration.ofMillis(10));
+        scheduler = createScheduler(appProperties);
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("test"))))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("rejected")), sent());
+
+        // When
+        scheduler.submit(delivery(100L, "test"));
+
+        // Then
+        verify(telegramService, timeout(2000).times(2)).sendMarkdownMessageAsync(eq("100"), eq(payload("test")));
+        verifyNoInteractions(deadLetterService);
+        assertThat(meterRegistry.get("telegram.delivery.retries").tag("type", "transient").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void submit_UnexpectedFailureOutOfAttempts_ShouldMoveMessageToDeadLetters() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRetry().setMaxAttempts(1);
+        scheduler = createScheduler(appProperties);
+        IllegalStateException rejected = new IllegalStateException("rejected");
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("test"))))
+                .thenReturn(CompletableFuture.failedFuture(rejected));
+        Delivery delivery = delivery(100L, "test");
+
+        // When
+        scheduler.submit(delivery);
+
+        // Then
+        ArgumentCaptor<TelegramApiException> failure = ArgumentCaptor.forClass(TelegramApiException.class);
+        verify(deadLetterService, timeout(2000)).store(eq(delivery), eq(1), eq(FailureType.TRANSIENT),
+                failure.capture());
+        assertThat(failure.getValue()).hasCause(rejected);
+        assertThat(scheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    void submit_UnexpectedFailureWithoutDispatcher_ShouldMoveMessageToDeadLetters() throws TelegramApiException {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setEnabled(false);
+        scheduler = createScheduler(appProperties);
+        doThrow(new IllegalStateException("rejected")).when(telegramService)
+                .sendMarkdownMessageOrThrow(eq(100L), any());
+        Delivery delivery = delivery(100L, "test");
+
+        // When
+        scheduler.submit(delivery);
+
+        // Then
+        verify(deadLetterService).store(eq(delivery), eq(1), eq(FailureType.TRANSIENT), any());
+    }
+
+    @Test
+    void submit_BadMarkup_ShouldSendAgainAsPlainText() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        TelegramApiRequestException badMarkup = requestException(400, null);
+        when(badMarkup.getApiResponse()).thenReturn("Bad Request: can't parse entities");
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("*broken"))))
+                .thenReturn(CompletableFuture.failedFuture(badMarkup));
+
+        // When
+        scheduler.submit(delivery(100L, "*broken"));
+
+        // Then
+        verify(telegramService, timeout(2000))
+                .sendMarkdownMessageAsync(eq("100"), eq(payload("*broken").toPlainText()));
+        verifyNoInteractions(deadLetterService);
+    }
+
+    @Test
+    void submit_BadMarkupInPlainText_ShouldMoveMessageToDeadLetters() throws TelegramApiException {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setEnabled(false);
+        scheduler = createScheduler(appProperties);
+        TelegramApiRequestException badMarkup = requestException(400, null);
+        when(badMarkup.getApiResponse()).thenReturn("Bad Request: can't parse entities");
+        doThrow(badMarkup).when(telegramService).sendMarkdownMessageOrThrow(eq(100L), any());
+        Delivery delivery = delivery(100L, "*broken");
+
+        // When
+        scheduler.submit(delivery);
+
+        // Then
+        verify(telegramService).sendMarkdownMessageOrThrow(100L, payload("*broken"));
+        verify(telegramService).sendMarkdownMessageOrThrow(100L, payload("*broken").toPlainText());
+        verify(deadLetterService).store(delivery, 2, FailureType.BAD_MARKUP, badMarkup);
+    }
+
+    @Test
+    void submit_NewMessage_ShouldPassSentMessageToCallback() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        Message message = new Message();
+        message.setMessageId(42);
+        when(telegramService.sendMarkdownMessageAsync(eq("100"), eq(payload("test"))))
+                .thenReturn(CompletableFuture.completedFuture(message));
+        CompletableFuture<Message> sentMessage = new CompletableFuture<>();
+
+        // When
+        scheduler.submit(delivery(100L, "test"), new DeliveryCallback() {
+            @Override
+            public void onSent(Message sent) {
+                sentMessage.complete(sent);
+            }
+
+            @Override
+            public void onComplete(boolean sent) {
+            }
+        });
+
+        // Then
+        assertThat(sentMessage).succeedsWithin(Duration.ofSeconds(2)).isSameAs(message);
+    }
+
+    @Test
+    void submit_Interrupted_ShouldCompleteCallbackAsNotSent() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        List<Boolean> outcomes = new CopyOnWriteArrayList<>();
+        Thread.currentThread().interrupt();
+
+        // When
+        try {
+            scheduler.submit(delivery(100L, "test"), outcomes::add);
+        } finally {
+            Thread.interrupted();
+        }
+
+        // Then
+        assertThat(outcomes).containsExactly(false);
+        verify(telegramService, never()).sendMarkdownMessageAsync(anyString(), any());
+    }
+
+    @Test
+    void submit_EditMessageId_ShouldEditMessage() {
+        // Given
+        scheduler = createScheduler(new AppProperties());
+        when(telegramService.editMarkdownMessageAsync(eq("100"), eq(42), eq(payload("edited"))))
+                .thenReturn(CompletableFuture.completedFuture(true));
+
+        // When
+        scheduler.submit(new Delivery(100L, payload("edited"), 1, 42));
+
+        // Then
+        verify(telegramService, timeout(2000)).editMarkdownMessageAsync(eq("100"), eq(42), eq(payload("edited")));
+        verify(telegramService, never()).sendMarkdownMessageAsync(anyString(), any());
+    }
+
+    @Test
+    void submit_ManyChats_ShouldKeepConcurrencyLimit() throws InterruptedException {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getTelegram().getRateLimit().setMaxConcurrentSends(2);
+        scheduler = createScheduler(appProperties);
+        List<CompletableFuture<Message>> responses = new CopyOnWriteArrayList<>();
+        when(telegramService.sendMarkdownMessageAsync(anyString(), any())).thenAnswer(invocation -> {
+            CompletableFuture<Message> response = new CompletableFuture<>();
+            responses.add(response);
+            return response;
+        });
+
+        // When
+        for (long chatId = 1; chatId <= 3; chatId++) {
+            scheduler.submit(delivery(chatId, "test"));
+        }
+
+        // Then
+        verify(telegramService, timeout(2000).times(2)).sendMarkdownMessageAsync(anyString(), any());
+        Thread.sleep(200);
+        verify(telegramService, times(2)).sendMarkdownMessageAsync(anyString(), any());
+        responses.get(0).complete(null);
+        verify(telegramService, timeout(2000).times(3)).sendMarkdownMessageAsync(anyString(), any());
+        responses.forEach(response -> response.complete(null));
+    }
+
+    private static CompletableFuture<Message> sent() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private static TelegramApiRequestException requestException(int errorCode, Integer retryAfter) {
+        TelegramApiRequestException exception = mock(TelegramApiRequestException.class);
+        when(exception.getErrorCode()).thenReturn(errorCode);
+        if (retryAfter != null) {
+            ResponseParameters parameters = mock(ResponseParameters.class);
+            when(parameters.getRetryAfter()).thenReturn(retryAfter);
+            when(exception.getParameters()).thenReturn(parameters);
+        }
+        return exception;
+    }
+
+    private DeliveryScheduler createScheduler(AppProperties appProperties) {
+        DeliveryScheduler deliveryScheduler = new DeliveryScheduler(appProperties, telegramService,
+                new RetryPolicy(appProperties), deadLetterService, meterRegistry);
+        deliveryScheduler.start();
+        return deliveryScheduler;
+    }
+
+    private static Delivery delivery(long chatId, String message) {
+        return new Delivery(chatId, new MessageWithKeyboard(message, Collections.emptyList()), 1);
+    }
+
+    private static PreparedNotification payload(String message) {
+        return PreparedNotification.of(new MessageWithKeyboard(message, Collections.emptyList()));
+    }
+}
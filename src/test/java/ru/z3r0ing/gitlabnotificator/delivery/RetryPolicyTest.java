@@ -0,0 +1,84 @@
+package ru.z3r0ing.gitlabnotificator.delivery;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RetryPolicyTest {
+
+    private final RetryPolicy retryPolicy = new RetryPolicy(new AppProperties());
+
+    @Test
+    void retryDelay_RateLimited_ShouldWaitExactlyRetryAfter() {
+        // Given
+        TelegramApiRequestException e = requestException(429);
+        ResponseParameters parameters = mock(ResponseParameters.class);
+        when(parameters.getRetryAfter()).thenReturn(7);
+        when(e.getParameters()).thenReturn(parameters);
+
+        // When
+        long delay = retryPolicy.retryDelay(e, 1);
+
+        // Then
+        assertThat(retryPolicy.classify(e)).isEqualTo(FailureType.RATE_LIMITED);
+        assertThat(delay).isEqualTo(Duration.ofSeconds(7).toNanos());
+    }
+
+    @Test
+    void retryDelay_TransientFailure_ShouldBackOffExponentiallyWithJitter() {
+        // Given
+        TelegramApiException e = new TelegramApiException("Connection reset", new IOException("reset"));
+        long second = Duration.ofSeconds(1).toNanos();
+
+        // When / Then
+        assertThat(retryPolicy.classify(e)).isEqualTo(FailureType.TRANSIENT);
+        assertThat(retryPolicy.retryDelay(e, 1)).isBetween(second / 2, second);
+        assertThat(retryPolicy.retryDelay(e, 3)).isBetween(2 * second, 4 * second);
+        assertThat(retryPolicy.retryDelay(requestException(502), 2)).isBetween(second, 2 * second);
+    }
+
+    @Test
+    void retryDelay_PermanentFailure_ShouldNotRetry() {
+        // When / Then
+        assertThat(retryPolicy.classify(requestException(400))).isEqualTo(FailureType.PERMANENT);
+        assertThat(retryPolicy.retryDelay(requestException(400), 1)).isEqualTo(RetryPolicy.NO_RETRY);
+        assertThat(retryPolicy.retryDelay(requestException(403), 1)).isEqualTo(RetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    void classify_CannotParseEntities_ShouldReportBadMarkup() {
+        // Given
+        TelegramApiRequestException e = requestException(400);
+        when(e.getApiResponse())
+                .thenReturn("Bad Request: can't parse entities: Can't find end of the entity starting at byte offset 42");
+
+        // When / Then
+        assertThat(retryPolicy.classify(e)).isEqualTo(FailureType.BAD_MARKUP);
+        assertThat(retryPolicy.retryDelay(e, 1)).isEqualTo(RetryPolicy.NO_RETRY);
+    }
+
+    @Test
+    void retryDelay_AttemptsExhausted_ShouldNotRetry() {
+        // Given
+        TelegramApiException e = new TelegramApiException("Timeout");
+
+        // When / Then
+        assertThat(retryPolicy.retryDelay(e, 4)).isPositive();
+        assertThat(retryPolicy.retryDelay(e, 5)).isEqualTo(RetryPolicy.NO_RETRY);
+    }
+
+    private static TelegramApiRequestException requestException(int errorCode) {
+        TelegramApiRequestException exception = mock(TelegramApiRequestException.class);
+        when(exception.getErrorCode()).thenReturn(errorCode);
+        return exception;
+    }
+}
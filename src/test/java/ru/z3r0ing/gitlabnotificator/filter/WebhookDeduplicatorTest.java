@@ -0,0 +1,76 @@
+package ru.z3r0ing.gitlabnotificator.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.security.MessageDigest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookDeduplicatorTest {
+
+    private final AppProperties appProperties = new AppProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void isDuplicate_ShouldDetectRepeatedKeyAndRecordHitRatio() {
+        // Given
+        WebhookDeduplicator deduplicator = new WebhookDeduplicator(appProperties, meterRegistry);
+
+        // When
+        boolean first = deduplicator.isDuplicate("uuid-1");
+        boolean second = deduplicator.isDuplicate("uuid-1");
+        boolean other = deduplicator.isDuplicate("uuid-2");
+
+        // Then
+        assertThat(first).isFalse();
+        assertThat(second).isTrue();
+        assertThat(other).isFalse();
+        assertThat(meterRegistry.get("gitlab.webhook.dedup.checks").tag("result", "duplicate").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("gitlab.webhook.dedup.hit.ratio").gauge().value()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    void forget_ShouldAllowKeyAgain() {
+        // Given
+        WebhookDeduplicator deduplicator = new WebhookDeduplicator(appProperties, meterRegistry);
+        deduplicator.isDuplicate("uuid-1");
+
+        // When
+        deduplicator.forget("uuid-1");
+
+        // Then
+        assertThat(deduplicator.isDuplicate("uuid-1")).isFalse();
+    }
+
+    @Test
+    void isDuplicate_Disabled_ShouldNeverDetectDuplicates() {
+        // Given
+        appProperties.getWebhook().getDedup().setEnabled(false);
+        WebhookDeduplicator deduplicator = new WebhookDeduplicator(appProperties, meterRegistry);
+        deduplicator.isDuplicate("uuid-1");
+
+        // When
+        boolean duplicate = deduplicator.isDuplicate("uuid-1");
+
+        // Then
+        assertThat(duplicate).isFalse();
+    }
+
+    @Test
+    void contentKey_ShouldDependOnContentOnly() {
+        // Given
+        MessageDigest first = WebhookDeduplicator.newContentDigest();
+        first.update("{\"id\": 1}".getBytes(UTF_8));
+        MessageDigest second = WebhookDeduplicator.newContentDigest();
+        second.update("{\"id\": 1}".getBytes(UTF_8));
+
+        // When / Then
+        assertThat(WebhookDeduplicator.contentKey(first))
+                .startsWith("sha256:")
+                .isEqualTo(WebhookDeduplicator.contentKey(second));
+    }
+}
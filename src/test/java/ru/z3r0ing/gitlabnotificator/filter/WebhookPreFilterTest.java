@@ -0,0 +1,112 @@
+package ru.z3r0ing.gitlabnotificator.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.util.unit.DataSize;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookPreFilterTest {
+
+    private final AppProperties appProperties = new AppProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WebhookPreFilter preFilter = new WebhookPreFilter(appProperties, meterRegistry);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "MERGE_REQUEST | {\"user\": {\"id\": 1}, \"object_attributes\": {\"state\": \"closed\"}} | CLOSED_MERGE_REQUEST",
+            "ISSUE         | {\"object_attributes\": {\"state\": \"closed\", \"action\": \"close\"}}  | CLOSED_ISSUE",
+            "NOTE          | {\"object_attributes\": {\"noteable_type\": \"Issue\"}}                  | NOT_MERGE_REQUEST_NOTE",
+            "PIPELINE      | {\"object_attributes\": {\"status\": \"running\"}}                       | PIPELINE_IN_PROGRESS"
+    })
+    void check_ShouldDropEventsWithoutNotifications(EventType eventType, String payload, DropReason expected) {
+        // When
+        DropReason dropReason = preFilter.check(eventType, payload.getBytes(UTF_8));
+
+        // Then
+        assertThat(dropReason).isEqualTo(expected);
+        assertThat(meterRegistry.get("gitlab.webhook.filtered").tag("reason", expected.getTag()).counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "MERGE_REQUEST | {\"object_attributes\": {\"state\": \"opened\", \"action\": \"open\"}}",
+            "NOTE          | {\"object_attributes\": {\"noteable_type\": \"MergeRequest\"}}",
+            "PIPELINE      | {\"object_attributes\": {\"status\": \"failed\"}}",
+            "ISSUE         | {\"object_kind\": \"issue\"}",
+            "TAG_PUSH      | {\"object_attributes\": {\"state\": \"closed\"}}",
+            "ISSUE         | invalid json"
+    })
+    void check_ShouldKeepEventsWithNotifications(EventType eventType, String payload) {
+        assertThat(preFilter.check(eventType, payload.getBytes(UTF_8))).isNull();
+    }
+
+    @Test
+    void check_InputStream_ShouldNotConsumeStream() throws IOException {
+        // Given
+        byte[] payload = "{\"project\": {\"name\": \"Project\"}, \"object_attributes\": {\"status\": \"pending\"}}"
+                .getBytes(UTF_8);
+        InputStream stream = new BufferedInputStream(new ByteArrayInputStream(payload));
+
+        // When
+        DropReason dropReason = preFilter.check(EventType.PIPELINE, stream);
+
+        // Then
+        assertThat(dropReason).isEqualTo(DropReason.PIPELINE_IN_PROGRESS);
+        assertThat(stream.readAllBytes()).isEqualTo(payload);
+    }
+
+    @Test
+    void check_DecisionBeyondPeekLimit_ShouldKeepEvent() throws IOException {
+        // Given
+        appProperties.getWebhook().getPreFilter().setPeekLimit(DataSize.ofBytes(16));
+        byte[] payload = "{\"project\": {\"name\": \"Project\"}, \"object_attributes\": {\"state\": \"closed\"}}"
+                .getBytes(UTF_8);
+        InputStream stream = new BufferedInputStream(new ByteArrayInputStream(payload));
+
+        // When
+        DropReason dropReason = preFilter.check(EventType.MERGE_REQUEST, stream);
+
+        // Then
+        assertThat(dropReason).isNull();
+        assertThat(stream.readAllBytes()).isEqualTo(payload);
+    }
+
+    @Test
+    void check_PipelineStatusEnabled_ShouldKeepPipelineInProgress() {
+        // Given
+        appProperties.getNotifications().getPipelineStatus().setEnabled(true);
+        WebhookPreFilter pipelineStatusPreFilter = new WebhookPreFilter(appProperties, meterRegistry);
+
+        // When
+        DropReason dropReason = pipelineStatusPreFilter.check(EventType.PIPELINE,
+                "{\"object_attributes\": {\"status\": \"running\"}}".getBytes(UTF_8));
+
+        // Then
+        assertThat(dropReason).isNull();
+    }
+
+    @Test
+    void check_Disabled_ShouldKeepEvent() {
+        // Given
+        appProperties.getWebhook().getPreFilter().setEnabled(false);
+
+        // When
+        DropReason dropReason = preFilter.check(EventType.ISSUE,
+                "{\"object_attributes\": {\"state\": \"closed\"}}".getBytes(UTF_8));
+
+        // Then
+        assertThat(dropReason).isNull();
+    }
+}
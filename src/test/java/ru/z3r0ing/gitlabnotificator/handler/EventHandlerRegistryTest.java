@@ -0,0 +1,48 @@
+package ru.z3r0ing.gitlabnotificator.handler;
+
+import org.junit.jupiter.api.Test;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EventHandlerRegistryTest {
+
+    private final MessageFormatter messageFormatter = new MessageFormatter();
+
+    @Test
+    void getHandlers_ShouldReturnHandlersSupportingEventType() {
+        // Given
+        MergeRequestEventHandler mergeRequestEventHandler = new MergeRequestEventHandler(messageFormatter);
+        PipelineEventHandler pipelineEventHandler = new PipelineEventHandler(messageFormatter);
+        EventHandlerRegistry registry = new EventHandlerRegistry(List.of(mergeRequestEventHandler, pipelineEventHandler));
+
+        // When & Then
+        assertThat(registry.getHandlers(EventType.MERGE_REQUEST)).containsExactly(mergeRequestEventHandler);
+        assertThat(registry.getHandlers(EventType.PIPELINE)).containsExactly(pipelineEventHandler);
+    }
+
+    @Test
+    void getHandlers_NoSupportingHandlers_ShouldReturnEmptyList() {
+        // Given
+        EventHandlerRegistry registry = new EventHandlerRegistry(List.of(new TagPushEventHandler(messageFormatter)));
+
+        // When & Then
+        assertThat(registry.getHandlers(EventType.NOTE)).isEmpty();
+        assertThat(registry.getHandlers(null)).isEmpty();
+    }
+
+    @Test
+    void fromRequestHeader_ShouldResolveEveryEventType() {
+        for (EventType eventType : EventType.values()) {
+            assertThat(EventType.fromRequestHeader(eventType.getRequestHeader())).isEqualTo(eventType);
+        }
+        assertThatThrownBy(() -> EventType.fromRequestHeader("Push Hook"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EventType.fromRequestHeader(null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,7 +17,6 @@ import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -33,8 +30,6 @@ class IssueEventHandlerTest {
     @Mock
     private MessageFormatter messageFormatter;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     @BeforeEach
     void setUp() {
         handler = new IssueEventHandler(messageFormatter);
@@ -52,26 +47,24 @@ class IssueEventHandlerTest {
     }
 
     @Test
-    void handleClosedIssue() throws JsonProcessingException {
+    void handleClosedIssue() {
         // Given
         IssueEvent event = createBasicIssueEvent();
         event.getIssue().setState("closed");
-        String payload = objectMapper.writeValueAsString(event);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
     }
 
     @Test
-    void handleEvent_ShouldHandleOpenIssue() throws JsonProcessingException {
+    void handleEvent_ShouldHandleOpenIssue() {
         // Given
         IssueEvent event = createBasicIssueEvent();
         event.getIssue().setState("opened");
         event.getIssue().setAction("open");
-        String payload = objectMapper.writeValueAsString(event);
 
         String expectedMessage = "New issue created";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
@@ -79,7 +72,7 @@ class IssueEventHandlerTest {
         when(messageFormatter.buttonsForIssue("http://gitlab/issue/1")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(2);
@@ -91,15 +84,14 @@ class IssueEventHandlerTest {
     }
 
     @Test
-    void handleNonOpenAction() throws JsonProcessingException {
+    void handleNonOpenAction() {
         // Given
         IssueEvent event = createBasicIssueEvent();
         event.getIssue().setState("opened");
         event.getIssue().setAction("update"); // Not "open" action
-        String payload = objectMapper.writeValueAsString(event);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
@@ -107,16 +99,6 @@ class IssueEventHandlerTest {
         verify(messageFormatter, never()).buttonsForIssue(anyString());
     }
 
-    @Test
-    void handleEvent_ShouldHandleInvalidJson() {
-        // Given
-        String invalidPayload = "invalid json";
-
-        // When & Then
-        assertThatThrownBy(() -> handler.handleEvent(invalidPayload))
-                .isInstanceOf(JsonProcessingException.class);
-    }
-
     private IssueEvent createBasicIssueEvent() {
         IssueEvent event = new IssueEvent();
 
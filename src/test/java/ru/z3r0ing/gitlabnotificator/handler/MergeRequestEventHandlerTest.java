@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -20,7 +18,6 @@ import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -34,8 +31,6 @@ class MergeRequestEventHandlerTest {
     @Mock
     private MessageFormatter messageFormatter;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     @BeforeEach
     void setUp() {
         handler = new MergeRequestEventHandler(messageFormatter);
@@ -53,21 +48,20 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleClosedMergeRequest() throws JsonProcessingException {
+    void handleClosedMergeRequest() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
         event.getMergeRequest().setState("closed");
-        String payload = objectMapper.writeValueAsString(event);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
     }
 
     @Test
-    void handleEvent_ShouldHandleOpenMergeRequest() throws JsonProcessingException {
+    void handleEvent_ShouldHandleOpenMergeRequest() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
         event.getMergeRequest().setAction("open");
@@ -75,15 +69,13 @@ class MergeRequestEventHandlerTest {
         MergeRequestEvent.Changes changes = new MergeRequestEvent.Changes();
         event.setChanges(changes);
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New MR created";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1);
@@ -93,7 +85,7 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleDraftRemoval() throws JsonProcessingException {
+    void handleEvent_ShouldHandleDraftRemoval() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
 
@@ -105,15 +97,13 @@ class MergeRequestEventHandlerTest {
 
         event.getMergeRequest().setAction("update");
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "Draft removed";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatMrUndraft(anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1);
@@ -124,7 +114,7 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleReviewerAssignment() throws JsonProcessingException {
+    void handleEvent_ShouldHandleReviewerAssignment() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
 
@@ -143,15 +133,13 @@ class MergeRequestEventHandlerTest {
 
         event.getMergeRequest().setAction("update");
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "You are reviewer";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatYouAreMrReviewerNow(anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(2);
@@ -161,7 +149,7 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldSkipReviewerAssignmentWhenReviewerIsActionUser() throws JsonProcessingException {
+    void handleEvent_ShouldSkipReviewerAssignmentWhenReviewerIsActionUser() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
 
@@ -175,17 +163,15 @@ class MergeRequestEventHandlerTest {
 
         event.getMergeRequest().setAction("update");
 
-        String payload = objectMapper.writeValueAsString(event);
-
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
     }
 
     @Test
-    void handleEvent_ShouldHandleApprovalAction() throws JsonProcessingException {
+    void handleEvent_ShouldHandleApprovalAction() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
         event.getMergeRequest().setAction("approved");
@@ -199,15 +185,13 @@ class MergeRequestEventHandlerTest {
         event.getMergeRequest().setAssignee(assignee);
         event.getMergeRequest().setAssigneeId(assignee.getId());
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "MR approved";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatMrApproved(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(2); // One for assignee, one impersonal
@@ -219,7 +203,7 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleApprovalActionWithoutAssignee() throws JsonProcessingException {
+    void handleEvent_ShouldHandleApprovalActionWithoutAssignee() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
         event.getMergeRequest().setAction("approved");
@@ -228,15 +212,13 @@ class MergeRequestEventHandlerTest {
         MergeRequestEvent.Changes changes = new MergeRequestEvent.Changes();
         event.setChanges(changes);
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "MR approved";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatMrApproved(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1);
@@ -247,7 +229,7 @@ class MergeRequestEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleMergeAction() throws JsonProcessingException {
+    void handleEvent_ShouldHandleMergeAction() {
         // Given
         MergeRequestEvent event = createBasicMergeRequestEvent();
         //event.getMergeRequest().setState("merged");
@@ -262,15 +244,13 @@ class MergeRequestEventHandlerTest {
         event.getMergeRequest().setAssignee(assignee);
         event.getMergeRequest().setAssigneeId(assignee.getId());
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "MR merged";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatMrMerged(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForMr("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(3); // One for assignee, one impersonal
@@ -283,16 +263,6 @@ class MergeRequestEventHandlerTest {
         verify(messageFormatter, times(1)).buttonsForMr("http://gitlab/test");
     }
 
-    @Test
-    void handleEvent_ShouldHandleInvalidJson() {
-        // Given
-        String invalidPayload = "invalid json";
-
-        // When & Then
-        assertThatThrownBy(() -> handler.handleEvent(invalidPayload))
-                .isInstanceOf(JsonProcessingException.class);
-    }
-
     private MergeRequestEvent createBasicMergeRequestEvent() {
         MergeRequestEvent event = new MergeRequestEvent();
 
@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -21,7 +19,6 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -34,8 +31,6 @@ class NoteEventHandlerTest {
     @Mock
     private MessageFormatter messageFormatter;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     @BeforeEach
     void setUp() {
         handler = new NoteEventHandler(messageFormatter);
@@ -53,35 +48,33 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleNonMergeRequestNotes() throws JsonProcessingException {
+    void handleNonMergeRequestNotes() {
         // Given
         NoteEvent event = createBasicNoteEvent();
         event.getNote().setNoteableType("issue"); // Not a merge request
-        String payload = objectMapper.writeValueAsString(event);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
     }
 
     @Test
-    void handleEvent_ShouldReturnEmptyListWhenMergeRequestIsNull() throws JsonProcessingException {
+    void handleEvent_ShouldReturnEmptyListWhenMergeRequestIsNull() {
         // Given
         NoteEvent event = createBasicNoteEvent();
         event.setMergeRequest(null); // No merge request data
-        String payload = objectMapper.writeValueAsString(event);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
     }
 
     @Test
-    void handleEvent_ShouldNotifyAssigneeAndReviewers() throws JsonProcessingException {
+    void handleEvent_ShouldNotifyAssigneeAndReviewers() {
         // Given
         NoteEvent event = createBasicNoteEvent();
 
@@ -100,15 +93,13 @@ class NoteEventHandlerTest {
         reviewer2.setName("Reviewer 2");
         event.getMergeRequest().setReviewers(List.of(reviewer1, reviewer2));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(3); // assignee + 2 reviewers
@@ -119,7 +110,7 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldSkipAssigneeWhenSameAsAuthor() throws JsonProcessingException {
+    void handleEvent_ShouldSkipAssigneeWhenSameAsAuthor() {
         // Given
         NoteEvent event = createBasicNoteEvent();
 
@@ -135,15 +126,13 @@ class NoteEventHandlerTest {
         reviewer.setName("Reviewer");
         event.getMergeRequest().setReviewers(List.of(reviewer));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1); // Only reviewer should be notified
@@ -151,7 +140,7 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldSkipReviewerWhenSameAsAuthor() throws JsonProcessingException {
+    void handleEvent_ShouldSkipReviewerWhenSameAsAuthor() {
         // Given
         NoteEvent event = createBasicNoteEvent();
 
@@ -167,15 +156,13 @@ class NoteEventHandlerTest {
         reviewer.setName("Reviewer");
         event.getMergeRequest().setReviewers(List.of(reviewer));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1); // Only assignee should be notified
@@ -183,7 +170,7 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleNoAssignee() throws JsonProcessingException {
+    void handleEvent_ShouldHandleNoAssignee() {
         // Given
         NoteEvent event = createBasicNoteEvent();
         event.getMergeRequest().setAssignee(null); // No assignee
@@ -194,15 +181,13 @@ class NoteEventHandlerTest {
         reviewer.setName("Reviewer");
         event.getMergeRequest().setReviewers(List.of(reviewer));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1); // Only reviewer should be notified
@@ -210,7 +195,7 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleNoReviewers() throws JsonProcessingException {
+    void handleEvent_ShouldHandleNoReviewers() {
         // Given
         NoteEvent event = createBasicNoteEvent();
         event.getMergeRequest().setReviewers(null); // No reviewers
@@ -221,15 +206,13 @@ class NoteEventHandlerTest {
         assignee.setName("Assignee");
         event.getMergeRequest().setAssignee(assignee);
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1); // Only assignee should be notified
@@ -237,7 +220,7 @@ class NoteEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleEmptyReviewersList() throws JsonProcessingException {
+    void handleEvent_ShouldHandleEmptyReviewersList() {
         // Given
         NoteEvent event = createBasicNoteEvent();
         event.getMergeRequest().setReviewers(Collections.emptyList()); // Empty reviewers list
@@ -248,31 +231,19 @@ class NoteEventHandlerTest {
         assignee.setName("Assignee");
         event.getMergeRequest().setAssignee(assignee);
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "New comment on MR";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatNewCommentForMr(anyString(), anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForNote("http://gitlab/test")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1); // Only assignee should be notified
         assertThat(result.get(0).getGitlabUserReceiverId()).isEqualTo(2L);
     }
 
-    @Test
-    void handleEvent_ShouldHandleInvalidJson() {
-        // Given
-        String invalidPayload = "invalid json";
-
-        // When & Then
-        assertThatThrownBy(() -> handler.handleEvent(invalidPayload))
-                .isInstanceOf(JsonProcessingException.class);
-    }
-
     private NoteEvent createBasicNoteEvent() {
         NoteEvent event = new NoteEvent();
 
@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -21,7 +19,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -35,8 +32,6 @@ class PipelineEventHandlerTest {
     @Mock
     private MessageFormatter messageFormatter;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     @BeforeEach
     void setUp() {
         handler = new PipelineEventHandler(messageFormatter);
@@ -54,21 +49,19 @@ class PipelineEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleFailedPipelineWithoutMergeRequest() throws JsonProcessingException {
+    void handleEvent_ShouldHandleFailedPipelineWithoutMergeRequest() {
         // Given
         PipelineEvent event = createBasicPipelineEvent();
         event.getPipeline().setStatus("failed");
         event.setMergeRequest(null);
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "Pipeline failed";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatPipelineFailed(anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForPipeline("http://gitlab/pipeline/1")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(1);
@@ -78,7 +71,7 @@ class PipelineEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleSuccessfulDeployPipeline() throws JsonProcessingException {
+    void handleEvent_ShouldHandleSuccessfulDeployPipeline() {
         // Given
         PipelineEvent event = createBasicPipelineEvent();
         event.getPipeline().setStatus("success");
@@ -88,15 +81,13 @@ class PipelineEventHandlerTest {
         deployStage.setStage("deploy");
         event.setStages(List.of(deployStage));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         String expectedMessage = "Pipeline deployed";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.formatPipelineDeployed(anyString(), anyString())).thenReturn(expectedMessage);
         when(messageFormatter.buttonsForPipeline("http://gitlab/pipeline/1")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(3);
@@ -111,7 +102,7 @@ class PipelineEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldNotHandleSuccessfulNonDeployPipeline() throws JsonProcessingException {
+    void handleEvent_ShouldNotHandleSuccessfulNonDeployPipeline() {
         // Given
         PipelineEvent event = createBasicPipelineEvent();
         event.getPipeline().setStatus("success");
@@ -121,13 +112,11 @@ class PipelineEventHandlerTest {
         buildStage.setStage("build");
         event.setStages(List.of(buildStage));
 
-        String payload = objectMapper.writeValueAsString(event);
-
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.buttonsForPipeline("http://gitlab/pipeline/1")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
@@ -136,18 +125,16 @@ class PipelineEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldNotHandleOtherPipelineStatuses() throws JsonProcessingException {
+    void handleEvent_ShouldNotHandleOtherPipelineStatuses() {
         // Given
         PipelineEvent event = createBasicPipelineEvent();
         event.getPipeline().setStatus("running");
 
-        String payload = objectMapper.writeValueAsString(event);
-
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
         when(messageFormatter.buttonsForPipeline("http://gitlab/pipeline/1")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).isEmpty();
@@ -156,16 +143,6 @@ class PipelineEventHandlerTest {
         verify(messageFormatter).buttonsForPipeline("http://gitlab/pipeline/1");
     }
 
-    @Test
-    void handleEvent_ShouldHandleInvalidJson() {
-        // Given
-        String invalidPayload = "invalid json";
-
-        // When & Then
-        assertThatThrownBy(() -> handler.handleEvent(invalidPayload))
-                .isInstanceOf(JsonProcessingException.class);
-    }
-
     private PipelineEvent createBasicPipelineEvent() {
         PipelineEvent event = new PipelineEvent();
 
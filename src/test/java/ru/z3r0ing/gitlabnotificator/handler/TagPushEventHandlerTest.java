@@ -1,7 +1,5 @@
 package ru.z3r0ing.gitlabnotificator.handler;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -18,7 +16,6 @@ import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -31,8 +28,6 @@ class TagPushEventHandlerTest {
     @Mock
     private MessageFormatter messageFormatter;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     @BeforeEach
     void setUp() {
         handler = new TagPushEventHandler(messageFormatter);
@@ -51,10 +46,9 @@ class TagPushEventHandlerTest {
     }
 
     @Test
-    void handleEvent_ShouldHandleTagPushEvent() throws JsonProcessingException {
+    void handleEvent_ShouldHandleTagPushEvent() {
         // Given
         TagPushEvent event = createBasicTagPushEvent();
-        String payload = objectMapper.writeValueAsString(event);
 
         String expectedMessage = "New tag created";
         List<InlineKeyboardButtonRow> keyboard = createMockKeyboard();
@@ -62,7 +56,7 @@ class TagPushEventHandlerTest {
         when(messageFormatter.buttonsForTag("http://gitlab/-/tags/v1.0.0")).thenReturn(keyboard);
 
         // When
-        List<HandledEvent> result = handler.handleEvent(payload);
+        List<HandledEvent> result = handler.handleEvent(event);
 
         // Then
         assertThat(result).hasSize(2);
@@ -74,16 +68,6 @@ class TagPushEventHandlerTest {
         verify(messageFormatter).buttonsForTag("http://gitlab/-/tags/v1.0.0");
     }
 
-    @Test
-    void handleEvent_ShouldHandleInvalidJson() {
-        // Given
-        String invalidPayload = "invalid json";
-
-        // When & Then
-        assertThatThrownBy(() -> handler.handleEvent(invalidPayload))
-                .isInstanceOf(JsonProcessingException.class);
-    }
-
     private TagPushEvent createBasicTagPushEvent() {
         TagPushEvent event = new TagPushEvent();
 
@@ -0,0 +1,159 @@
+package ru.z3r0ing.gitlabnotificator.journal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private WebhookJournal journal;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void replay_ShouldReturnNotCompletedWebhooksAfterRestart() throws IOException {
+        // Given
+        journal = openJournal(DataSize.ofMegabytes(1));
+        long first = journal.append("Issue Hook", "first".getBytes(UTF_8));
+        long second = journal.append(null, "second".getBytes(UTF_8));
+        long third = journal.append("Note Hook", "third".getBytes(UTF_8));
+        journal.complete(second);
+        journal.complete(first);
+        journal.close();
+
+        // When
+        journal = openJournal(DataSize.ofMegabytes(1));
+        List<JournalRecord> replayed = replayAll();
+
+        // Then
+        assertThat(replayed).hasSize(1);
+        assertThat(replayed.get(0).getSequence()).isEqualTo(third);
+        assertThat(replayed.get(0).getEventType()).isEqualTo("Note Hook");
+        assertThat(new String(replayed.get(0).getPayload(), UTF_8)).isEqualTo("third");
+        assertThat(journal.getPendingCount()).isEqualTo(1);
+    }
+
+    @Test
+    void replay_AllCompleted_ShouldReturnNothing() throws IOException {
+        // Given
+        journal = openJournal(DataSize.ofMegabytes(1));
+        journal.complete(journal.append("Issue Hook", "{}".getBytes(UTF_8)));
+        journal.close();
+
+        // When
+        journal = openJournal(DataSize.ofMegabytes(1));
+
+        // Then
+        assertThat(replayAll()).isEmpty();
+        assertThat(journal.append("Issue Hook", "{}".getBytes(UTF_8))).isEqualTo(2);
+    }
+
+    @Test
+    void append_SegmentIsFull_ShouldRotateSegment() throws IOException {
+        // Given
+        journal = openJournal(DataSize.ofBytes(64));
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            journal.append("Pipeline Hook", ("payload-" + i + "-0123456789").getBytes(UTF_8));
+        }
+        journal.close();
+        journal = openJournal(DataSize.ofBytes(64));
+
+        // Then
+        assertThat(listSegments()).hasSizeGreaterThan(1);
+        assertThat(replayAll()).extracting(JournalRecord::getSequence).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void open_TornTail_ShouldTruncateBrokenRecord() throws IOException {
+        // Given
+        journal = openJournal(DataSize.ofMegabytes(1));
+        journal.append("Issue Hook", "complete".getBytes(UTF_8));
+        journal.append("Issue Hook", "torn".getBytes(UTF_8));
+        journal.close();
+        Path segment = listSegments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        // When
+        journal = openJournal(DataSize.ofMegabytes(1));
+
+        // Then
+        assertThat(replayAll()).extracting(journalRecord -> new String(journalRecord.getPayload(), UTF_8))
+                .containsExactly("complete");
+        assertThat(journal.append("Issue Hook", "next".getBytes(UTF_8))).isEqualTo(2);
+    }
+
+    @Test
+    void deleteExpiredSegments_ShouldDeleteOnlyCompletedOldSegments() throws IOException {
+        // Given
+        journal = openJournal(DataSize.ofBytes(64));
+        List<Long> sequences = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            sequences.add(journal.append("Tag Push Hook", ("payload-" + i + "-0123456789").getBytes(UTF_8)));
+        }
+        journal.complete(sequences.get(0));
+        journal.complete(sequences.get(1));
+        for (Path segment : listSegments()) {
+            Files.setLastModifiedTime(segment, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+        }
+        int segmentsBefore = listSegments().size();
+
+        // When
+        journal.deleteExpiredSegments();
+
+        // Then
+        assertThat(listSegments()).hasSize(segmentsBefore - 2);
+    }
+
+    private WebhookJournal openJournal(DataSize segmentSize) throws IOException {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.Journal properties = appProperties.getWebhook().getJournal();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(segmentSize);
+        properties.setFsync(FsyncPolicy.ALWAYS);
+        properties.setRetention(Duration.ofDays(1));
+        WebhookJournal webhookJournal = new WebhookJournal(appProperties);
+        webhookJournal.open();
+        return webhookJournal;
+    }
+
+    private List<JournalRecord> replayAll() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(records::add);
+        return records;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".wal")).sorted().toList();
+        }
+    }
+}
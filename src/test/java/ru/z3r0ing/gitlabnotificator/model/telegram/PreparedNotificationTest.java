@@ -0,0 +1,71 @@
+package ru.z3r0ing.gitlabnotificator.model.telegram;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PreparedNotificationTest {
+
+    @Test
+    void toSendMessage_ShouldShareKeyboardBetweenChats() {
+        // Given
+        InlineKeyboardButtonRow row = new InlineKeyboardButtonRow(List.of(
+                new InlineKeyboardButtonRow.InlineKeyboardButton("Open MR", "https://gitlab/mr/1"),
+                new InlineKeyboardButtonRow.InlineKeyboardButton("Open pipeline", "https://gitlab/pipeline/1")));
+        PreparedNotification notification = PreparedNotification.of(new MessageWithKeyboard("*merged*", List.of(row)));
+
+        // When
+        SendMessage first = notification.toSendMessage("100");
+        SendMessage second = notification.toSendMessage("-200");
+
+        // Then
+        assertThat(first.getChatId()).isEqualTo("100");
+        assertThat(second.getChatId()).isEqualTo("-200");
+        assertThat(first.getText()).isEqualTo("*merged*");
+        assertThat(first.getParseMode()).isEqualTo("Markdown");
+        assertThat(second.getReplyMarkup()).isSameAs(first.getReplyMarkup());
+        InlineKeyboardMarkup markup = (InlineKeyboardMarkup) first.getReplyMarkup();
+        assertThat(markup.getKeyboard()).hasSize(1);
+        assertThat(markup.getKeyboard().get(0))
+                .extracting(button -> button.getText() + " " + button.getUrl())
+                .containsExactly("Open MR https://gitlab/mr/1", "Open pipeline https://gitlab/pipeline/1");
+    }
+
+    @Test
+    void of_EmptyKeyboard_ShouldSendWithoutReplyMarkup() {
+        // Given
+        PreparedNotification notification = PreparedNotification.of(new MessageWithKeyboard("text", List.of()));
+
+        // When
+        SendMessage message = notification.toSendMessage("100");
+
+        // Then
+        assertThat(notification.getReplyMarkup()).isNull();
+        assertThat(message.getReplyMarkup()).isNull();
+    }
+
+    @Test
+    void toPlainText_ShouldSendWithoutParseModeAndEscapes() {
+        // Given
+        InlineKeyboardButtonRow row = new InlineKeyboardButtonRow(List.of(
+                new InlineKeyboardButtonRow.InlineKeyboardButton("Open MR", "https://gitlab/mr/1")));
+        PreparedNotification notification = PreparedNotification.of(
+                new MessageWithKeyboard("*merged* by john\\_doe", List.of(row)));
+
+        // When
+        PreparedNotification plainText = notification.toPlainText();
+        SendMessage message = plainText.toSendMessage("100");
+
+        // Then
+        assertThat(notification.isMarkdown()).isTrue();
+        assertThat(plainText.isMarkdown()).isFalse();
+        assertThat(plainText).isNotEqualTo(notification);
+        assertThat(message.getText()).isEqualTo("*merged* by john_doe");
+        assertThat(message.getParseMode()).isNull();
+        assertThat(message.getReplyMarkup()).isSameAs(notification.getReplyMarkup());
+    }
+}
@@ -0,0 +1,168 @@
+package ru.z3r0ing.gitlabnotificator.outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeadLetterService;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryCallback;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.delivery.RetryPolicy;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.OutboxStatus;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.outbox.OutboxStore.Backlog;
+import ru.z3r0ing.gitlabnotificator.outbox.OutboxStore.ClaimedMessage;
+import ru.z3r0ing.gitlabnotificator.service.TelegramService;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxTest {
+
+    @Mock
+    private OutboxStore outboxStore;
+    @Mock
+    private TelegramService telegramService;
+    @Mock
+    private DeadLetterService deadLetterService;
+    @Mock
+    private DeliveryScheduler waitingScheduler;
+    private NotificationOutbox notificationOutbox;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = outboxProperties();
+        appProperties.getTelegram().getRetry().setMaxAttempts(1);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // scheduler is not started, so messages are sent right away on the poller thread
+        DeliveryScheduler deliveryScheduler = new DeliveryScheduler(appProperties, telegramService,
+                new RetryPolicy(appProperties), deadLetterService, meterRegistry);
+        notificationOutbox = new NotificationOutbox(appProperties, outboxStore, deliveryScheduler, meterRegistry);
+        lenient().when(outboxStore.getBacklog()).thenReturn(new Backlog(0, null));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        notificationOutbox.stop();
+    }
+
+    @Test
+    void enqueue_ShouldInsertMessagesWithPriority() {
+        // Given
+        List<Delivery> deliveries = List.of(delivery(100L, "first"), delivery(101L, "second"));
+
+        // When
+        notificationOutbox.enqueue(deliveries, 1);
+
+        // Then
+        verify(outboxStore).insert(deliveries, 1);
+    }
+
+    @Test
+    void poll_ShouldSendClaimedMessagesAndMarkThemDone() throws TelegramApiException {
+        // Given
+        ClaimedMessage sentMessage = new ClaimedMessage(1L, "token", delivery(100L, "sent"), 1, Instant.now());
+        ClaimedMessage failedMessage = new ClaimedMessage(2L, "token", delivery(101L, "failed"), 1, Instant.now());
+        when(outboxStore.claim(anyInt(), any()))
+                .thenReturn(List.of(sentMessage, failedMessage))
+                .thenReturn(List.of());
+        lenient().doThrow(new TelegramApiException("Bad Request"))
+                .when(telegramService).sendMarkdownMessageOrThrow(101L, payload("failed"));
+
+        // When
+        notificationOutbox.start();
+
+        // Then
+        verify(telegramService, timeout(5000)).sendMarkdownMessageOrThrow(100L, payload("sent"));
+        verify(outboxStore, timeout(5000)).complete(List.of(sentMessage), OutboxStatus.SENT);
+        verify(outboxStore, timeout(5000)).complete(List.of(failedMessage), OutboxStatus.FAILED);
+        verify(deadLetterService).store(any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void poll_MessageWaitingInScheduler_ShouldRenewItsLeaseUntilSent() {
+        // Given
+        AppProperties appProperties = outboxProperties();
+        appProperties.getOutbox().setLeaseDuration(Duration.ofMillis(30));
+        notificationOutbox = new NotificationOutbox(appProperties, outboxStore, waitingScheduler,
+                new SimpleMeterRegistry());
+        ClaimedMessage message = new ClaimedMessage(1L, "token", delivery(100L, "waiting"), 1, Instant.now());
+        when(outboxStore.claim(anyInt(), any())).thenReturn(List.of(message)).thenReturn(List.of());
+
+        // When
+        notificationOutbox.start();
+
+        // Then
+        verify(outboxStore, timeout(5000).atLeast(2)).renewLeases(eq(Set.of("token")), any());
+        ArgumentCaptor<DeliveryCallback> callbackCaptor = ArgumentCaptor.forClass(DeliveryCallback.class);
+        verify(waitingScheduler).submit(eq(message.getDelivery()), callbackCaptor.capture());
+        callbackCaptor.getValue().onComplete(true);
+        verify(outboxStore, timeout(5000)).complete(List.of(message), OutboxStatus.SENT);
+    }
+
+    @Test
+    void poll_SubmitFailed_ShouldReleaseMessage() {
+        // Given
+        notificationOutbox = new NotificationOutbox(outboxProperties(), outboxStore, waitingScheduler,
+                new SimpleMeterRegistry());
+        ClaimedMessage message = new ClaimedMessage(1L, "token", delivery(100L, "unsent"), 1, Instant.now());
+        when(outboxStore.claim(anyInt(), any())).thenReturn(List.of(message)).thenReturn(List.of());
+        doThrow(new IllegalStateException("Scheduler is stopped")).when(waitingScheduler).submit(any(), any());
+
+        // When
+        notificationOutbox.start();
+
+        // Then
+        verify(outboxStore, timeout(5000)).release(List.of(message));
+        verify(outboxStore, never()).complete(any(), any());
+    }
+
+    @Test
+    void poll_ShouldReapExpiredLeases() {
+        // Given
+        when(outboxStore.claim(anyInt(), any())).thenReturn(List.of());
+
+        // When
+        notificationOutbox.start();
+
+        // Then
+        verify(outboxStore, timeout(5000)).reapExpiredLeases(any());
+        verify(outboxStore, timeout(5000)).purgeCompleted(any());
+    }
+
+    private static AppProperties outboxProperties() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getOutbox().setEnabled(true);
+        appProperties.getOutbox().setPollInterval(Duration.ofMillis(10));
+        return appProperties;
+    }
+
+    private static Delivery delivery(long chatId, String message) {
+        return new Delivery(chatId, new MessageWithKeyboard(message, List.of()), 1);
+    }
+
+    private static PreparedNotification payload(String message) {
+        return PreparedNotification.of(new MessageWithKeyboard(message, List.of()));
+    }
+}
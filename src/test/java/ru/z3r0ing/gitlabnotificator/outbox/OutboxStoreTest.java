@@ -0,0 +1,214 @@
+package ru.z3r0ing.gitlabnotificator.outbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.OutboxStatus;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.outbox.OutboxStore.ClaimedMessage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboxStoreTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:outbox-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE notification_outbox (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    chat_id BIGINT NOT NULL,
+                    message VARCHAR(8192) NOT NULL,
+                    keyboard TEXT,
+                    priority INT NOT NULL,
+                    attempts INT NOT NULL,
+                    status VARCHAR(16) NOT NULL,
+                    claim_token VARCHAR(64),
+                    leased_until TIMESTAMP(6) WITH TIME ZONE,
+                    created_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                    completed_at TIMESTAMP(6) WITH TIME ZONE)""");
+    }
+
+    @Test
+    void claim_ShouldReturnHighestPriorityAndOldestMessagesFirst() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "low")), 2);
+        store.insert(List.of(delivery(2, "high first"), delivery(3, "high second")), 0);
+
+        // When
+        List<ClaimedMessage> claimed = store.claim(2, Instant.now().plusSeconds(60));
+
+        // Then
+        assertThat(claimed).extracting(message -> message.getDelivery().getMessageWithKeyboard().getMessage())
+                .containsExactly("high first", "high second");
+        assertThat(claimed).extracting(ClaimedMessage::getAttempts).containsOnly(1);
+        assertThat(store.getBacklog().getPending()).isEqualTo(1);
+    }
+
+    @Test
+    void claim_WithSkipLocked_ShouldNotReturnClaimedMessagesAgain() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager, true);
+        store.insert(List.of(delivery(1, "first"), delivery(2, "second"), delivery(3, "third")), 1);
+
+        // When
+        List<ClaimedMessage> firstBatch = store.claim(2, Instant.now().plusSeconds(60));
+        List<ClaimedMessage> secondBatch = store.claim(2, Instant.now().plusSeconds(60));
+        List<ClaimedMessage> thirdBatch = store.claim(2, Instant.now().plusSeconds(60));
+
+        // Then
+        assertThat(firstBatch).hasSize(2);
+        assertThat(secondBatch).extracting(message -> message.getDelivery().getChatId()).containsExactly(3L);
+        assertThat(thirdBatch).isEmpty();
+    }
+
+    @Test
+    void claim_ShouldKeepKeyboard() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        List<InlineKeyboardButtonRow> keyboard = List.of(new InlineKeyboardButtonRow(
+                List.of(new InlineKeyboardButtonRow.InlineKeyboardButton("Open", "https://gitlab.example.com"))));
+        Delivery delivery = new Delivery(100L, new MessageWithKeyboard("text", keyboard), 1);
+        store.insert(List.of(delivery), 1);
+
+        // When
+        List<ClaimedMessage> claimed = store.claim(10, Instant.now().plusSeconds(60));
+
+        // Then
+        assertThat(claimed).extracting(ClaimedMessage::getDelivery).containsExactly(delivery);
+    }
+
+    @Test
+    void claim_MergedKeyboardOverVarcharLimit_ShouldKeepKeyboard() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        List<InlineKeyboardButtonRow> keyboard = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            keyboard.add(new InlineKeyboardButtonRow(List.of(new InlineKeyboardButtonRow.InlineKeyboardButton(
+                    "Open MR " + i, "https://gitlab.example.com/group/project/-/merge_requests/" + i))));
+        }
+        Delivery delivery = new Delivery(100L, new MessageWithKeyboard("text", keyboard), 1);
+        store.insert(List.of(delivery), 1);
+
+        // When
+        List<ClaimedMessage> claimed = store.claim(10, Instant.now().plusSeconds(60));
+
+        // Then
+        assertThat(claimed).extracting(ClaimedMessage::getDelivery).containsExactly(delivery);
+    }
+
+    @Test
+    void reapExpiredLeases_ShouldReturnMessagesToPending() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "expired"), delivery(2, "leased")), 1);
+        Instant now = Instant.now();
+        store.claim(1, now.minusSeconds(1));
+        store.claim(1, now.plusSeconds(60));
+
+        // When
+        int reaped = store.reapExpiredLeases(now);
+        List<ClaimedMessage> claimedAgain = store.claim(10, now.plusSeconds(60));
+
+        // Then
+        assertThat(reaped).isEqualTo(1);
+        assertThat(claimedAgain).hasSize(1);
+        assertThat(claimedAgain.get(0).getDelivery().getChatId()).isEqualTo(1L);
+        assertThat(claimedAgain.get(0).getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    void complete_ShouldNotReapCompletedMessagesAndPurgeThemAfterRetention() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "sent"), delivery(2, "failed")), 1);
+        Instant now = Instant.now();
+        List<ClaimedMessage> claimed = store.claim(10, now.minusSeconds(1));
+
+        // When
+        store.complete(List.of(claimed.get(0)), OutboxStatus.SENT);
+        store.complete(List.of(claimed.get(1)), OutboxStatus.FAILED);
+
+        // Then
+        assertThat(store.reapExpiredLeases(now)).isZero();
+        assertThat(store.getBacklog().getPending()).isZero();
+        assertThat(store.getBacklog().getOldestCreatedAt()).isNull();
+        assertThat(store.purgeCompleted(now.minus(Duration.ofDays(1)))).isZero();
+        assertThat(store.purgeCompleted(Instant.now().plusSeconds(1))).isEqualTo(2);
+    }
+
+    @Test
+    void complete_LeaseExpiredAndClaimedAgain_ShouldNotCompleteNewClaim() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "slow")), 1);
+        Instant now = Instant.now();
+        ClaimedMessage expired = store.claim(1, now.minusSeconds(1)).get(0);
+        store.reapExpiredLeases(now);
+        ClaimedMessage claimedAgain = store.claim(1, now.plusSeconds(60)).get(0);
+
+        // When
+        int completedExpired = store.complete(List.of(expired), OutboxStatus.FAILED);
+        store.release(List.of(expired));
+
+        // Then
+        assertThat(completedExpired).isZero();
+        assertThat(store.reapExpiredLeases(now)).isZero();
+        assertThat(store.getBacklog().getPending()).isZero();
+        assertThat(store.complete(List.of(claimedAgain), OutboxStatus.SENT)).isEqualTo(1);
+    }
+
+    @Test
+    void renewLeases_ShouldKeepMessagesClaimed() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "waiting")), 1);
+        Instant now = Instant.now();
+        ClaimedMessage claimed = store.claim(1, now.minusSeconds(1)).get(0);
+
+        // When
+        store.renewLeases(List.of(claimed.getClaimToken()), now.plusSeconds(60));
+
+        // Then
+        assertThat(store.reapExpiredLeases(now)).isZero();
+        assertThat(store.claim(10, now.plusSeconds(60))).isEmpty();
+    }
+
+    @Test
+    void release_ShouldReturnMessagesToPending() {
+        // Given
+        OutboxStore store = new OutboxStore(jdbcTemplate, transactionManager);
+        store.insert(List.of(delivery(1, "unsent")), 1);
+        Instant leasedUntil = Instant.now().plusSeconds(60);
+        ClaimedMessage claimed = store.claim(1, leasedUntil).get(0);
+
+        // When
+        store.release(List.of(claimed));
+
+        // Then
+        List<ClaimedMessage> claimedAgain = store.claim(10, leasedUntil);
+        assertThat(claimedAgain).extracting(ClaimedMessage::getId).containsExactly(claimed.getId());
+        assertThat(claimedAgain.get(0).getAttempts()).isEqualTo(2);
+    }
+
+    private static Delivery delivery(long chatId, String message) {
+        return new Delivery(chatId, new MessageWithKeyboard(message, List.of()), 1);
+    }
+}
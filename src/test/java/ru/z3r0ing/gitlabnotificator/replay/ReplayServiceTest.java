@@ -0,0 +1,114 @@
+package ru.z3r0ing.gitlabnotificator.replay;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.IssueEvent;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.service.DeliverySink;
+import ru.z3r0ing.gitlabnotificator.service.GitlabEventService;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ReplayServiceTest {
+
+    private static final String NDJSON = """
+            {"eventType": "Issue Hook", "payload": {"object_kind": "issue", "object_attributes": {"title": "First"}}}
+
+            {"payload": {"object_attributes": {"title": "Second"}}, "eventType": "Issue Hook"}
+            {"eventType": "Unknown Hook", "payload": {}}
+            {"eventType": "Issue Hook", "payload": [1, 2]}
+            not json
+            """;
+
+    @Mock
+    private GitlabEventService gitlabEventService;
+
+    private ReplayService replayService;
+
+    @BeforeEach
+    void setUp() {
+        replayService = new ReplayService(new GitlabEventParser(), gitlabEventService);
+    }
+
+    @Test
+    void replay_ShouldProcessLinesAndReportResults() throws IOException {
+        // Given
+        Delivery delivery = new Delivery(100L, new MessageWithKeyboard("test", Collections.emptyList()), 1);
+        deliverToSink(new long[][]{{100L, 101L}}, List.of(delivery));
+
+        // When
+        ReplayReport report = replayService.replay(stream(NDJSON), false, 2);
+
+        // Then
+        assertThat(report.getLines()).isEqualTo(5);
+        assertThat(report.getProcessed()).isEqualTo(2);
+        assertThat(report.getSkipped()).isEqualTo(1);
+        assertThat(report.getFailed()).isEqualTo(2);
+        assertThat(report.getNotifications()).isEqualTo(2);
+        assertThat(report.getMessagesSent()).isEqualTo(2);
+        assertThat(report.getSendsSaved()).isEqualTo(2);
+        assertThat(report.getStages()).containsOnlyKeys("parse", "process", "send");
+        assertThat(report.getStages().get("parse").getCount()).isEqualTo(2);
+        assertThat(report.getStages().get("process").getCount()).isEqualTo(2);
+        verify(gitlabEventService).handleGitlabEvent(eq(EventType.ISSUE),
+                argThat(event -> "Second".equals(((IssueEvent) event).getIssue().getTitle())),
+                argThat(sink -> !sink.isDryRun()));
+        verify(gitlabEventService, times(2)).send(eq(EventType.ISSUE), any(), eq(List.of(delivery)));
+    }
+
+    @Test
+    void replay_DryRun_ShouldNotSendNotifications() throws IOException {
+        // Given
+        deliverToSink(new long[][]{{100L}},
+                List.of(new Delivery(100L, new MessageWithKeyboard("test", Collections.emptyList()), 1)));
+
+        // When
+        ReplayReport report = replayService.replay(stream(NDJSON), true, 1);
+
+        // Then
+        assertThat(report.isDryRun()).isTrue();
+        assertThat(report.getNotifications()).isEqualTo(2);
+        assertThat(report.getMessagesSent()).isZero();
+        assertThat(report.getStages().get("send").getCount()).isZero();
+        verify(gitlabEventService, never()).send(any(), any(), anyList());
+        verify(gitlabEventService, times(2)).handleGitlabEvent(eq(EventType.ISSUE), any(),
+                argThat(DeliverySink::isDryRun));
+    }
+
+    /**
+     * Makes the pipeline pass the messages of every webhook to the sink of the replay
+     */
+    private void deliverToSink(long[][] recipients, List<Delivery> deliveries) {
+        doAnswer(invocation -> {
+            invocation.<DeliverySink>getArgument(2)
+                    .deliver(invocation.getArgument(0), invocation.getArgument(1), recipients, deliveries);
+            return null;
+        }).when(gitlabEventService).handleGitlabEvent(any(EventType.class), any(), any(DeliverySink.class));
+    }
+
+    private static InputStream stream(String payload) {
+        return new ByteArrayInputStream(payload.getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.model.telegram.InlineKeyboardButtonRow;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeliveryPlannerTest {
+
+    private final InlineKeyboardButtonRow mrButton = new InlineKeyboardButtonRow(
+            List.of(new InlineKeyboardButtonRow.InlineKeyboardButton("Open MR", "https://gitlab/mr/1")));
+    private final InlineKeyboardButtonRow pipelineButton = new InlineKeyboardButtonRow(
+            List.of(new InlineKeyboardButtonRow.InlineKeyboardButton("Open pipeline", "https://gitlab/pipeline/1")));
+
+    private AppProperties appProperties;
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        appProperties = new AppProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void plan_SameMessageForChatTwice_ShouldSendItOnce() {
+        // Given
+        MessageWithKeyboard merged = new MessageWithKeyboard("merged", List.of(mrButton));
+        List<HandledEvent> handledEvents = List.of(new HandledEvent(1L, merged), new HandledEvent(UserRole.LEAD, merged));
+
+        // When
+        List<Delivery> deliveries = planner().plan(handledEvents, new long[][]{{100L}, {100L, 101L}});
+
+        // Then
+        assertThat(deliveries).containsExactly(
+                new Delivery(100L, merged, 1),
+                new Delivery(101L, merged, 1));
+        assertThat(savedSends("duplicate")).isEqualTo(1);
+        assertThat(savedSends("merged")).isZero();
+    }
+
+    @Test
+    void plan_RoleBroadcast_ShouldShareOnePayload() {
+        // Given
+        MessageWithKeyboard deployed = new MessageWithKeyboard("deployed", List.of(pipelineButton));
+        List<HandledEvent> handledEvents = List.of(new HandledEvent(UserRole.DEV, deployed));
+
+        // When
+        List<Delivery> deliveries = planner().plan(handledEvents, new long[][]{{100L, 101L, 102L}});
+
+        // Then
+        assertThat(deliveries).extracting(Delivery::getChatId).containsExactly(100L, 101L, 102L);
+        assertThat(deliveries.get(1).getPayload()).isSameAs(deliveries.get(0).getPayload());
+        assertThat(deliveries.get(2).getPayload()).isSameAs(deliveries.get(0).getPayload());
+    }
+
+    @Test
+    void plan_DifferentMessagesForChat_ShouldMergeThem() {
+        // Given
+        List<HandledEvent> handledEvents = List.of(
+                new HandledEvent(1L, new MessageWithKeyboard("first", List.of(mrButton))),
+                new HandledEvent(UserRole.DEV, new MessageWithKeyboard("second", List.of(mrButton, pipelineButton))));
+
+        // When
+        List<Delivery> deliveries = planner().plan(handledEvents, new long[][]{{100L}, {100L}});
+
+        // Then
+        assertThat(deliveries).containsExactly(new Delivery(100L,
+                new MessageWithKeyboard("first\n\nsecond", List.of(mrButton, pipelineButton)), 2));
+        assertThat(savedSends("merged")).isEqualTo(1);
+    }
+
+    @Test
+    void plan_MergedMessageTooLong_ShouldSplitIt() {
+        // Given
+        appProperties.getNotifications().setMaxMessageLength(13);
+        List<HandledEvent> handledEvents = List.of(
+                new HandledEvent(1L, new MessageWithKeyboard("first", null)),
+                new HandledEvent(2L, new MessageWithKeyboard("second", null)),
+                new HandledEvent(3L, new MessageWithKeyboard("third", null)));
+
+        // When
+        List<Delivery> deliveries = planner().plan(handledEvents, new long[][]{{100L}, {100L}, {100L}});
+
+        // Then
+        assertThat(deliveries).extracting(delivery -> delivery.getMessageWithKeyboard().getMessage())
+                .containsExactly("first\n\nsecond", "third");
+        assertThat(savedSends("merged")).isEqualTo(1);
+    }
+
+    @Test
+    void plan_MergeDisabled_ShouldOnlyRemoveDuplicates() {
+        // Given
+        appProperties.getNotifications().setMergeMessages(false);
+        MessageWithKeyboard first = new MessageWithKeyboard("first", null);
+        MessageWithKeyboard second = new MessageWithKeyboard("second", null);
+        List<HandledEvent> handledEvents = List.of(
+                new HandledEvent(1L, first), new HandledEvent(2L, second), new HandledEvent(UserRole.LEAD, first));
+
+        // When
+        List<Delivery> deliveries = planner().plan(handledEvents, new long[][]{{100L}, {100L}, {100L}});
+
+        // Then
+        assertThat(deliveries).containsExactly(new Delivery(100L, first, 1), new Delivery(100L, second, 1));
+        assertThat(savedSends("duplicate")).isEqualTo(1);
+    }
+
+    private DeliveryPlanner planner() {
+        return new DeliveryPlanner(appProperties, meterRegistry);
+    }
+
+    private double savedSends(String reason) {
+        return meterRegistry.get("gitlab.notification.sends.saved").tag("reason", reason).counter().count();
+    }
+}
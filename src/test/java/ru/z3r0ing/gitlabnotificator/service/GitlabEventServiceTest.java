@@ -1,28 +1,42 @@
 package ru.z3r0ing.gitlabnotificator.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.context.ApplicationContext;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import ru.z3r0ing.gitlabnotificator.coalescing.NotificationCoalescer;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeadLetterService;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.delivery.RetryPolicy;
 import ru.z3r0ing.gitlabnotificator.handler.EventHandler;
+import ru.z3r0ing.gitlabnotificator.handler.EventHandlerRegistry;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
 import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
 import ru.z3r0ing.gitlabnotificator.model.UserRole;
-import ru.z3r0ing.gitlabnotificator.model.entity.UserMapping;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
 import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
 import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
-import ru.z3r0ing.gitlabnotificator.repository.UserMappingRepository;
+import ru.z3r0ing.gitlabnotificator.model.telegram.PreparedNotification;
+import ru.z3r0ing.gitlabnotificator.outbox.NotificationOutbox;
+import ru.z3r0ing.gitlabnotificator.status.PipelineStatusNotifier;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
 
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -34,127 +48,275 @@ import static org.mockito.Mockito.when;
 @ExtendWith(MockitoExtension.class)
 class GitlabEventServiceTest {
 
+    private static final GitlabEventParser EVENT_PARSER = new GitlabEventParser();
+
     @Mock
     private TelegramService telegramService;
     @Mock
-    private UserMappingRepository userMappingRepository;
+    private RecipientIndex recipientIndex;
+    @Mock
+    private EventHandlerRegistry eventHandlerRegistry;
+    @Mock
+    private DeadLetterService deadLetterService;
+    @Mock
+    private NotificationOutbox notificationOutbox;
     @Mock
-    private ApplicationContext applicationContext;
-    @InjectMocks
+    private NotificationCoalescer notificationCoalescer;
+    @Mock
+    private PipelineStatusNotifier pipelineStatusNotifier;
+    private SimpleMeterRegistry meterRegistry;
     private GitlabEventService gitlabEventService;
 
-    @Test
-    void handleEvent_UnsupportedGitlabEventType_ShouldLogWarning() {
-        String unsupportedEventType = "UNSUPPORTED_EVENT";
-        String payload = "{}";
-
-        gitlabEventService.handleGitlabEvent(unsupportedEventType, payload);
-
-        verifyNoInteractions(telegramService);
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getMetrics().getProjects().add("Tagged");
+        meterRegistry = new SimpleMeterRegistry();
+        // scheduler is not started, so messages are sent right away
+        DeliveryScheduler deliveryScheduler = new DeliveryScheduler(appProperties, telegramService,
+                new RetryPolicy(appProperties), deadLetterService, meterRegistry);
+        gitlabEventService = new GitlabEventService(recipientIndex, eventHandlerRegistry,
+                new DeliveryPlanner(appProperties, meterRegistry), deliveryScheduler, notificationOutbox,
+                new WebhookLaneClassifier(), notificationCoalescer, pipelineStatusNotifier,
+                appProperties, meterRegistry);
     }
 
     @Test
     void handleEvent_SupportedGitlabEventType_NoHandlers_ShouldDoNothing() {
-        String eventType = EventType.ISSUE.getRequestHeader();
-        String payload = "{}";
-        when(applicationContext.getBeansOfType(EventHandler.class)).thenReturn(Collections.emptyMap());
+        EventType eventType = EventType.ISSUE;
+        AbstractEvent event = event(eventType, "{}");
+        when(eventHandlerRegistry.getHandlers(EventType.ISSUE)).thenReturn(Collections.emptyList());
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        gitlabEventService.handleGitlabEvent(eventType, event);
 
         verifyNoInteractions(telegramService);
     }
 
     @Test
-    void handleGitlabEvent_HandlerThrowsJsonProcessingException_ShouldLogError() throws JsonProcessingException {
-        String eventType = EventType.ISSUE.getRequestHeader();
-        String payload = "invalid_json";
+    void handleEvent_ValidGitlabEventHandler_ShouldSendNotifications() throws TelegramApiException {
+        EventType eventType = EventType.ISSUE;
+        AbstractEvent event = event(eventType, "{}");
+        HandledEvent handledEvent = new HandledEvent(UserRole.LEAD, new MessageWithKeyboard("test", Collections.emptyList()));
         EventHandler mockHandler = mock(EventHandler.class);
-        when(mockHandler.doesSupportSuchEvent(EventType.ISSUE)).thenReturn(true);
-        when(mockHandler.handleEvent(payload)).thenThrow(JsonProcessingException.class);
-        when(applicationContext.getBeansOfType(EventHandler.class))
-                .thenReturn(Collections.singletonMap("issueHandler", mockHandler));
+        when(mockHandler.handleEvent(any())).thenReturn(Collections.singletonList(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.ISSUE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{{100L}});
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        gitlabEventService.handleGitlabEvent(eventType, event);
 
-        verifyNoInteractions(telegramService);
+        verify(telegramService, times(1))
+                .sendMarkdownMessageOrThrow(eq(100L), eq(payload("test")));
     }
 
     @Test
-    void handleEvent_ValidGitlabEventHandler_ShouldSendNotifications() throws JsonProcessingException {
-        String eventType = EventType.ISSUE.getRequestHeader();
-        String payload = "{}";
+    void handleGitlabEvent_ShouldRecordStageMetrics() {
+        // Given
         HandledEvent handledEvent = new HandledEvent(UserRole.LEAD, new MessageWithKeyboard("test", Collections.emptyList()));
         EventHandler mockHandler = mock(EventHandler.class);
-        when(mockHandler.doesSupportSuchEvent(EventType.ISSUE)).thenReturn(true);
-        when(mockHandler.handleEvent(payload)).thenReturn(Collections.singletonList(handledEvent));
-        when(applicationContext.getBeansOfType(EventHandler.class))
-                .thenReturn(Collections.singletonMap("issueHandler", mockHandler));
-        when(userMappingRepository.findAllByRole(UserRole.LEAD))
-                .thenReturn(Collections.singletonList(new UserMapping(1L, 100L, 200L, UserRole.LEAD)));
+        when(mockHandler.handleEvent(any())).thenReturn(Collections.singletonList(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.ISSUE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{{100L}});
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        // When
+        gitlabEventService.handleGitlabEvent(EventType.ISSUE,
+                event(EventType.ISSUE, "{\"project\": {\"name\": \"Tagged\"}}"));
+        gitlabEventService.handleGitlabEvent(EventType.ISSUE,
+                event(EventType.ISSUE, "{\"project\": {\"name\": \"Another\"}}"));
 
-        verify(telegramService, times(1))
-                .sendMarkdownMessage(eq(100L), eq("test"), anyList());
+        // Then
+        assertThat(meterRegistry.get("gitlab.notification.handle").tag("event", "issue").timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("gitlab.notification.resolve").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("gitlab.notification.events").tag("project", "Tagged").tag("result", "notified")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gitlab.notification.events").tag("project", "other").tag("result", "notified")
+                .counter().count()).isEqualTo(1);
     }
 
     @Test
-    void handleGitlabEvent_UserMappingNotFound_ShouldLogWarning() throws JsonProcessingException {
-        String eventType = EventType.NOTE.getRequestHeader();
-        String payload = "{}";
+    void handleGitlabEvent_UserMappingNotFound_ShouldLogWarning() throws TelegramApiException {
+        EventType eventType = EventType.NOTE;
+        AbstractEvent event = event(eventType, "{}");
         HandledEvent handledEvent = new HandledEvent(999L, new MessageWithKeyboard("test", Collections.emptyList()));
         EventHandler mockHandler = mock(EventHandler.class);
-        when(mockHandler.doesSupportSuchEvent(EventType.NOTE)).thenReturn(true);
-        when(mockHandler.handleEvent(payload)).thenReturn(Collections.singletonList(handledEvent));
-        when(applicationContext.getBeansOfType(EventHandler.class))
-                .thenReturn(Collections.singletonMap("noteHandler", mockHandler));
-        when(userMappingRepository.findByGitlabUserId(999L)).thenReturn(Optional.empty());
+        when(mockHandler.handleEvent(any())).thenReturn(Collections.singletonList(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.NOTE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{RecipientIndex.NO_RECIPIENTS});
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        gitlabEventService.handleGitlabEvent(eventType, event);
 
-        verify(telegramService, never()).sendMarkdownMessage(anyLong(), anyString(), anyList());
+        verify(telegramService, never()).sendMarkdownMessageOrThrow(anyLong(), any(PreparedNotification.class));
     }
 
     @Test
-    void handleGitlabEvent_WithUserReceiver_ShouldSendToSpecificUser() throws JsonProcessingException {
-        String eventType = EventType.NOTE.getRequestHeader();
-        String payload = "{}";
+    void handleGitlabEvent_WithUserReceiver_ShouldSendToSpecificUser() throws TelegramApiException {
+        EventType eventType = EventType.NOTE;
+        AbstractEvent event = event(eventType, "{}");
         HandledEvent handledEvent = new HandledEvent(100L, new MessageWithKeyboard("test", Collections.emptyList()));
         EventHandler mockHandler = mock(EventHandler.class);
-        when(mockHandler.doesSupportSuchEvent(EventType.NOTE)).thenReturn(true);
-        when(mockHandler.handleEvent(payload)).thenReturn(Collections.singletonList(handledEvent));
-        when(applicationContext.getBeansOfType(EventHandler.class))
-                .thenReturn(Collections.singletonMap("noteHandler", mockHandler));
-        UserMapping userMapping = new UserMapping(1L, 200L, 100L, UserRole.DEV);
-        when(userMappingRepository.findByGitlabUserId(100L)).thenReturn(Optional.of(userMapping));
+        when(mockHandler.handleEvent(any())).thenReturn(Collections.singletonList(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.NOTE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{{200L}});
 
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        gitlabEventService.handleGitlabEvent(eventType, event);
 
         verify(telegramService, times(1))
-                .sendMarkdownMessage(eq(200L), eq("test"), anyList());
+                .sendMarkdownMessageOrThrow(eq(200L), eq(payload("test")));
     }
 
     @Test
-    void handleGitlabEvent_WithoutUserReceiver_ShouldSendToLeads() throws JsonProcessingException {
-        String eventType = EventType.ISSUE.getRequestHeader();
-        String payload = "{}";
+    void handleGitlabEvent_WithoutUserReceiver_ShouldSendToLeads() throws TelegramApiException {
+        EventType eventType = EventType.ISSUE;
+        AbstractEvent event = event(eventType, "{}");
         HandledEvent handledEvent = new HandledEvent(UserRole.LEAD, new MessageWithKeyboard("test", Collections.emptyList()));
         EventHandler mockHandler = mock(EventHandler.class);
-        when(mockHandler.doesSupportSuchEvent(EventType.ISSUE)).thenReturn(true);
-        when(mockHandler.handleEvent(payload)).thenReturn(Collections.singletonList(handledEvent));
-        when(applicationContext.getBeansOfType(EventHandler.class))
-                .thenReturn(Collections.singletonMap("issueHandler", mockHandler));
-        List<UserMapping> leads = Arrays.asList(
-                new UserMapping(1L, 100L, 200L, UserRole.LEAD),
-                new UserMapping(2L, 101L, 201L, UserRole.LEAD)
-        );
-        when(userMappingRepository.findAllByRole(UserRole.LEAD)).thenReturn(leads);
-
-        gitlabEventService.handleGitlabEvent(eventType, payload);
+        when(mockHandler.handleEvent(any())).thenReturn(Collections.singletonList(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.ISSUE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{{100L, 101L}});
+
+        gitlabEventService.handleGitlabEvent(eventType, event);
 
         verify(telegramService, times(1))
-                .sendMarkdownMessage(eq(100L), eq("test"), anyList());
+                .sendMarkdownMessageOrThrow(eq(100L), eq(payload("test")));
         verify(telegramService, times(1))
-                .sendMarkdownMessage(eq(101L), eq("test"), anyList());
+                .sendMarkdownMessageOrThrow(eq(101L), eq(payload("test")));
+    }
+
+    @Test
+    void handleGitlabEvent_SeveralNotifications_ShouldResolveRecipientsOnce() throws TelegramApiException {
+        EventType eventType = EventType.NOTE;
+        AbstractEvent event = event(eventType, "{}");
+        HandledEvent toAssignee = new HandledEvent(100L, new MessageWithKeyboard("assignee", Collections.emptyList()));
+        HandledEvent toReviewer = new HandledEvent(101L, new MessageWithKeyboard("reviewer", Collections.emptyList()));
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(toAssignee, toReviewer));
+        when(eventHandlerRegistry.getHandlers(EventType.NOTE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(toAssignee, toReviewer))).thenReturn(new long[][]{{200L}, {201L}});
+
+        gitlabEventService.handleGitlabEvent(eventType, event);
+
+        verify(recipientIndex, times(1)).resolve(anyList());
+        verify(telegramService).sendMarkdownMessageOrThrow(eq(200L), eq(payload("assignee")));
+        verify(telegramService).sendMarkdownMessageOrThrow(eq(201L), eq(payload("reviewer")));
+    }
+
+    @Test
+    void handleGitlabEvent_LeadIsAlsoAssignee_ShouldSendMessageOnce() throws TelegramApiException {
+        EventType eventType = EventType.MERGE_REQUEST;
+        AbstractEvent event = event(eventType, "{}");
+        MessageWithKeyboard merged = new MessageWithKeyboard("merged", Collections.emptyList());
+        HandledEvent toAssignee = new HandledEvent(100L, merged);
+        HandledEvent toLeads = new HandledEvent(UserRole.LEAD, merged);
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(toAssignee, toLeads));
+        when(eventHandlerRegistry.getHandlers(EventType.MERGE_REQUEST)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(toAssignee, toLeads))).thenReturn(new long[][]{{200L}, {200L, 201L}});
+
+        gitlabEventService.handleGitlabEvent(eventType, event);
+
+        verify(telegramService, times(1)).sendMarkdownMessageOrThrow(eq(200L), eq(payload("merged")));
+        verify(telegramService, times(1)).sendMarkdownMessageOrThrow(eq(201L), eq(payload("merged")));
+    }
+
+    @Test
+    void handleGitlabEvent_OutboxEnabled_ShouldEnqueueInsteadOfSending() throws TelegramApiException {
+        EventType eventType = EventType.NOTE;
+        AbstractEvent event = event(eventType, "{}");
+        MessageWithKeyboard comment = new MessageWithKeyboard("comment", Collections.emptyList());
+        HandledEvent handledEvent = new HandledEvent(100L, comment);
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.NOTE)).thenReturn(List.of(mockHandler));
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(new long[][]{{200L}});
+        when(notificationOutbox.isEnabled()).thenReturn(true);
+
+        gitlabEventService.handleGitlabEvent(eventType, event);
+
+        verify(notificationOutbox).enqueue(List.of(new Delivery(200L, comment, 1)), WebhookLane.LOW.ordinal());
+        verify(telegramService, never()).sendMarkdownMessageOrThrow(anyLong(), any(PreparedNotification.class));
+    }
+
+    @Test
+    void handleGitlabEvent_Coalesced_ShouldNotSendRightAway() throws TelegramApiException {
+        EventType eventType = EventType.NOTE;
+        AbstractEvent event = event(eventType, "{}");
+        HandledEvent handledEvent = new HandledEvent(100L, new MessageWithKeyboard("comment", Collections.emptyList()));
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(handledEvent));
+        when(eventHandlerRegistry.getHandlers(EventType.NOTE)).thenReturn(List.of(mockHandler));
+        long[][] recipients = {{200L}};
+        when(recipientIndex.resolve(List.of(handledEvent))).thenReturn(recipients);
+        when(notificationCoalescer.offer(eq(EventType.NOTE), any(), eq(List.of(handledEvent)), eq(recipients)))
+                .thenReturn(true);
+
+        gitlabEventService.handleGitlabEvent(eventType, event);
+
+        verify(telegramService, never()).sendMarkdownMessageOrThrow(anyLong(), any(PreparedNotification.class));
+        verifyNoInteractions(notificationOutbox);
+    }
+
+    @Test
+    void handleGitlabEvent_PipelineStatusEnabled_ShouldUpdateStatusAndNotify() throws TelegramApiException {
+        PipelineEvent pipelineEvent = new PipelineEvent();
+        HandledEvent status = new HandledEvent(UserRole.LEAD, new MessageWithKeyboard("running", Collections.emptyList()));
+        HandledEvent failed = new HandledEvent(100L, new MessageWithKeyboard("failed", Collections.emptyList()));
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(failed));
+        when(eventHandlerRegistry.getHandlers(EventType.PIPELINE)).thenReturn(List.of(mockHandler));
+        when(pipelineStatusNotifier.isEnabled()).thenReturn(true);
+        when(pipelineStatusNotifier.render(pipelineEvent)).thenReturn(List.of(status));
+        long[][] statusRecipients = {{300L}};
+        when(recipientIndex.resolve(List.of(status))).thenReturn(statusRecipients);
+        when(recipientIndex.resolve(List.of(failed))).thenReturn(new long[][]{{200L}});
+
+        gitlabEventService.handleGitlabEvent(EventType.PIPELINE, pipelineEvent);
+
+        verify(pipelineStatusNotifier).update(pipelineEvent, List.of(status), statusRecipients);
+        verify(telegramService).sendMarkdownMessageOrThrow(eq(200L), eq(payload("failed")));
+    }
+
+    @Test
+    void handleGitlabEvent_DryRunSink_ShouldPassDeliveriesToSinkOnly() throws TelegramApiException {
+        PipelineEvent pipelineEvent = new PipelineEvent();
+        HandledEvent failed = new HandledEvent(100L, new MessageWithKeyboard("failed", Collections.emptyList()));
+        EventHandler mockHandler = mock(EventHandler.class);
+        when(mockHandler.handleEvent(any())).thenReturn(List.of(failed));
+        when(eventHandlerRegistry.getHandlers(EventType.PIPELINE)).thenReturn(List.of(mockHandler));
+        when(pipelineStatusNotifier.isEnabled()).thenReturn(true);
+        long[][] recipients = {{200L}};
+        when(recipientIndex.resolve(List.of(failed))).thenReturn(recipients);
+        List<List<Delivery>> sunk = new ArrayList<>();
+        DeliverySink dryRun = new DeliverySink() {
+            @Override
+            public void deliver(EventType eventType, AbstractEvent event, long[][] chatIds, List<Delivery> deliveries) {
+                sunk.add(deliveries);
+            }
+
+            @Override
+            public boolean isDryRun() {
+                return true;
+            }
+        };
+
+        gitlabEventService.handleGitlabEvent(EventType.PIPELINE, pipelineEvent, dryRun);
+
+        assertThat(sunk).containsExactly(List.of(new Delivery(200L, failed.getMessageWithKeyboard(), 1)));
+        verify(pipelineStatusNotifier, never()).update(any(), anyList(), any());
+        verifyNoInteractions(notificationCoalescer, notificationOutbox);
+        verify(telegramService, never()).sendMarkdownMessageOrThrow(anyLong(), any(PreparedNotification.class));
+        assertThat(meterRegistry.get("gitlab.notification.events").tag("event", "pipeline")
+                .tag("result", "notified").counter().count()).isEqualTo(1);
+    }
+
+    private static AbstractEvent event(EventType eventType, String payload) {
+        try {
+            return EVENT_PARSER.parse(eventType, payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static PreparedNotification payload(String message) {
+        return PreparedNotification.of(new MessageWithKeyboard(message, Collections.emptyList()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,207 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.RecipientMapping;
+import ru.z3r0ing.gitlabnotificator.model.telegram.MessageWithKeyboard;
+import ru.z3r0ing.gitlabnotificator.repository.UserMappingRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RecipientIndexTest {
+
+    @Mock
+    private UserMappingRepository userMappingRepository;
+
+    private AppProperties appProperties;
+    private RecipientIndex recipientIndex;
+
+    @BeforeEach
+    void setUp() {
+        appProperties = new AppProperties();
+        recipientIndex = new RecipientIndex(appProperties, userMappingRepository);
+    }
+
+    @Test
+    void refresh_ShouldIndexUsersAndRoles() {
+        // Given
+        when(userMappingRepository.findAllProjectedBy()).thenReturn(List.of(
+                mapping(100L, 200L, UserRole.LEAD),
+                mapping(101L, 201L, UserRole.LEAD),
+                mapping(102L, 202L, UserRole.DEV),
+                mapping(103L, 0L, null)));
+
+        // When
+        recipientIndex.refresh();
+
+        // Then
+        assertThat(recipientIndex.size()).isEqualTo(4);
+        assertThat(recipientIndex.findByGitlabUserId(201L)).containsExactly(101L);
+        assertThat(recipientIndex.findByGitlabUserId(0L)).containsExactly(103L);
+        assertThat(recipientIndex.findByGitlabUserId(999L)).isSameAs(RecipientIndex.NO_RECIPIENTS);
+        assertThat(recipientIndex.findByRole(UserRole.LEAD)).containsExactly(100L, 101L);
+        assertThat(recipientIndex.findByRole(UserRole.DEV)).containsExactly(102L);
+    }
+
+    @Test
+    void findByGitlabUserId_ShouldReturnSameArrayForRepeatedLookups() {
+        // Given
+        when(userMappingRepository.findAllProjectedBy()).thenReturn(List.of(mapping(100L, 200L, UserRole.DEV)));
+        recipientIndex.refresh();
+
+        // When
+        long[] first = recipientIndex.findByGitlabUserId(200L);
+        long[] second = recipientIndex.findByGitlabUserId(200L);
+
+        // Then
+        assertThat(first).isSameAs(second);
+    }
+
+    @Test
+    void refresh_ShouldReplacePreviousMappings() {
+        // Given
+        when(userMappingRepository.findAllProjectedBy())
+                .thenReturn(List.of(mapping(100L, 200L, UserRole.LEAD)))
+                .thenReturn(List.of(mapping(101L, 201L, UserRole.DEV)));
+        recipientIndex.refresh();
+
+        // When
+        recipientIndex.refresh();
+
+        // Then
+        assertThat(recipientIndex.findByGitlabUserId(200L)).isEmpty();
+        assertThat(recipientIndex.findByGitlabUserId(201L)).containsExactly(101L);
+        assertThat(recipientIndex.findByRole(UserRole.LEAD)).isEmpty();
+        assertThat(recipientIndex.findByRole(UserRole.DEV)).containsExactly(101L);
+    }
+
+    @Test
+    void findByRole_BeforeRefresh_ShouldReturnNoRecipients() {
+        // When / Then
+        assertThat(recipientIndex.findByRole(UserRole.LEAD)).isEmpty();
+        assertThat(recipientIndex.size()).isZero();
+    }
+
+    @Test
+    void resolve_ShouldReturnRecipientsInOrderOfNotifications() {
+        // Given
+        when(userMappingRepository.findAllProjectedBy()).thenReturn(List.of(
+                mapping(100L, 200L, UserRole.LEAD),
+                mapping(101L, 201L, UserRole.DEV)));
+        recipientIndex.refresh();
+
+        // When
+        long[][] recipients = recipientIndex.resolve(List.of(
+                toUser(201L), toRole(UserRole.LEAD), toUser(200L)));
+
+        // Then
+        assertThat(recipients).isDeepEqualTo(new long[][]{{101L}, {100L}, {100L}});
+        verify(userMappingRepository, never()).findAllByGitlabUserIdIn(any());
+        verify(userMappingRepository, never()).findAllByRoleIn(any());
+    }
+
+    @Test
+    void resolve_MissingReceivers_ShouldLoadThemInOneQueryPerKind() {
+        // Given
+        when(userMappingRepository.findAllProjectedBy()).thenReturn(List.of(mapping(100L, 200L, UserRole.DEV)));
+        recipientIndex.refresh();
+        when(userMappingRepository.findAllByGitlabUserIdIn(Set.of(201L, 202L)))
+                .thenReturn(List.of(mapping(101L, 201L, UserRole.LEAD)));
+        when(userMappingRepository.findAllByRoleIn(Set.of(UserRole.LEAD)))
+                .thenReturn(List.of(mapping(101L, 201L, UserRole.LEAD)));
+
+        // When
+        long[][] recipients = recipientIndex.resolve(List.of(
+                toUser(200L), toUser(201L), toUser(202L), toRole(UserRole.LEAD), toUser(201L)));
+
+        // Then
+        assertThat(recipients).isDeepEqualTo(new long[][]{{100L}, {101L}, {}, {101L}, {101L}});
+    }
+
+    @Test
+    void resolve_UnmappedReceiversResolvedAgain_ShouldNotQueryDatabaseUntilRefresh() {
+        // Given
+        recipientIndex.resolve(List.of(toUser(200L), toRole(UserRole.LEAD)));
+
+        // When
+        long[][] recipients = recipientIndex.resolve(List.of(toUser(200L), toRole(UserRole.LEAD)));
+        recipientIndex.refresh();
+        recipientIndex.resolve(List.of(toUser(200L), toRole(UserRole.LEAD)));
+
+        // Then
+        assertThat(recipients).isDeepEqualTo(new long[][]{{}, {}});
+        verify(userMappingRepository, times(2)).findAllByGitlabUserIdIn(Set.of(200L));
+        verify(userMappingRepository, times(2)).findAllByRoleIn(Set.of(UserRole.LEAD));
+    }
+
+    @Test
+    void resolve_LoadMissingDisabled_ShouldNotQueryDatabase() {
+        // Given
+        appProperties.getRecipients().setLoadMissing(false);
+        recipientIndex = new RecipientIndex(appProperties, userMappingRepository);
+
+        // When
+        long[][] recipients = recipientIndex.resolve(List.of(toUser(200L), toRole(UserRole.LEAD)));
+
+        // Then
+        assertThat(recipients).isDeepEqualTo(new long[][]{{}, {}});
+        verify(userMappingRepository, never()).findAllByGitlabUserIdIn(any());
+        verify(userMappingRepository, never()).findAllByRoleIn(any());
+    }
+
+    @Test
+    void resolve_NoReceiver_ShouldThrowException() {
+        // Given
+        HandledEvent handledEvent = new HandledEvent((Long) null, new MessageWithKeyboard("test", Collections.emptyList()));
+
+        // When / Then
+        assertThatThrownBy(() -> recipientIndex.resolve(List.of(handledEvent)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static HandledEvent toUser(long gitlabUserId) {
+        return new HandledEvent(gitlabUserId, new MessageWithKeyboard("test", Collections.emptyList()));
+    }
+
+    private static HandledEvent toRole(UserRole role) {
+        return new HandledEvent(role, new MessageWithKeyboard("test", Collections.emptyList()));
+    }
+
+    private static RecipientMapping mapping(Long telegramId, Long gitlabUserId, UserRole role) {
+        return new TestRecipientMapping(telegramId, gitlabUserId, role);
+    }
+
+    private record TestRecipientMapping(Long telegramId, Long gitlabUserId, UserRole role) implements RecipientMapping {
+        @Override
+        public Long getTelegramId() {
+            return telegramId;
+        }
+
+        @Override
+        public Long getGitlabUserId() {
+            return gitlabUserId;
+        }
+
+        @Override
+        public UserRole getRole() {
+            return role;
+        }
+    }
+}
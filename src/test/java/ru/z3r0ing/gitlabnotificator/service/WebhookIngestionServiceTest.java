@@ -0,0 +1,303 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.filter.WebhookDeduplicator;
+import ru.z3r0ing.gitlabnotificator.filter.WebhookPreFilter;
+import ru.z3r0ing.gitlabnotificator.journal.JournalRecord;
+import ru.z3r0ing.gitlabnotificator.journal.WebhookJournal;
+import ru.z3r0ing.gitlabnotificator.model.IngestionResult;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.IssueEvent;
+import ru.z3r0ing.gitlabnotificator.util.GitlabEventParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookIngestionServiceTest {
+
+    private static final String ISSUE_PAYLOAD = """
+            {"object_kind": "issue", "object_attributes": {"title": "Test issue"}}
+            """;
+
+    @Mock
+    private WebhookJournal webhookJournal;
+    @Mock
+    private WebhookQueueService webhookQueueService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebhookIngestionService webhookIngestionService;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        webhookIngestionService = new WebhookIngestionService(appProperties, new GitlabEventParser(),
+                new WebhookPreFilter(appProperties, meterRegistry), new WebhookDeduplicator(appProperties, meterRegistry),
+                webhookJournal, webhookQueueService, meterRegistry);
+    }
+
+    @Test
+    void ingest_JournalDisabled_ShouldParseStreamAndSubmitEvent() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.ACCEPTED);
+        ArgumentCaptor<AbstractEvent> eventCaptor = ArgumentCaptor.forClass(AbstractEvent.class);
+        verify(webhookQueueService).submit(eq(WebhookJournal.NO_SEQUENCE), eq(EventType.ISSUE), eventCaptor.capture());
+        assertThat(((IssueEvent) eventCaptor.getValue()).getIssue().getTitle()).isEqualTo("Test issue");
+        verify(webhookJournal, never()).append(any(), any());
+    }
+
+    @Test
+    void ingest_ShouldCountResultAndTimeParsing() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+
+        // When
+        webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+        webhookIngestionService.ingest("Unknown Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(meterRegistry.get("gitlab.webhook.received").tag("event", "issue").tag("result", "accepted")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gitlab.webhook.received").tag("event", "unsupported").tag("result", "ignored")
+                .counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gitlab.webhook.parse").tag("event", "issue").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void ingest_JournalEnabled_ShouldJournalRawBytes() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        when(webhookJournal.append(any(), any())).thenReturn(5L);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.ACCEPTED);
+        verify(webhookJournal).append("Issue Hook", ISSUE_PAYLOAD.getBytes(UTF_8));
+        verify(webhookQueueService).submit(eq(5L), eq(EventType.ISSUE), any(IssueEvent.class));
+    }
+
+    @Test
+    void ingest_JournalEnabledAndFiltered_ShouldNotReadWholeBody() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        String payload = "{\"object_attributes\": {\"status\": \"running\"}, \"builds\": ["
+                + "{}, ".repeat(100_000) + "{}]}";
+        InputStream body = stream(payload);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Pipeline Hook", null, body);
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.FILTERED);
+        assertThat(body.available()).isPositive();
+        verify(webhookJournal, never()).append(any(), any());
+    }
+
+    @Test
+    void ingest_LaneIsFull_ShouldCompleteJournalRecordAndShed() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        when(webhookJournal.append(any(), any())).thenReturn(5L);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(false);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.SHED);
+        verify(webhookJournal).complete(5L);
+    }
+
+    @Test
+    void ingest_JournalWriteFailed_ShouldReject() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        when(webhookJournal.append(any(), any())).thenThrow(new UncheckedIOException(new IOException("Disk full")));
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.REJECTED);
+        verifyNoInteractions(webhookQueueService);
+    }
+
+    @Test
+    void ingest_ClosedIssue_ShouldDropWebhookBeforeParsing() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        String payload = """
+                {"object_kind": "issue", "object_attributes": {"title": "Test issue", "state": "closed"}}
+                """;
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream(payload));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.FILTERED);
+        verifyNoInteractions(webhookQueueService);
+    }
+
+    @Test
+    void ingest_RetriedWebhook_ShouldAcknowledgeWithoutProcessing() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+        webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.DUPLICATE);
+        verify(webhookQueueService, times(1)).submit(anyLong(), any(), any());
+    }
+
+    @Test
+    void ingest_SameBodyWithoutKey_ShouldDeduplicateByContentHash() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+        webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+
+        // When
+        IngestionResult duplicate = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD));
+        IngestionResult other = webhookIngestionService.ingest("Issue Hook", null, stream(ISSUE_PAYLOAD + " "));
+
+        // Then
+        assertThat(duplicate).isEqualTo(IngestionResult.DUPLICATE);
+        assertThat(other).isEqualTo(IngestionResult.ACCEPTED);
+    }
+
+    @Test
+    void ingest_RejectedWebhook_ShouldBeAcceptedOnRetry() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        when(webhookJournal.append(any(), any())).thenReturn(5L, 6L);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(false, true);
+        webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.ACCEPTED);
+    }
+
+    @Test
+    void ingest_BodyReadFailed_ShouldBeAcceptedOnRetry() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+        InputStream failingBody = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        assertThatThrownBy(() -> webhookIngestionService.ingest("Issue Hook", "key-1", failingBody))
+                .isInstanceOf(IOException.class);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.ACCEPTED);
+    }
+
+    @Test
+    void ingest_InvalidPayloadWithKey_ShouldBeAcceptedOnRetry() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+        when(webhookQueueService.submit(anyLong(), any(), any())).thenReturn(true);
+        webhookIngestionService.ingest("Issue Hook", "key-1", stream("invalid json"));
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", "key-1", stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.ACCEPTED);
+    }
+
+    @Test
+    void ingest_UnsupportedEventType_ShouldIgnoreWebhook() throws IOException {
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Unknown Hook", null, stream(ISSUE_PAYLOAD));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.IGNORED);
+        verifyNoInteractions(webhookJournal, webhookQueueService);
+    }
+
+    @Test
+    void ingest_InvalidPayload_ShouldIgnoreWebhook() throws IOException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(false);
+
+        // When
+        IngestionResult result = webhookIngestionService.ingest("Issue Hook", null, stream("invalid json"));
+
+        // Then
+        assertThat(result).isEqualTo(IngestionResult.IGNORED);
+        verifyNoInteractions(webhookQueueService);
+    }
+
+    @Test
+    void replayJournal_ShouldParseRecordsAndPutThemIntoQueue() throws IOException, InterruptedException {
+        // Given
+        when(webhookJournal.isEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<JournalRecord> consumer = invocation.getArgument(0);
+            consumer.accept(new JournalRecord(1, "Issue Hook", ISSUE_PAYLOAD.getBytes(UTF_8)));
+            consumer.accept(new JournalRecord(2, "Issue Hook", "broken".getBytes(UTF_8)));
+            return null;
+        }).when(webhookJournal).replay(any());
+
+        // When
+        webhookIngestionService.replayJournal();
+
+        // Then
+        verify(webhookQueueService).put(eq(1L), eq(EventType.ISSUE), any(IssueEvent.class));
+        verify(webhookJournal).complete(2L);
+    }
+
+    private static InputStream stream(String payload) {
+        return new ByteArrayInputStream(payload.getBytes(UTF_8));
+    }
+}
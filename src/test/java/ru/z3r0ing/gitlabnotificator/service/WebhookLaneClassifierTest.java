@@ -0,0 +1,86 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import org.junit.jupiter.api.Test;
+import ru.z3r0ing.gitlabnotificator.model.WebhookLane;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.IssueEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.MergeRequestEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.NoteEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.MergeRequest;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookLaneClassifierTest {
+
+    private final WebhookLaneClassifier classifier = new WebhookLaneClassifier();
+
+    @Test
+    void classify_FailedPipeline_ShouldReturnHigh() {
+        // When / Then
+        assertThat(classifier.classify(EventType.PIPELINE, pipeline("failed"))).isEqualTo(WebhookLane.HIGH);
+        assertThat(classifier.classify(EventType.PIPELINE, pipeline("success"))).isEqualTo(WebhookLane.NORMAL);
+    }
+
+    @Test
+    void classify_MergedMergeRequest_ShouldReturnNormal() {
+        // When
+        WebhookLane lane = classifier.classify(EventType.MERGE_REQUEST, mergeRequest("merge", null));
+
+        // Then
+        assertThat(lane).isEqualTo(WebhookLane.NORMAL);
+    }
+
+    @Test
+    void classify_ReviewersOrAssigneesChanged_ShouldReturnNormal() {
+        // Given
+        MergeRequestEvent.Changes reviewersChanged = new MergeRequestEvent.Changes();
+        reviewersChanged.setReviewers(new MergeRequestEvent.ReviewersChanges());
+        MergeRequestEvent.Changes assigneesChanged = new MergeRequestEvent.Changes();
+        assigneesChanged.setAssignees(new MergeRequestEvent.AssigneesChanges());
+
+        // When / Then
+        assertThat(classifier.classify(EventType.MERGE_REQUEST, mergeRequest("update", reviewersChanged)))
+                .isEqualTo(WebhookLane.NORMAL);
+        assertThat(classifier.classify(EventType.MERGE_REQUEST, mergeRequest("update", assigneesChanged)))
+                .isEqualTo(WebhookLane.NORMAL);
+    }
+
+    @Test
+    void classify_OtherMergeRequestUpdate_ShouldReturnLow() {
+        // Given
+        MergeRequestEvent.Changes draftChanged = new MergeRequestEvent.Changes();
+        draftChanged.setDraft(new MergeRequestEvent.DraftChanges());
+
+        // When / Then
+        assertThat(classifier.classify(EventType.MERGE_REQUEST, mergeRequest("update", null)))
+                .isEqualTo(WebhookLane.LOW);
+        assertThat(classifier.classify(EventType.MERGE_REQUEST, mergeRequest("update", draftChanged)))
+                .isEqualTo(WebhookLane.LOW);
+    }
+
+    @Test
+    void classify_IssuesAndComments_ShouldReturnTheirLanes() {
+        // When / Then
+        assertThat(classifier.classify(EventType.ISSUE, new IssueEvent())).isEqualTo(WebhookLane.NORMAL);
+        assertThat(classifier.classify(EventType.NOTE, new NoteEvent())).isEqualTo(WebhookLane.LOW);
+    }
+
+    private static PipelineEvent pipeline(String status) {
+        Pipeline pipeline = new Pipeline();
+        pipeline.setStatus(status);
+        PipelineEvent pipelineEvent = new PipelineEvent();
+        pipelineEvent.setPipeline(pipeline);
+        return pipelineEvent;
+    }
+
+    private static MergeRequestEvent mergeRequest(String action, MergeRequestEvent.Changes changes) {
+        MergeRequest mergeRequest = new MergeRequest();
+        mergeRequest.setAction(action);
+        MergeRequestEvent mergeRequestEvent = new MergeRequestEvent();
+        mergeRequestEvent.setMergeRequest(mergeRequest);
+        mergeRequestEvent.setChanges(changes);
+        return mergeRequestEvent;
+    }
+}
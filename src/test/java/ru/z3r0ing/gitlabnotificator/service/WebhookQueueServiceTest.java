@@ -0,0 +1,163 @@
+package ru.z3r0ing.gitlabnotificator.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.config.WorkerThreads;
+import ru.z3r0ing.gitlabnotificator.journal.WebhookJournal;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.IssueEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.NoteEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Pipeline;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WebhookQueueServiceTest {
+
+    @Mock
+    private GitlabEventService gitlabEventService;
+    @Mock
+    private WebhookJournal webhookJournal;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private WebhookQueueService webhookQueueService;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (webhookQueueService != null) {
+            webhookQueueService.stop();
+        }
+    }
+
+    @Test
+    void submit_ShouldProcessWebhookAsynchronously() {
+        // Given
+        webhookQueueService = createService(10, 2);
+        webhookQueueService.start();
+
+        IssueEvent event = new IssueEvent();
+
+        // When
+        boolean accepted = webhookQueueService.submit(1, EventType.ISSUE, event);
+
+        // Then
+        assertThat(accepted).isTrue();
+        verify(gitlabEventService, timeout(1000)).handleGitlabEvent(EventType.ISSUE, event);
+        verify(webhookJournal, timeout(1000)).complete(1);
+    }
+
+    @Test
+    void submit_LaneIsFull_ShouldShedWebhook() throws InterruptedException {
+        // Given
+        webhookQueueService = createService(1, 1);
+        CountDownLatch workerStarted = new CountDownLatch(1);
+        CountDownLatch releaseWorker = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            workerStarted.countDown();
+            releaseWorker.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(gitlabEventService).handleGitlabEvent(any(EventType.class), any(AbstractEvent.class));
+        webhookQueueService.start();
+
+        // When
+        assertThat(webhookQueueService.submit(1, EventType.ISSUE, new IssueEvent())).isTrue();
+        assertThat(workerStarted.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(webhookQueueService.submit(2, EventType.ISSUE, new IssueEvent())).isTrue();
+        boolean accepted = webhookQueueService.submit(3, EventType.ISSUE, new IssueEvent());
+        releaseWorker.countDown();
+
+        // Then
+        assertThat(accepted).isFalse();
+        assertThat(meterRegistry.get("gitlab.webhook.shed").tag("lane", "normal").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void stop_ShouldDrainAcceptedWebhooks() throws InterruptedException {
+        // Given
+        webhookQueueService = createService(10, 1);
+        NoteEvent event = new NoteEvent();
+        webhookQueueService.submit(1, EventType.NOTE, event);
+
+        // When
+        webhookQueueService.start();
+        webhookQueueService.stop();
+
+        // Then
+        verify(gitlabEventService).handleGitlabEvent(EventType.NOTE, event);
+        assertThat(webhookQueueService.getQueueSize()).isZero();
+    }
+
+    @Test
+    void start_ShouldDrainHigherPriorityLanesFirst() throws InterruptedException {
+        // Given
+        webhookQueueService = createService(10, 1);
+        List<EventType> processed = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> processed.add(invocation.getArgument(0)))
+                .when(gitlabEventService).handleGitlabEvent(any(EventType.class), any(AbstractEvent.class));
+        PipelineEvent failedPipeline = new PipelineEvent();
+        failedPipeline.setPipeline(new Pipeline());
+        failedPipeline.getPipeline().setStatus("failed");
+        webhookQueueService.submit(1, EventType.NOTE, new NoteEvent());
+        webhookQueueService.submit(2, EventType.ISSUE, new IssueEvent());
+        webhookQueueService.submit(3, EventType.PIPELINE, failedPipeline);
+
+        // When
+        webhookQueueService.start();
+        webhookQueueService.stop();
+
+        // Then
+        assertThat(processed).containsExactly(EventType.PIPELINE, EventType.ISSUE, EventType.NOTE);
+        assertThat(meterRegistry.get("gitlab.webhook.queue.wait").tag("lane", "high").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void start_VirtualThreads_ShouldStartVirtualWorkersCount() {
+        // Given
+        AppProperties appProperties = new AppProperties();
+        appProperties.getWebhook().setVirtualWorkers(8);
+        WorkerThreads workerThreads = mock(WorkerThreads.class);
+        when(workerThreads.isVirtual()).thenReturn(true);
+        when(workerThreads.newThread(anyString(), any())).thenAnswer(invocation ->
+                new WorkerThreads(false).newThread(invocation.getArgument(0), invocation.getArgument(1)));
+        webhookQueueService = new WebhookQueueService(appProperties, gitlabEventService, webhookJournal,
+                new WebhookLaneClassifier(), workerThreads, meterRegistry);
+
+        // When
+        webhookQueueService.start();
+
+        // Then
+        verify(workerThreads, times(8)).newThread(anyString(), any());
+        assertThat(meterRegistry.get("gitlab.webhook.workers").gauge().value()).isEqualTo(8);
+    }
+
+    private WebhookQueueService createService(int laneCapacity, int workers) {
+        AppProperties appProperties = new AppProperties();
+        appProperties.getWebhook().getLanes().setHighCapacity(laneCapacity);
+        appProperties.getWebhook().getLanes().setNormalCapacity(laneCapacity);
+        appProperties.getWebhook().getLanes().setLowCapacity(laneCapacity);
+        appProperties.getWebhook().setWorkers(workers);
+        return new WebhookQueueService(appProperties, gitlabEventService, webhookJournal,
+                new WebhookLaneClassifier(), new WorkerThreads(false), meterRegistry);
+    }
+}
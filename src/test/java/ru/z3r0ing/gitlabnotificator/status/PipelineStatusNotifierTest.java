@@ -0,0 +1,176 @@
+package ru.z3r0ing.gitlabnotificator.status;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import ru.z3r0ing.gitlabnotificator.config.AppProperties;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryCallback;
+import ru.z3r0ing.gitlabnotificator.delivery.DeliveryScheduler;
+import ru.z3r0ing.gitlabnotificator.model.Delivery;
+import ru.z3r0ing.gitlabnotificator.model.HandledEvent;
+import ru.z3r0ing.gitlabnotificator.model.UserRole;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Pipeline;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.object.Project;
+import ru.z3r0ing.gitlabnotificator.util.MessageFormatter;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PipelineStatusNotifierTest {
+
+    @Mock
+    private PipelineStatusStore store;
+    @Mock
+    private DeliveryScheduler deliveryScheduler;
+    private PipelineStatusNotifier notifier;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties appProperties = new AppProperties();
+        AppProperties.PipelineStatus pipelineStatus = appProperties.getNotifications().getPipelineStatus();
+        pipelineStatus.setEnabled(true);
+        pipelineStatus.setDebounce(Duration.ofMillis(200));
+        notifier = new PipelineStatusNotifier(appProperties, new MessageFormatter(), store, deliveryScheduler);
+        notifier.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        notifier.stop();
+    }
+
+    @Test
+    void render_PipelineWithoutMr_ShouldNotifyLeads() {
+        // When
+        List<HandledEvent> statuses = notifier.render(pipeline("running"));
+
+        // Then
+        assertThat(statuses).singleElement().satisfies(status -> {
+            assertThat(status.getUserRole()).isEqualTo(UserRole.LEAD);
+            assertThat(status.getMessageWithKeyboard().getMessage()).contains("running", "Project", "main");
+        });
+    }
+
+    @Test
+    void update_StatusesWithinDebounce_ShouldSendLatestOnce() {
+        // Given
+        when(store.find(1L, 100L)).thenReturn(null);
+
+        // When
+        update(pipeline("pending"));
+        update(pipeline("running"));
+
+        // Then
+        ArgumentCaptor<Delivery> delivery = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryScheduler, timeout(3000)).submit(delivery.capture(), any());
+        verify(deliveryScheduler, after(500).times(1)).submit(any(), any());
+        assertThat(delivery.getValue().getChatId()).isEqualTo(100L);
+        assertThat(delivery.getValue().getEditMessageId()).isNull();
+        assertThat(delivery.getValue().getMessageWithKeyboard().getMessage()).contains("running");
+    }
+
+    @Test
+    void update_AfterMessageSent_ShouldEditIt() {
+        // Given
+        update(pipeline("running"));
+        ArgumentCaptor<DeliveryCallback> callback = ArgumentCaptor.forClass(DeliveryCallback.class);
+        verify(deliveryScheduler, timeout(3000)).submit(any(), callback.capture());
+        Message message = new Message();
+        message.setMessageId(42);
+        callback.getValue().onSent(message);
+        callback.getValue().onComplete(true);
+
+        // When
+        update(pipeline("success"));
+
+        // Then
+        ArgumentCaptor<Delivery> delivery = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryScheduler, timeout(3000).times(2)).submit(delivery.capture(), any());
+        assertThat(delivery.getValue().getEditMessageId()).isEqualTo(42);
+        assertThat(delivery.getValue().getMessageWithKeyboard().getMessage()).contains("success");
+        verify(store, timeout(3000)).save(1L, 100L, 42);
+    }
+
+    @Test
+    void render_PipelineWithoutProject_ShouldRenderStatus() {
+        // Given
+        PipelineEvent pipelineEvent = pipeline("running");
+        pipelineEvent.setProject(null);
+
+        // When
+        List<HandledEvent> statuses = notifier.render(pipelineEvent);
+
+        // Then
+        assertThat(statuses).singleElement().satisfies(status ->
+                assertThat(status.getMessageWithKeyboard().getMessage()).contains("running", "main"));
+    }
+
+    @Test
+    void update_CacheFullWhileMessageInFlight_ShouldKeepItAndEditItLater() {
+        // Given
+        notifier.stop();
+        AppProperties appProperties = new AppProperties();
+        AppProperties.PipelineStatus pipelineStatus = appProperties.getNotifications().getPipelineStatus();
+        pipelineStatus.setEnabled(true);
+        pipelineStatus.setDebounce(Duration.ofMillis(200));
+        pipelineStatus.setCacheSize(1);
+        notifier = new PipelineStatusNotifier(appProperties, new MessageFormatter(), store, deliveryScheduler);
+        notifier.start();
+        update(pipeline("running"), 100L);
+        ArgumentCaptor<DeliveryCallback> callback = ArgumentCaptor.forClass(DeliveryCallback.class);
+        verify(deliveryScheduler, timeout(3000)).submit(any(), callback.capture());
+
+        // When
+        update(pipeline("running"), 101L);
+        update(pipeline("success"), 100L);
+
+        // Then
+        verify(deliveryScheduler, timeout(3000).times(2)).submit(any(), any());
+        verify(deliveryScheduler, after(500).times(2)).submit(any(), any());
+        Message message = new Message();
+        message.setMessageId(42);
+        callback.getValue().onSent(message);
+        callback.getValue().onComplete(true);
+        ArgumentCaptor<Delivery> delivery = ArgumentCaptor.forClass(Delivery.class);
+        verify(deliveryScheduler, timeout(3000).times(3)).submit(delivery.capture(), any());
+        assertThat(delivery.getValue().getChatId()).isEqualTo(100L);
+        assertThat(delivery.getValue().getEditMessageId()).isEqualTo(42);
+    }
+
+    private void update(PipelineEvent pipelineEvent) {
+        update(pipelineEvent, 100L);
+    }
+
+    private void update(PipelineEvent pipelineEvent, long chatId) {
+        notifier.update(pipelineEvent, notifier.render(pipelineEvent), new long[][]{{chatId}});
+    }
+
+    private static PipelineEvent pipeline(String status) {
+        Project project = new Project();
+        project.setName("Project");
+        Pipeline pipeline = new Pipeline();
+        pipeline.setId(1L);
+        pipeline.setRef("main");
+        pipeline.setStatus(status);
+        pipeline.setUrl("https://gitlab.example.com/pipelines/1");
+        PipelineEvent pipelineEvent = new PipelineEvent();
+        pipelineEvent.setProject(project);
+        pipelineEvent.setPipeline(pipeline);
+        return pipelineEvent;
+    }
+}
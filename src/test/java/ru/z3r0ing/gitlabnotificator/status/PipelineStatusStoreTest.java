@@ -0,0 +1,62 @@
+package ru.z3r0ing.gitlabnotificator.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineStatusStoreTest {
+
+    private PipelineStatusStore store;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:pipeline-status-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE pipeline_status_message (
+                    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    pipeline_id BIGINT NOT NULL,
+                    chat_id BIGINT NOT NULL,
+                    message_id INT NOT NULL,
+                    updated_at TIMESTAMP(6) WITH TIME ZONE NOT NULL,
+                    CONSTRAINT uk_pipeline_status_message UNIQUE (pipeline_id, chat_id))""");
+        store = new PipelineStatusStore(jdbcTemplate);
+    }
+
+    @Test
+    void save_ShouldReplaceMessageOfPipelineInChat() {
+        // Given
+        store.save(1L, 100L, 10);
+        store.save(1L, 200L, 20);
+
+        // When
+        store.save(1L, 100L, 11);
+
+        // Then
+        assertThat(store.find(1L, 100L)).isEqualTo(11);
+        assertThat(store.find(1L, 200L)).isEqualTo(20);
+        assertThat(store.find(2L, 100L)).isNull();
+    }
+
+    @Test
+    void purge_ShouldDeleteMessagesNotChangedSinceGivenTime() {
+        // Given
+        store.save(1L, 100L, 10);
+
+        // When
+        int kept = store.purge(Instant.now().minusSeconds(60));
+        int purged = store.purge(Instant.now().plusSeconds(60));
+
+        // Then
+        assertThat(kept).isZero();
+        assertThat(purged).isEqualTo(1);
+        assertThat(store.find(1L, 100L)).isNull();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.AbstractEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.EventType;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.IssueEvent;
+import ru.z3r0ing.gitlabnotificator.model.gitlab.event.PipelineEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GitlabEventParserTest {
+
+    private final GitlabEventParser parser = new GitlabEventParser();
+
+    @ParameterizedTest
+    @EnumSource(EventType.class)
+    void parse_ShouldReturnEventClassOfEventType(EventType eventType) throws JsonProcessingException {
+        // When
+        AbstractEvent event = parser.parse(eventType, "{}");
+
+        // Then
+        assertThat(event).isExactlyInstanceOf(eventType.getEventClass());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EventType.class)
+    void parse_InvalidJson_ShouldThrowException(EventType eventType) {
+        assertThatThrownBy(() -> parser.parse(eventType, "invalid json"))
+                .isInstanceOf(JsonProcessingException.class);
+    }
+
+    @Test
+    void parse_ShouldIgnoreUnknownProperties() throws JsonProcessingException {
+        // Given
+        String payload = """
+                {
+                  "object_kind": "pipeline",
+                  "object_attributes": {"id": 7, "status": "failed", "ref": "main", "unknown": [1, 2]},
+                  "project": {"name": "Project", "web_url": "http://gitlab/project"},
+                  "builds": [{"id": 1, "stage": "deploy", "status": "success", "runner": {"id": 3}}],
+                  "commit": {"id": "abc", "message": "Fix"}
+                }
+                """;
+
+        // When
+        PipelineEvent event = (PipelineEvent) parser.parse(EventType.PIPELINE, payload);
+
+        // Then
+        assertThat(event.getPipeline().getId()).isEqualTo(7L);
+        assertThat(event.getPipeline().getStatus()).isEqualTo("failed");
+        assertThat(event.getProject().getName()).isEqualTo("Project");
+        assertThat(event.getStages()).extracting(PipelineEvent.Stages::getStage).containsExactly("deploy");
+    }
+
+    @Test
+    void parse_InputStream_ShouldParseEvent() throws IOException {
+        // Given
+        byte[] payload = """
+                {"object_kind": "issue", "object_attributes": {"title": "Задача", "url": "http://gitlab/issue"}}
+                """.getBytes(UTF_8);
+
+        // When
+        IssueEvent event = (IssueEvent) parser.parse(EventType.ISSUE, new ByteArrayInputStream(payload));
+
+        // Then
+        assertThat(event.getIssue().getTitle()).isEqualTo("Задача");
+        assertThat(event.getIssue().getUrl()).isEqualTo("http://gitlab/issue");
+    }
+
+    @Test
+    void parse_InputStream_ShouldLeaveStreamOpen() throws IOException {
+        // Given
+        byte[] payload = """
+                {"object_kind": "issue", "object_attributes": {"title": "Issue"}}
+                """.getBytes(UTF_8);
+        AtomicBoolean closed = new AtomicBoolean();
+        ByteArrayInputStream body = new ByteArrayInputStream(payload) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        // When
+        parser.parse(EventType.ISSUE, body);
+
+        // Then
+        assertThat(closed).isFalse();
+    }
+}
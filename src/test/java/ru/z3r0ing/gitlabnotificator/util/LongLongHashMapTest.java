@@ -0,0 +1,45 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongLongHashMapTest {
+
+    @Test
+    void put_ManyKeys_ShouldRehashAndKeepAllValues() {
+        // Given
+        LongLongHashMap map = new LongLongHashMap(2);
+
+        // When
+        for (long key = -500; key <= 500; key++) {
+            map.put(key * 31, key);
+        }
+
+        // Then
+        assertThat(map.size()).isEqualTo(1001);
+        for (long key = -500; key <= 500; key++) {
+            assertThat(map.get(key * 31, Long.MIN_VALUE)).isEqualTo(key);
+        }
+        assertThat(map.containsKey(0)).isTrue();
+        assertThat(map.containsKey(7)).isFalse();
+        assertThat(map.get(7, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void put_ExistingKey_ShouldReplaceValue() {
+        // Given
+        LongLongHashMap map = new LongLongHashMap(4);
+        map.put(42, 1);
+        map.put(0, 1);
+
+        // When
+        map.put(42, 2);
+        map.put(0, 3);
+
+        // Then
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(map.get(42, -1)).isEqualTo(2);
+        assertThat(map.get(0, -1)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MarkdownEscaperTest {
+
+    @Test
+    void escape_WithoutSpecialCharacters_ShouldReturnSameInstance() {
+        // Given
+        String text = "Fix bug in authentication (#42)";
+
+        // When
+        String escaped = MarkdownEscaper.MARKDOWN.escape(text);
+
+        // Then
+        assertThat(escaped).isSameAs(text);
+        assertThat(MarkdownEscaper.MARKDOWN.escape(null)).isNull();
+    }
+
+    @Test
+    void escape_Markdown_ShouldEscapeOnlyLegacyCharacters() {
+        // When
+        String escaped = MarkdownEscaper.MARKDOWN.escape("my_project *v1.2* [draft] `code` (#42)");
+
+        // Then
+        assertThat(escaped).isEqualTo("my\\_project \\*v1.2\\* \\[draft] \\`code\\` (#42)");
+    }
+
+    @Test
+    void escape_MarkdownV2_ShouldEscapeAllReservedCharacters() {
+        // When
+        String escaped = MarkdownEscaper.MARKDOWN_V2.escape("v1.2-rc (#42)! a\\b");
+
+        // Then
+        assertThat(escaped).isEqualTo("v1\\.2\\-rc \\(\\#42\\)\\! a\\\\b");
+    }
+
+    @Test
+    void unescape_ShouldRevertEscape() {
+        // Given
+        String text = "my_project *v1.2* \\ [draft]";
+
+        // When
+        String unescaped = MarkdownEscaper.MARKDOWN.unescape(MarkdownEscaper.MARKDOWN.escape(text));
+
+        // Then
+        assertThat(unescaped).isEqualTo(text);
+        assertThat(MarkdownEscaper.MARKDOWN.unescape("plain text")).isSameAs("plain text");
+    }
+}
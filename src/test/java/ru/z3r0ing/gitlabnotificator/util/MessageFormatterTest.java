@@ -40,6 +40,32 @@ class MessageFormatterTest {
         assertTrue(result.contains("_")); // italic
     }
 
+    @Test
+    void formatMrApproved_shouldEscapeMarkdownInValues() {
+        // Given
+        String projectName = "my_project";
+        String mrTitle = "Use *.yml files";
+        String approverName = "john_doe";
+
+        // When
+        String result = messageFormatter.formatMrApproved(projectName, mrTitle, approverName);
+
+        // Then
+        assertTrue(result.contains("Project: _my_\\__project_"));
+        assertTrue(result.contains("MR: *Use *\\**.yml files*"));
+        assertTrue(result.contains("Approved by: john\\_doe"));
+    }
+
+    @Test
+    void formatMrMerged_shouldCloseTitleEntity() {
+        // When
+        String result = messageFormatter.formatMrMerged("MyProject", "Fix bug", "John Doe");
+
+        // Then
+        assertTrue(result.contains("MR: *Fix bug*"));
+        assertTrue(result.contains("Merged by: John Doe"));
+    }
+
     @Test
     void buttonsForMr_shouldReturnButtonWithCorrectUrl() {
         // Given
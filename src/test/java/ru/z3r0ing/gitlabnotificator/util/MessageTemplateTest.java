@@ -0,0 +1,102 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageTemplateTest {
+
+    @Test
+    void render_WithPlainValues_ShouldMatchStringFormat() {
+        // Given
+        String template = """
+                ✅ *Merge Request approved!*
+
+                Project: _%s_
+                MR: *%s*
+                Approved by: %s
+                """;
+
+        // When
+        String result = MessageTemplate.compile(template).render("MyProject", "Fix bug", "John Doe");
+
+        // Then
+        assertThat(result).isEqualTo(String.format(template, "MyProject", "Fix bug", "John Doe"));
+    }
+
+    @Test
+    void render_OutsideOfEntity_ShouldEscapeMarkdownCharacters() {
+        // Given
+        MessageTemplate template = MessageTemplate.compile("Approved by: %s");
+
+        // When
+        String result = template.render("john_doe *[x]* `y`");
+
+        // Then
+        assertThat(result).isEqualTo("Approved by: john\\_doe \\*\\[x]\\* \\`y\\`");
+    }
+
+    @Test
+    void render_InsideOfEntity_ShouldReopenEntityAroundItsClosingCharacter() {
+        // Given
+        MessageTemplate template = MessageTemplate.compile("MR: *%s* in _%s_");
+
+        // When
+        String result = template.render("a*b_c", "my_project*");
+
+        // Then
+        assertThat(result).isEqualTo("MR: *a*\\**b_c* in _my_\\__project*_");
+    }
+
+    @Test
+    void render_AfterEscapedCharacter_ShouldEscapeOutsideOfEntity() {
+        // Given
+        MessageTemplate template = MessageTemplate.compile("\\*%s 100%%");
+
+        // When
+        String result = template.render("a_b");
+
+        // Then
+        assertThat(result).isEqualTo("\\*a\\_b 100%");
+    }
+
+    @Test
+    void render_WithNullValue_ShouldRenderNull() {
+        // Given
+        MessageTemplate template = MessageTemplate.compile("Project: *%s*");
+
+        // When
+        String result = template.render((String) null);
+
+        // Then
+        assertThat(result).isEqualTo("Project: *null*");
+    }
+
+    @Test
+    void render_WithWrongAmountOfValues_ShouldThrow() {
+        // Given
+        MessageTemplate template = MessageTemplate.compile("%s and %s");
+
+        // When / Then
+        assertThat(template.getPlaceholderCount()).isEqualTo(2);
+        assertThatThrownBy(() -> template.render("one"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void compile_WithUnclosedEntity_ShouldThrow() {
+        // When / Then
+        assertThatThrownBy(() -> MessageTemplate.compile("MR: *%s_\nMerged by: %s"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("not closed");
+    }
+
+    @Test
+    void compile_WithUnsupportedSpecifier_ShouldThrow() {
+        // When / Then
+        assertThatThrownBy(() -> MessageTemplate.compile("Pipeline %d failed"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Unsupported format specifier");
+    }
+}
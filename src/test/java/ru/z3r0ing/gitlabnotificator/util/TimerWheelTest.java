@@ -0,0 +1,89 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+    private static final long TICK = Duration.ofMillis(100).toNanos();
+
+    @Test
+    void advance_ShouldFireTimersAtTheirTickAndNotBefore() {
+        // Given
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule("second", 2 * TICK);
+        wheel.schedule("first", TICK - 1);
+
+        // When / Then
+        assertThat(wheel.advance(TICK - 1, fired::add)).isZero();
+        assertThat(wheel.advance(TICK, fired::add)).isEqualTo(1);
+        assertThat(fired).containsExactly("first");
+        wheel.advance(2 * TICK, fired::add);
+        assertThat(fired).containsExactly("first", "second");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void advance_ShouldCascadeTimersFromCoarserLevels() {
+        // Given
+        TimerWheel<Long> wheel = new TimerWheel<>(Duration.ofMillis(100), 0);
+        List<Long> fired = new ArrayList<>();
+        long[] ticks = {63, 64, 65, 4095, 4096, 4097, 300_000};
+        for (long tick : ticks) {
+            wheel.schedule(tick, tick * TICK);
+        }
+
+        // When
+        for (long tick = 0; tick <= 300_000; tick++) {
+            long now = tick * TICK;
+            wheel.advance(now, scheduled -> {
+                assertThat(scheduled).isEqualTo(now / TICK);
+                fired.add(scheduled);
+            });
+        }
+
+        // Then
+        assertThat(fired).containsExactly(63L, 64L, 65L, 4095L, 4096L, 4097L, 300_000L);
+    }
+
+    @Test
+    void advance_AfterIdleTime_ShouldFireTimersScheduledLater() {
+        // Given
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 0);
+        List<String> fired = new ArrayList<>();
+        wheel.advance(1000 * TICK, fired::add);
+        long now = 1000 * TICK + TICK / 2;
+        wheel.schedule("late", now + 3 * TICK);
+
+        // When / Then
+        assertThat(wheel.nanosUntilNextTick(now)).isEqualTo(TICK / 2);
+        wheel.advance(now + 3 * TICK, fired::add);
+        assertThat(fired).isEmpty();
+        wheel.advance(1004 * TICK, fired::add);
+        assertThat(fired).containsExactly("late");
+    }
+
+    @Test
+    void advance_TimerScheduledByConsumer_ShouldFireOnNextTick() {
+        // Given
+        TimerWheel<String> wheel = new TimerWheel<>(Duration.ofMillis(100), 0);
+        List<String> fired = new ArrayList<>();
+        wheel.schedule("first", TICK);
+
+        // When
+        wheel.advance(TICK, payload -> {
+            fired.add(payload);
+            wheel.schedule("again", TICK);
+        });
+        wheel.advance(2 * TICK, fired::add);
+
+        // Then
+        assertThat(fired).containsExactly("first", "again");
+    }
+}
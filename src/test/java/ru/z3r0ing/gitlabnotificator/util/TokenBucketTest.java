@@ -0,0 +1,44 @@
+package ru.z3r0ing.gitlabnotificator.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void tryTake_EmptyBucket_ShouldWaitForRefill() {
+        // Given
+        TokenBucket bucket = new TokenBucket(2, Duration.ofSeconds(1), 1, 0);
+
+        // When / Then
+        assertThat(bucket.tryTake(0)).isTrue();
+        assertThat(bucket.tryTake(0)).isFalse();
+        assertThat(bucket.nanosUntilToken(0)).isEqualTo(SECOND / 2);
+        assertThat(bucket.tryTake(SECOND / 2 - 1)).isFalse();
+        assertThat(bucket.tryTake(SECOND / 2)).isTrue();
+    }
+
+    @Test
+    void tryTake_Burst_ShouldAllowSeveralTokensAfterIdleTime() {
+        // Given
+        TokenBucket bucket = new TokenBucket(1, Duration.ofSeconds(1), 3, 0);
+
+        // When / Then
+        assertThat(bucket.tryTake(0)).isTrue();
+        assertThat(bucket.tryTake(0)).isTrue();
+        assertThat(bucket.tryTake(0)).isTrue();
+        assertThat(bucket.tryTake(0)).isFalse();
+        assertThat(bucket.isFull(2 * SECOND)).isFalse();
+        assertThat(bucket.isFull(3 * SECOND)).isTrue();
+        // idle time beyond a full bucket does not add tokens
+        assertThat(bucket.tryTake(10 * SECOND)).isTrue();
+        assertThat(bucket.tryTake(10 * SECOND)).isTrue();
+        assertThat(bucket.tryTake(10 * SECOND)).isTrue();
+        assertThat(bucket.tryTake(10 * SECOND)).isFalse();
+    }
+}